@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.impl.DefaultCamelContext;
+
+/**
+ * Starts the fake Drive server and a Camel context for a benchmark.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+final class BenchmarkSupport {
+
+	final FakeDriveServer server;
+
+	final CamelContext context;
+
+	BenchmarkSupport(int fileCount, int payloadSize, long latency, double errorRate) throws Exception {
+		server = new FakeDriveServer(fileCount, payloadSize);
+		server.setLatency(latency);
+		server.setErrorRate(errorRate);
+		server.start();
+		context = new DefaultCamelContext();
+		context.start();
+	}
+
+	/**
+	 * Create an endpoint talking to the fake server, without client side throttling.
+	 */
+	GDriveEndpoint createEndpoint(String options) throws Exception {
+		GDriveEndpoint endpoint = context.getEndpoint("gdrive://bench?accessToken=bench&rateLimit=0&" + options, 
+				GDriveEndpoint.class);
+		endpoint.getConfiguration().setRootUrl(server.getRootUrl());
+		return endpoint;
+	}
+
+	void stop() throws Exception {
+		context.stop();
+		server.stop();
+	}
+
+	static long drain(InputStream is) throws IOException {
+		if (is == null) {
+			return 0;
+		}
+		try {
+			byte[] buffer = new byte[64 * 1024];
+			long total = 0;
+			int n;
+			while ((n = is.read(buffer)) != -1) {
+				total += n;
+			}
+			return total;
+		} finally {
+			is.close();
+		}
+	}
+
+}
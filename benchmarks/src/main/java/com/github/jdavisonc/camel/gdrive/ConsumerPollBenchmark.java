@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One poll of a consumer over a page of files, every body being read by the route.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsumerPollBenchmark {
+
+	/** Files per poll */
+	@Param({"10", "100"})
+	public int batchSize;
+
+	@Param({"1024", "1048576"})
+	public int payloadSize;
+
+	/** Parallel downloads */
+	@Param({"1", "4"})
+	public int concurrency;
+
+	/** Server latency in millis */
+	@Param({"0", "20"})
+	public long latency;
+
+	@Param({"0"})
+	public double errorRate;
+
+	private BenchmarkSupport support;
+
+	private GDriveConsumer consumer;
+
+	@Setup
+	public void setUp() throws Exception {
+		support = new BenchmarkSupport(batchSize, payloadSize, latency, errorRate);
+		GDriveEndpoint endpoint = support.createEndpoint("deleteAfterRead=false&initialDelay=3600000"
+				+ "&maxMessagesPerPoll=" + batchSize + "&downloadConcurrency=" + concurrency);
+		consumer = (GDriveConsumer) endpoint.createConsumer(new Processor() {
+			@Override
+			public void process(Exchange exchange) throws Exception {
+				BenchmarkSupport.drain(exchange.getIn().getBody(InputStream.class));
+			}
+		});
+		consumer.start();
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		consumer.stop();
+		support.stop();
+	}
+
+	@Benchmark
+	public int poll() throws Exception {
+		return consumer.poll();
+	}
+
+}
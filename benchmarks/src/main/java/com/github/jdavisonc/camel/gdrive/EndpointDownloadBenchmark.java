@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.Exchange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+
+/**
+ * Download of a single file, raw and through an exchange, whole or in segments.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndpointDownloadBenchmark {
+
+	@Param({"1024", "1048576", "16777216"})
+	public int payloadSize;
+
+	/** Size from which files are downloaded in segments, -1 for a single request */
+	@Param({"-1", "4194304"})
+	public long segmentedDownloadThreshold;
+
+	/** Server latency in millis */
+	@Param({"0"})
+	public long latency;
+
+	@Param({"0"})
+	public double errorRate;
+
+	private BenchmarkSupport support;
+
+	private GDriveEndpoint endpoint;
+
+	private Drive client;
+
+	private File file;
+
+	@Setup
+	public void setUp() throws Exception {
+		support = new BenchmarkSupport(1, payloadSize, latency, errorRate);
+		endpoint = support.createEndpoint("deleteAfterRead=false&downloadSegmentSize=1048576"
+				+ "&segmentedDownloadThreshold=" + segmentedDownloadThreshold);
+		client = endpoint.getGDriveClient();
+		file = client.files().list().execute().getItems().get(0);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		support.stop();
+	}
+
+	@Benchmark
+	public long downloadFile() throws Exception {
+		return BenchmarkSupport.drain(GDriveEndpoint.downloadFile(client, file));
+	}
+
+	@Benchmark
+	public long createExchange() throws Exception {
+		Exchange exchange = endpoint.createExchange(file);
+		return BenchmarkSupport.drain(exchange.getIn().getBody(InputStream.class));
+	}
+
+}
@@ -0,0 +1,355 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.hash.Hashing;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local stand-in for the Drive v2 REST API, serving just what the component
+ * uses: listing, getting, inserting, patching and deleting files, media uploads,
+ * in a single request or through a resumable session, and content downloads, whole
+ * or by range. Every file has the same generated content.
+ * <p>
+ * Each answer can be delayed, and a share of the calls can be failed with a 500
+ * or throttled with a 403 rateLimitExceeded, to measure the error paths.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class FakeDriveServer {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String SERVICE_PATH = "/drive/v2/files";
+
+	private static final String UPLOAD_PATH = "/upload/drive/v2/files";
+
+	private static final String DOWNLOAD_PATH = "/download/";
+
+	private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (?:\\*|\\d+-(\\d+))/(\\d+|\\*)");
+
+	private final ConcurrentNavigableMap<String, Long> files = new ConcurrentSkipListMap<String, Long>();
+
+	private final AtomicLong ids = new AtomicLong();
+
+	private final AtomicLong requests = new AtomicLong();
+
+	private final AtomicLong sessions = new AtomicLong();
+
+	private final Random random = new Random();
+
+	private final byte[] content;
+
+	private final String md5;
+
+	private HttpServer server;
+
+	private ExecutorService executor;
+
+	private volatile long latency;
+
+	private volatile double errorRate;
+
+	private volatile double throttleRate;
+
+	/**
+	 * @param fileCount number of files listed at first
+	 * @param fileSize size in bytes of the content of every file
+	 */
+	public FakeDriveServer(int fileCount, int fileSize) {
+		content = new byte[fileSize];
+		new Random(fileSize).nextBytes(content);
+		md5 = Hashing.md5().hashBytes(content).toString();
+		for (int i = 0; i < fileCount; i++) {
+			addFile(fileSize);
+		}
+	}
+
+	public void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					FakeDriveServer.this.handle(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+	}
+
+	public void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+		}
+	}
+
+	/**
+	 * @return the URL to set as rootUrl on the endpoints
+	 */
+	public String getRootUrl() {
+		return "http://localhost:" + server.getAddress().getPort() + "/";
+	}
+
+	/**
+	 * @return the id of the new file
+	 */
+	public String addFile(long size) {
+		String id = String.format("file-%08d", ids.incrementAndGet());
+		files.put(id, size);
+		return id;
+	}
+
+	public int getFileCount() {
+		return files.size();
+	}
+
+	public long getRequests() {
+		return requests.get();
+	}
+
+	public byte[] getContent() {
+		return content;
+	}
+
+	/**
+	 * @param latency millis to wait before answering each request
+	 */
+	public void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * @param errorRate share of the requests answered with a 500, between 0 and 1
+	 */
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * @param throttleRate share of the requests answered with a 403 rateLimitExceeded, between 0 and 1
+	 */
+	public void setThrottleRate(double throttleRate) {
+		this.throttleRate = throttleRate;
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		drain(exchange.getRequestBody());
+		if (latency > 0) {
+			try {
+				Thread.sleep(latency);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		double dice;
+		synchronized (random) {
+			dice = random.nextDouble();
+		}
+		if (dice < errorRate) {
+			sendError(exchange, 500, "backendError", "Backend Error");
+			return;
+		}
+		if (dice < errorRate + throttleRate) {
+			sendError(exchange, 403, "rateLimitExceeded", "Rate Limit Exceeded");
+			return;
+		}
+
+		URI uri = exchange.getRequestURI();
+		String path = uri.getPath();
+		String method = exchange.getRequestMethod();
+		if (path.startsWith(DOWNLOAD_PATH)) {
+			Long size = files.get(path.substring(DOWNLOAD_PATH.length()));
+			if (size == null) {
+				sendError(exchange, 404, "notFound", "File not found");
+				return;
+			}
+			long first = 0;
+			long last = size - 1;
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			if (range != null) {
+				GDriveByteRange requested = GDriveByteRange.parse(range);
+				first = requested.getFirst();
+				if (requested.getLast() >= 0) {
+					last = Math.min(last, requested.getLast());
+				}
+				exchange.getResponseHeaders().set("Content-Range", "bytes " + first + "-" + last + "/" + size);
+			}
+			exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+			exchange.sendResponseHeaders(range != null ? 206 : 200, last - first + 1);
+			OutputStream os = exchange.getResponseBody();
+			for (long position = first; position <= last; ) {
+				int offset = (int) (position % content.length);
+				int length = (int) Math.min(content.length - offset, last - position + 1);
+				os.write(content, offset, length);
+				position += length;
+			}
+			os.close();
+		} else if (path.equals(UPLOAD_PATH) && "POST".equals(method)) {
+			if ("resumable".equals(query(uri).get("uploadType"))) {
+				// the content is sent afterwards, to the session URL
+				exchange.getResponseHeaders().set("Location", getRootUrl() + UPLOAD_PATH.substring(1)
+						+ "?uploadType=resumable&upload_id=" + sessions.incrementAndGet());
+				exchange.sendResponseHeaders(200, -1);
+			} else {
+				String id = addFile(content.length);
+				sendJson(exchange, 200, fileJson(id, content.length));
+			}
+		} else if (path.equals(UPLOAD_PATH) && "PUT".equals(method)) {
+			uploadChunk(exchange);
+		} else if (path.equals(SERVICE_PATH) && "GET".equals(method)) {
+			sendJson(exchange, 200, listJson(query(uri)));
+		} else if (path.equals(SERVICE_PATH) && "POST".equals(method)) {
+			sendJson(exchange, 200, fileJson(addFile(0), 0));
+		} else if (path.startsWith(SERVICE_PATH + "/")) {
+			String id = path.substring(SERVICE_PATH.length() + 1);
+			Long size = files.get(id);
+			if (size == null) {
+				sendError(exchange, 404, "notFound", "File not found: " + id);
+			} else if ("DELETE".equals(method)) {
+				files.remove(id);
+				exchange.sendResponseHeaders(204, -1);
+			} else {
+				sendJson(exchange, 200, fileJson(id, size));
+			}
+		} else {
+			sendError(exchange, 404, "notFound", "Unknown path " + path);
+		}
+	}
+
+	/**
+	 * Take a chunk of a resumable upload, the file is created with the last one.
+	 */
+	private void uploadChunk(HttpExchange exchange) throws IOException {
+		String range = exchange.getRequestHeaders().getFirst("Content-Range");
+		Matcher matcher = range != null ? CONTENT_RANGE.matcher(range) : null;
+		if (matcher != null && !matcher.matches()) {
+			sendError(exchange, 400, "badRequest", "Invalid Content-Range " + range);
+			return;
+		}
+		long last = matcher != null && matcher.group(1) != null ? Long.parseLong(matcher.group(1)) : -1;
+		String total = matcher != null ? matcher.group(2) : null;
+		if (total == null || (!"*".equals(total) && last + 1 == Long.parseLong(total))) {
+			long size = total != null ? Long.parseLong(total) : content.length;
+			sendJson(exchange, 200, fileJson(addFile(size), size));
+			return;
+		}
+		if (last >= 0) {
+			exchange.getResponseHeaders().set("Range", "bytes=0-" + last);
+		}
+		exchange.sendResponseHeaders(308, -1);
+	}
+
+	private String listJson(Map<String, String> query) {
+		int maxResults = query.containsKey("maxResults") ? Integer.parseInt(query.get("maxResults")) : 100;
+		ConcurrentNavigableMap<String, Long> page = query.containsKey("pageToken") 
+				? files.tailMap(query.get("pageToken"), true) : files;
+		StringBuilder json = new StringBuilder("{\"kind\":\"drive#fileList\",\"items\":[");
+		String nextPageToken = null;
+		int count = 0;
+		for (Map.Entry<String, Long> entry : page.entrySet()) {
+			if (count == maxResults) {
+				nextPageToken = entry.getKey();
+				break;
+			}
+			if (count++ > 0) {
+				json.append(',');
+			}
+			json.append(fileJson(entry.getKey(), entry.getValue()));
+		}
+		json.append(']');
+		if (nextPageToken != null) {
+			json.append(",\"nextPageToken\":\"").append(nextPageToken).append('"');
+		}
+		return json.append('}').toString();
+	}
+
+	private String fileJson(String id, long size) {
+		return "{\"kind\":\"drive#file\",\"id\":\"" + id + "\",\"etag\":\"\\\"" + id + "\\\"\""
+				+ ",\"title\":\"" + id + ".bin\",\"mimeType\":\"application/octet-stream\""
+				+ ",\"downloadUrl\":\"" + getRootUrl() + DOWNLOAD_PATH.substring(1) + id + "\""
+				+ ",\"md5Checksum\":\"" + (size == content.length ? md5 : "") + "\""
+				+ ",\"fileSize\":\"" + size + "\",\"modifiedDate\":\"2026-01-01T00:00:00.000Z\""
+				+ ",\"createdDate\":\"2026-01-01T00:00:00.000Z\""
+				+ ",\"parents\":[{\"id\":\"root\",\"isRoot\":true}],\"labels\":{\"trashed\":false}}";
+	}
+
+	private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(UTF8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream os = exchange.getResponseBody();
+		os.write(body);
+		os.close();
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String reason, String message) 
+			throws IOException {
+		sendJson(exchange, status, "{\"error\":{\"errors\":[{\"domain\":\"usageLimits\",\"reason\":\"" + reason 
+				+ "\",\"message\":\"" + message + "\"}],\"code\":" + status + ",\"message\":\"" + message + "\"}}");
+	}
+
+	private static Map<String, String> query(URI uri) {
+		Map<String, String> answer = new HashMap<String, String>();
+		String query = uri.getQuery();
+		if (query != null) {
+			for (String pair : query.split("&")) {
+				int eq = pair.indexOf('=');
+				if (eq > 0) {
+					answer.put(pair.substring(0, eq), pair.substring(eq + 1));
+				}
+			}
+		}
+		return answer;
+	}
+
+	private static void drain(InputStream is) throws IOException {
+		byte[] buffer = new byte[8192];
+		while (is.read(buffer) != -1) {
+			// discard
+		}
+		is.close();
+	}
+
+}
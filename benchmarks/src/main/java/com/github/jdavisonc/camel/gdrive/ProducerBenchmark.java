@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Upload of a batch of exchanges from a single routing thread.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProducerBenchmark {
+
+	/** Exchanges per operation */
+	@Param({"1", "50"})
+	public int batchSize;
+
+	@Param({"1024", "1048576"})
+	public int payloadSize;
+
+	/** Uploads in flight, 1 uploads synchronously */
+	@Param({"1", "16"})
+	public int concurrency;
+
+	/** Server latency in millis */
+	@Param({"0", "20"})
+	public long latency;
+
+	@Param({"0"})
+	public double errorRate;
+
+	private BenchmarkSupport support;
+
+	private GDriveEndpoint endpoint;
+
+	private GDriveProducer producer;
+
+	private byte[] payload;
+
+	@Setup
+	public void setUp() throws Exception {
+		support = new BenchmarkSupport(0, payloadSize, latency, errorRate);
+		endpoint = support.createEndpoint(concurrency > 1 
+				? "asyncUpload=true&maxInflightUploads=" + concurrency : "asyncUpload=false");
+		producer = (GDriveProducer) endpoint.createProducer();
+		producer.start();
+		payload = support.server.getContent();
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		producer.stop();
+		support.stop();
+	}
+
+	@Benchmark
+	public int process() throws Exception {
+		final CountDownLatch done = new CountDownLatch(batchSize);
+		final AtomicInteger failures = new AtomicInteger();
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		for (int i = 0; i < batchSize; i++) {
+			final Exchange exchange = endpoint.createExchange();
+			exchange.getIn().setBody(payload);
+			exchange.getIn().setHeader(GDriveConstants.TITLE, "bench-" + i + ".bin");
+			producer.process(exchange, new AsyncCallback() {
+				@Override
+				public void done(boolean doneSync) {
+					if (exchange.getException() != null) {
+						failures.incrementAndGet();
+						failure.compareAndSet(null, exchange.getException());
+					}
+					done.countDown();
+				}
+			});
+		}
+		done.await();
+		if (failures.get() > 0 && errorRate == 0) {
+			// nothing was injected, so the numbers would not measure uploads
+			throw new IllegalStateException(failures.get() + " out of " + batchSize + " uploads failed", 
+					failure.get());
+		}
+		return failures.get();
+	}
+
+}
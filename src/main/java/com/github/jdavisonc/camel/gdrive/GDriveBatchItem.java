@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An operation of a batch sent to the producer: a file upload, a folder or
+ * metadata-only file creation, or a patch of the title, description or
+ * properties of an existing file.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveBatchItem {
+
+	private String fileId;
+
+	private String title;
+
+	private String description;
+
+	private String mimeType;
+
+	private String parentId;
+
+	private String folderPath;
+
+	private Map<String, String> properties = new LinkedHashMap<String, String>();
+
+	private Object content;
+
+	/**
+	 * @return an item uploading the given content, such as a byte array, a file or a stream
+	 */
+	public static GDriveBatchItem upload(String title, Object content) {
+		GDriveBatchItem item = new GDriveBatchItem();
+		item.setTitle(title);
+		item.setContent(content);
+		return item;
+	}
+
+	/**
+	 * @return an item creating a folder
+	 */
+	public static GDriveBatchItem folder(String title) {
+		GDriveBatchItem item = new GDriveBatchItem();
+		item.setTitle(title);
+		item.setMimeType(GDriveFileFilter.FOLDER_MIME_TYPE);
+		return item;
+	}
+
+	/**
+	 * @return an item updating the metadata of an existing file
+	 */
+	public static GDriveBatchItem patch(String fileId) {
+		GDriveBatchItem item = new GDriveBatchItem();
+		item.setFileId(fileId);
+		return item;
+	}
+
+	/**
+	 * @return {@code true} if the item has content to upload, otherwise it only
+	 *         carries metadata and is sent within a batch request
+	 */
+	public boolean hasContent() {
+		return content != null;
+	}
+
+	public String getFileId() {
+		return fileId;
+	}
+
+	public void setFileId(String fileId) {
+		this.fileId = fileId;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public void setTitle(String title) {
+		this.title = title;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+	}
+
+	public String getMimeType() {
+		return mimeType;
+	}
+
+	public void setMimeType(String mimeType) {
+		this.mimeType = mimeType;
+	}
+
+	public String getParentId() {
+		return parentId;
+	}
+
+	public void setParentId(String parentId) {
+		this.parentId = parentId;
+	}
+
+	public String getFolderPath() {
+		return folderPath;
+	}
+
+	/**
+	 * Set the path of the folder to store the item in, created if missing, unless a parent id is set.
+	 */
+	public void setFolderPath(String folderPath) {
+		this.folderPath = folderPath;
+	}
+
+	public Map<String, String> getProperties() {
+		return properties;
+	}
+
+	public void setProperties(Map<String, String> properties) {
+		this.properties = properties;
+	}
+
+	public Object getContent() {
+		return content;
+	}
+
+	public void setContent(Object content) {
+		this.content = content;
+	}
+
+	@Override
+	public String toString() {
+		return "GDriveBatchItem[" + (fileId != null ? fileId : title) + "]";
+	}
+
+}
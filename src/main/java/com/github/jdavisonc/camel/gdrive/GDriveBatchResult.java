@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+/**
+ * The outcome of one item of a batch sent to the producer.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveBatchResult {
+
+	private final int index;
+
+	private final String title;
+
+	private String fileId;
+
+	private String etag;
+
+	private Exception exception;
+
+	public GDriveBatchResult(int index, String title) {
+		this.index = index;
+		this.title = title;
+	}
+
+	/**
+	 * @return {@code true} if the item was stored
+	 */
+	public boolean isSuccess() {
+		return exception == null && fileId != null;
+	}
+
+	/**
+	 * @return the position of the item in the batch
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getFileId() {
+		return fileId;
+	}
+
+	public void setFileId(String fileId) {
+		this.fileId = fileId;
+	}
+
+	public String getEtag() {
+		return etag;
+	}
+
+	public void setEtag(String etag) {
+		this.etag = etag;
+	}
+
+	public Exception getException() {
+		return exception;
+	}
+
+	public void setException(Exception exception) {
+		this.exception = exception;
+	}
+
+	@Override
+	public String toString() {
+		return "GDriveBatchResult[" + index + ", " + (isSuccess() ? fileId : exception) + "]";
+	}
+
+}
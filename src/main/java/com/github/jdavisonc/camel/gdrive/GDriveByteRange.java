@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * An inclusive byte range of a file's content, written {@code first-last} or
+ * {@code first-} up to the end of the content, like the HTTP Range header.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public final class GDriveByteRange {
+
+	private final long first;
+
+	private final long last;
+
+	/**
+	 * @param first offset of the first byte
+	 * @param last offset of the last byte, -1 for the end of the content
+	 */
+	public GDriveByteRange(long first, long last) {
+		if (first < 0 || (last >= 0 && last < first)) {
+			throw new IllegalArgumentException("Invalid byte range " + first + "-" + last);
+		}
+		this.first = first;
+		this.last = last;
+	}
+
+	/**
+	 * @param value a range such as {@code 0-1023}, {@code 1024-} or {@code bytes=0-1023}
+	 */
+	public static GDriveByteRange parse(String value) {
+		String range = value.trim();
+		if (range.startsWith("bytes=")) {
+			range = range.substring("bytes=".length());
+		}
+		int dash = range.indexOf('-');
+		if (dash <= 0) {
+			throw new IllegalArgumentException("Invalid byte range " + value);
+		}
+		try {
+			long first = Long.parseLong(range.substring(0, dash).trim());
+			String end = range.substring(dash + 1).trim();
+			return new GDriveByteRange(first, end.length() == 0 ? -1 : Long.parseLong(end));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid byte range " + value, e);
+		}
+	}
+
+	/**
+	 * @return the range of the given header value, {@code null} if there is none
+	 */
+	static GDriveByteRange of(Object value) {
+		if (value == null) {
+			return null;
+		}
+		if (value instanceof GDriveByteRange) {
+			return (GDriveByteRange) value;
+		}
+		return parse(value.toString());
+	}
+
+	public long getFirst() {
+		return first;
+	}
+
+	public long getLast() {
+		return last;
+	}
+
+	/**
+	 * @return the value of the HTTP Range header
+	 */
+	public String toHeader() {
+		return "bytes=" + this;
+	}
+
+	/**
+	 * Read only this range of a stream over the whole content.
+	 */
+	public InputStream slice(InputStream is) throws IOException {
+		try {
+			ByteStreams.skipFully(is, first);
+		} catch (IOException e) {
+			is.close();
+			throw e;
+		}
+		return last >= 0 ? ByteStreams.limit(is, last - first + 1) : is;
+	}
+
+	@Override
+	public String toString() {
+		return first + "-" + (last >= 0 ? String.valueOf(last) : "");
+	}
+
+}
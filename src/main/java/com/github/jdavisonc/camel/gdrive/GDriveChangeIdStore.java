@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.IOException;
+
+/**
+ * Keeps the cursor of the Drive changes feed, so an incremental consumer
+ * can resume from the last change it has processed.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public interface GDriveChangeIdStore {
+
+	/**
+	 * Load the last processed change id.
+	 * 
+	 * @return the change id, or {@code null} if nothing was processed yet
+	 * @throws IOException
+	 */
+	Long load() throws IOException;
+
+	/**
+	 * Save the last processed change id.
+	 * 
+	 * @param changeId the change id
+	 * @throws IOException
+	 */
+	void save(long changeId) throws IOException;
+
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Digests a content as it is read and, once the end is reached, checks its length
+ * and MD5 checksum against the expected ones, failing the read on a mismatch.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveChecksumInputStream extends FilterInputStream {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final String expectedMd5;
+
+	private final long expectedLength;
+
+	private final MessageDigest digest = GDriveSpool.newMd5Digest();
+
+	private long length;
+
+	private boolean verified;
+
+	/**
+	 * @param expectedMd5 lowercase hex MD5 checksum of the content
+	 * @param expectedLength length of the content, -1 if unknown
+	 */
+	public GDriveChecksumInputStream(InputStream in, String expectedMd5, long expectedLength) {
+		super(in);
+		this.expectedMd5 = expectedMd5;
+		this.expectedLength = expectedLength;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b == -1) {
+			verify();
+		} else {
+			digest.update((byte) b);
+			length++;
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n == -1) {
+			verify();
+		} else {
+			digest.update(b, off, n);
+			length += n;
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		// the skipped bytes must be digested too
+		byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+		long skipped = 0;
+		while (skipped < n) {
+			int r = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+			if (r == -1) {
+				break;
+			}
+			skipped += r;
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		// not supported, the digest cannot be rewound
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	/**
+	 * @return the number of bytes read so far
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	private void verify() throws IOException {
+		if (verified) {
+			return;
+		}
+		verified = true;
+		if (expectedLength >= 0 && length != expectedLength) {
+			throw new IOException("Content is truncated or corrupted, read " + length + " bytes out of " 
+					+ expectedLength);
+		}
+		String actual = BaseEncoding.base16().lowerCase().encode(digest.digest());
+		if (!actual.equalsIgnoreCase(expectedMd5)) {
+			throw new IOException("Content is corrupted, its checksum is " + actual + " instead of " + expectedMd5);
+		}
+	}
+
+}
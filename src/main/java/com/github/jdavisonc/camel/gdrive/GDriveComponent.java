@@ -16,10 +16,29 @@
  */
 package com.github.jdavisonc.camel.gdrive;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.camel.Endpoint;
 import org.apache.camel.impl.DefaultComponent;
+import org.apache.camel.util.ObjectHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 /**
  * Represents the component that manages {@link GDriveEndpoint}.
@@ -28,6 +47,27 @@ import org.apache.camel.impl.DefaultComponent;
  */
 public class GDriveComponent extends DefaultComponent {
 
+	private static final Logger LOG = LoggerFactory.getLogger(GDriveComponent.class);
+	
+	private HttpTransport httpTransport;
+	
+	private final Map<String, HttpTransport> httpTransports = new HashMap<String, HttpTransport>();
+
+	private final ConcurrentMap<String, GDriveTokenManager> tokenManagers = new ConcurrentHashMap<String, GDriveTokenManager>();
+	
+	private ScheduledExecutorService tokenRefreshExecutor;
+	
+	private final Map<String, GDriveContentCache> contentCaches = new HashMap<String, GDriveContentCache>();
+	
+	private final Cache<String, GDriveRateLimiter> rateLimiters = CacheBuilder.newBuilder()
+			.expireAfterAccess(1, TimeUnit.HOURS).build();
+	
+	/** Rate limits already reported as overridden by the limiter of their credential */
+	private final Set<String> rateConflicts = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	
+	private final Cache<String, GDriveFolderResolver> folderResolvers = CacheBuilder.newBuilder()
+			.expireAfterAccess(1, TimeUnit.HOURS).build();
+
     @Override
 	protected Endpoint createEndpoint(String uri, String remaining, Map<String, Object> parameters) throws Exception {
     	
@@ -37,4 +77,149 @@ public class GDriveComponent extends DefaultComponent {
         GDriveEndpoint endpoint = new GDriveEndpoint(uri, this, configuration);
         return endpoint;
     }
+
+    /**
+     * Get the transport of an endpoint. Unless one is given to the endpoint or to the
+     * component, endpoints with the same transport settings share one transport and
+     * its connection pool.
+     */
+    public synchronized HttpTransport getHttpTransport(GDriveConfiguration configuration) {
+    	if (configuration.getHttpTransport() != null) {
+    		return configuration.getHttpTransport();
+    	}
+    	if (httpTransport != null) {
+    		return httpTransport;
+    	}
+    	String key = GDriveHttpTransportFactory.getKey(configuration);
+    	HttpTransport transport = httpTransports.get(key);
+    	if (transport == null) {
+    		LOG.debug("Creating HTTP transport {}", key);
+    		transport = GDriveHttpTransportFactory.createHttpTransport(configuration);
+    		httpTransports.put(key, transport);
+    	}
+    	return transport;
+    }
+    
+    public HttpTransport getHttpTransport() {
+    	return httpTransport;
+    }
+
+    /**
+     * Set the transport shared by all the endpoints of this component.
+     */
+    public void setHttpTransport(HttpTransport httpTransport) {
+    	this.httpTransport = httpTransport;
+    }
+    
+    /**
+     * Get the rate limiter shared by all the calls made with the given credential. The
+     * credential has a single quota, so its rate is set by the first endpoint using it,
+     * and a different rateLimit of another endpoint is only reported.
+     */
+    public GDriveRateLimiter getRateLimiter(String credentialKey, final GDriveConfiguration configuration) {
+    	GDriveRateLimiter rateLimiter;
+    	try {
+    		rateLimiter = rateLimiters.get(credentialKey, new Callable<GDriveRateLimiter>() {
+    			@Override
+    			public GDriveRateLimiter call() {
+    				return new GDriveRateLimiter(configuration.getRateLimit(), configuration.getBackoffRetries(), 
+    						configuration.getBackoffInitialDelay(), configuration.getBackoffMaxDelay());
+    			}
+    		});
+    	} catch (ExecutionException e) {
+    		throw ObjectHelper.wrapRuntimeCamelException(e.getCause());
+    	}
+    	if (rateLimiter.getMaxRate() != configuration.getRateLimit() 
+    			&& rateConflicts.add(credentialKey + ":" + configuration.getRateLimit())) {
+    		LOG.warn("Ignoring rateLimit {}, the calls of the same credential are already limited to {} per second "
+    				+ "by another endpoint", configuration.getRateLimit(), rateLimiter.getMaxRate());
+    	}
+    	return rateLimiter;
+    }
+    
+    /**
+     * Get the folder resolver shared by all the endpoints using the given credential.
+     */
+    public GDriveFolderResolver getFolderResolver(String credentialKey, final GDriveConfiguration configuration) {
+    	try {
+    		return folderResolvers.get(credentialKey, new Callable<GDriveFolderResolver>() {
+    			@Override
+    			public GDriveFolderResolver call() {
+    				return new GDriveFolderResolver(configuration.getFolderCacheTtl());
+    			}
+    		});
+    	} catch (ExecutionException e) {
+    		throw ObjectHelper.wrapRuntimeCamelException(e.getCause());
+    	}
+    }
+    
+    /**
+     * Get the content cache of an endpoint, the endpoints using the same directory
+     * share one cache.
+     * 
+     * @return the cache, {@code null} if the endpoint has no cache directory
+     */
+    public synchronized GDriveContentCache getContentCache(GDriveConfiguration configuration) throws IOException {
+    	if (configuration.getContentCacheDirectory() == null) {
+    		return null;
+    	}
+    	File directory = new File(configuration.getContentCacheDirectory()).getCanonicalFile();
+    	GDriveContentCache contentCache = contentCaches.get(directory.getPath());
+    	if (contentCache == null) {
+    		LOG.debug("Opening content cache {}", directory);
+    		contentCache = new GDriveContentCache(directory, configuration.getContentCacheSize());
+    		contentCaches.put(directory.getPath(), contentCache);
+    	}
+    	return contentCache;
+    }
+    
+    /**
+     * Get the token manager shared by all the endpoints using the given client id.
+     */
+    public GDriveTokenManager getTokenManager(String clientId, String clientSecret, 
+    		HttpTransport httpTransport, JsonFactory jsonFactory) {
+    	GDriveTokenManager tokenManager = tokenManagers.get(clientId);
+    	if (tokenManager == null) {
+    		GDriveTokenManager created = new GDriveTokenManager(httpTransport, jsonFactory, 
+    				clientId, clientSecret, getTokenRefreshExecutor());
+    		tokenManager = tokenManagers.putIfAbsent(clientId, created);
+    		if (tokenManager == null) {
+    			tokenManager = created;
+    		}
+    	}
+    	return tokenManager;
+    }
+    
+    private synchronized ScheduledExecutorService getTokenRefreshExecutor() {
+    	if (tokenRefreshExecutor == null) {
+    		tokenRefreshExecutor = getCamelContext().getExecutorServiceManager()
+    				.newScheduledThreadPool(this, "GDriveTokenRefresh", 1);
+    	}
+    	return tokenRefreshExecutor;
+    }
+    
+    @Override
+    protected void doStop() throws Exception {
+    	for (GDriveTokenManager tokenManager : tokenManagers.values()) {
+    		tokenManager.shutdown();
+    	}
+    	tokenManagers.clear();
+    	synchronized (this) {
+    		if (tokenRefreshExecutor != null) {
+    			getCamelContext().getExecutorServiceManager().shutdownNow(tokenRefreshExecutor);
+    			tokenRefreshExecutor = null;
+    		}
+    		// only shut down the transports created by the component
+    		for (HttpTransport transport : httpTransports.values()) {
+    			try {
+    				transport.shutdown();
+    			} catch (IOException e) {
+    				LOG.warn("Error occurred during shutting down transport", e);
+    			}
+    		}
+    		httpTransports.clear();
+    		contentCaches.clear();
+    	}
+    	super.doStop();
+    }
 }
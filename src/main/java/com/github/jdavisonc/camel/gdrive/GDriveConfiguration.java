@@ -16,6 +16,11 @@
  */
 package com.github.jdavisonc.camel.gdrive;
 
+import org.apache.camel.spi.IdempotentRepository;
+
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.googleapis.media.MediaHttpUploaderProgressListener;
+import com.google.api.client.http.HttpTransport;
 import com.google.api.services.drive.Drive;
 
 /**
@@ -35,6 +40,130 @@ public class GDriveConfiguration implements Cloneable {
 	private String clientSecret;
 	
     private boolean deleteAfterRead = true;
+    
+	private boolean useChanges;
+	
+	private GDriveChangeIdStore changeIdStore;
+	
+	private String changeIdStoreFile;
+	
+	private boolean pagePrefetch = true;
+	
+	private int downloadConcurrency = 1;
+	
+	private long spoolThreshold = 128 * 1024;
+	
+	private long resumableUploadThreshold = -1;
+	
+	private int uploadChunkSize = MediaHttpUploader.DEFAULT_CHUNK_SIZE;
+	
+	private MediaHttpUploaderProgressListener uploadProgressListener;
+	
+	private int clientCacheSize = 1000;
+	
+	private long clientIdleTimeout = 10 * 60 * 1000L;
+	
+	private HttpTransport httpTransport;
+	
+	private String transportType = GDriveHttpTransportFactory.NET;
+	
+	private int maxConnections = 200;
+	
+	private int maxConnectionsPerRoute = 20;
+	
+	private int connectTimeout = 20 * 1000;
+	
+	private int readTimeout = 20 * 1000;
+	
+	private long keepAliveTimeout = -1;
+	
+	private int deleteBatchSize = 1;
+	
+	private long deleteBatchInterval = 1000;
+	
+	private double rateLimit = 10;
+	
+	private int backoffRetries = 5;
+	
+	private long backoffInitialDelay = 1000;
+	
+	private long backoffMaxDelay = 32000;
+	
+	private String folderId;
+	
+	private String mimeType;
+	
+	private String modifiedSince;
+	
+	private String titleContains;
+	
+	private boolean includeTrashed;
+	
+	private String query;
+	
+	private String fields = GDriveConstants.DEFAULT_FILE_FIELDS;
+	
+	private boolean idempotent;
+	
+	private IdempotentRepository<String> idempotentRepository;
+	
+	private String idempotentRepositoryFile;
+	
+	private int idempotentCacheSize = 100000;
+	
+	private String contentCacheDirectory;
+	
+	private long contentCacheSize = 1024L * 1024 * 1024;
+	
+	private boolean deduplicate;
+	
+	private long deduplicateRefreshInterval = 60000;
+	
+	private boolean asyncUpload;
+	
+	private int maxInflightUploads = 10;
+	
+	private int batchUploadConcurrency = 4;
+	
+	private String folderPath;
+	
+	private long folderCacheTtl = 600000;
+	
+	private GDriveMetricsListener metricsListener;
+	
+	private String rootUrl;
+	
+	private long segmentedDownloadThreshold = -1;
+	
+	private long downloadSegmentSize = 8 * 1024 * 1024;
+	
+	private int downloadSegmentConcurrency = 4;
+	
+	private boolean verifyChecksum;
+	
+	private int pageSize;
+	
+	private int pushPort = -1;
+	
+	private String pushHost = "localhost";
+	
+	private String pushToken;
+	
+	private String pushAddress;
+	
+	private long pushChannelTtl = 3600000;
+	
+	private int shardCount = 1;
+	
+	private int shardIndex;
+	
+	private long leaseDuration = -1;
+	
+	private String leaseOwner;
+	
+	private int prefetchSize;
+	
+	private long prefetchBytes = 64L * 1024 * 1024;
 	
 	public Drive getGDriveClient() {
 		return gDriveClient;
@@ -83,5 +212,501 @@ public class GDriveConfiguration implements Cloneable {
 	public void setAccessToken(String accessToken) {
 		this.accessToken = accessToken;
 	}
+
+	public boolean isUseChanges() {
+		return useChanges;
+	}
+
+	public void setUseChanges(boolean useChanges) {
+		this.useChanges = useChanges;
+	}
+
+	public GDriveChangeIdStore getChangeIdStore() {
+		return changeIdStore;
+	}
+
+	public void setChangeIdStore(GDriveChangeIdStore changeIdStore) {
+		this.changeIdStore = changeIdStore;
+	}
+
+	public String getChangeIdStoreFile() {
+		return changeIdStoreFile;
+	}
+
+	public void setChangeIdStoreFile(String changeIdStoreFile) {
+		this.changeIdStoreFile = changeIdStoreFile;
+	}
+
+	public boolean isPagePrefetch() {
+		return pagePrefetch;
+	}
+
+	public void setPagePrefetch(boolean pagePrefetch) {
+		this.pagePrefetch = pagePrefetch;
+	}
+
+	public int getDownloadConcurrency() {
+		return downloadConcurrency;
+	}
+
+	public void setDownloadConcurrency(int downloadConcurrency) {
+		this.downloadConcurrency = downloadConcurrency;
+	}
+
+	public long getSpoolThreshold() {
+		return spoolThreshold;
+	}
+
+	public void setSpoolThreshold(long spoolThreshold) {
+		this.spoolThreshold = spoolThreshold;
+	}
+
+	public long getResumableUploadThreshold() {
+		return resumableUploadThreshold;
+	}
+
+	public void setResumableUploadThreshold(long resumableUploadThreshold) {
+		this.resumableUploadThreshold = resumableUploadThreshold;
+	}
+
+	public int getUploadChunkSize() {
+		return uploadChunkSize;
+	}
+
+	public void setUploadChunkSize(int uploadChunkSize) {
+		this.uploadChunkSize = uploadChunkSize;
+	}
+
+	public MediaHttpUploaderProgressListener getUploadProgressListener() {
+		return uploadProgressListener;
+	}
+
+	public void setUploadProgressListener(MediaHttpUploaderProgressListener uploadProgressListener) {
+		this.uploadProgressListener = uploadProgressListener;
+	}
+
+	public int getClientCacheSize() {
+		return clientCacheSize;
+	}
+
+	public void setClientCacheSize(int clientCacheSize) {
+		this.clientCacheSize = clientCacheSize;
+	}
+
+	public long getClientIdleTimeout() {
+		return clientIdleTimeout;
+	}
+
+	public void setClientIdleTimeout(long clientIdleTimeout) {
+		this.clientIdleTimeout = clientIdleTimeout;
+	}
+
+	public HttpTransport getHttpTransport() {
+		return httpTransport;
+	}
+
+	public void setHttpTransport(HttpTransport httpTransport) {
+		this.httpTransport = httpTransport;
+	}
+
+	public String getTransportType() {
+		return transportType;
+	}
+
+	public void setTransportType(String transportType) {
+		this.transportType = transportType;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	public long getKeepAliveTimeout() {
+		return keepAliveTimeout;
+	}
+
+	public void setKeepAliveTimeout(long keepAliveTimeout) {
+		this.keepAliveTimeout = keepAliveTimeout;
+	}
+
+	public int getDeleteBatchSize() {
+		return deleteBatchSize;
+	}
+
+	public void setDeleteBatchSize(int deleteBatchSize) {
+		this.deleteBatchSize = deleteBatchSize;
+	}
+
+	public long getDeleteBatchInterval() {
+		return deleteBatchInterval;
+	}
+
+	public void setDeleteBatchInterval(long deleteBatchInterval) {
+		this.deleteBatchInterval = deleteBatchInterval;
+	}
+
+	public double getRateLimit() {
+		return rateLimit;
+	}
+
+	public void setRateLimit(double rateLimit) {
+		this.rateLimit = rateLimit;
+	}
+
+	public int getBackoffRetries() {
+		return backoffRetries;
+	}
+
+	public void setBackoffRetries(int backoffRetries) {
+		this.backoffRetries = backoffRetries;
+	}
+
+	public long getBackoffInitialDelay() {
+		return backoffInitialDelay;
+	}
+
+	public void setBackoffInitialDelay(long backoffInitialDelay) {
+		this.backoffInitialDelay = backoffInitialDelay;
+	}
+
+	public long getBackoffMaxDelay() {
+		return backoffMaxDelay;
+	}
+
+	public void setBackoffMaxDelay(long backoffMaxDelay) {
+		this.backoffMaxDelay = backoffMaxDelay;
+	}
+
+	public String getFolderId() {
+		return folderId;
+	}
+
+	public void setFolderId(String folderId) {
+		this.folderId = folderId;
+	}
+
+	public String getMimeType() {
+		return mimeType;
+	}
+
+	public void setMimeType(String mimeType) {
+		this.mimeType = mimeType;
+	}
+
+	public String getModifiedSince() {
+		return modifiedSince;
+	}
+
+	public void setModifiedSince(String modifiedSince) {
+		this.modifiedSince = modifiedSince;
+	}
+
+	public String getTitleContains() {
+		return titleContains;
+	}
+
+	public void setTitleContains(String titleContains) {
+		this.titleContains = titleContains;
+	}
+
+	public boolean isIncludeTrashed() {
+		return includeTrashed;
+	}
+
+	public void setIncludeTrashed(boolean includeTrashed) {
+		this.includeTrashed = includeTrashed;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	public void setQuery(String query) {
+		this.query = query;
+	}
+
+	public String getFields() {
+		return fields;
+	}
+
+	public void setFields(String fields) {
+		this.fields = fields;
+	}
+
+	public boolean isIdempotent() {
+		return idempotent;
+	}
+
+	public void setIdempotent(boolean idempotent) {
+		this.idempotent = idempotent;
+	}
+
+	public IdempotentRepository<String> getIdempotentRepository() {
+		return idempotentRepository;
+	}
+
+	public void setIdempotentRepository(IdempotentRepository<String> idempotentRepository) {
+		this.idempotentRepository = idempotentRepository;
+	}
+
+	public String getIdempotentRepositoryFile() {
+		return idempotentRepositoryFile;
+	}
+
+	public void setIdempotentRepositoryFile(String idempotentRepositoryFile) {
+		this.idempotentRepositoryFile = idempotentRepositoryFile;
+	}
+
+	public int getIdempotentCacheSize() {
+		return idempotentCacheSize;
+	}
+
+	public void setIdempotentCacheSize(int idempotentCacheSize) {
+		this.idempotentCacheSize = idempotentCacheSize;
+	}
+
+	public String getContentCacheDirectory() {
+		return contentCacheDirectory;
+	}
+
+	public void setContentCacheDirectory(String contentCacheDirectory) {
+		this.contentCacheDirectory = contentCacheDirectory;
+	}
+
+	public long getContentCacheSize() {
+		return contentCacheSize;
+	}
+
+	public void setContentCacheSize(long contentCacheSize) {
+		this.contentCacheSize = contentCacheSize;
+	}
+
+	public boolean isDeduplicate() {
+		return deduplicate;
+	}
+
+	public void setDeduplicate(boolean deduplicate) {
+		this.deduplicate = deduplicate;
+	}
+
+	public long getDeduplicateRefreshInterval() {
+		return deduplicateRefreshInterval;
+	}
+
+	public void setDeduplicateRefreshInterval(long deduplicateRefreshInterval) {
+		this.deduplicateRefreshInterval = deduplicateRefreshInterval;
+	}
+
+	public boolean isAsyncUpload() {
+		return asyncUpload;
+	}
+
+	public void setAsyncUpload(boolean asyncUpload) {
+		this.asyncUpload = asyncUpload;
+	}
+
+	public int getMaxInflightUploads() {
+		return maxInflightUploads;
+	}
+
+	public void setMaxInflightUploads(int maxInflightUploads) {
+		this.maxInflightUploads = maxInflightUploads;
+	}
+
+	public int getBatchUploadConcurrency() {
+		return batchUploadConcurrency;
+	}
+
+	public void setBatchUploadConcurrency(int batchUploadConcurrency) {
+		this.batchUploadConcurrency = batchUploadConcurrency;
+	}
+
+	public String getFolderPath() {
+		return folderPath;
+	}
+
+	public void setFolderPath(String folderPath) {
+		this.folderPath = folderPath;
+	}
+
+	public long getFolderCacheTtl() {
+		return folderCacheTtl;
+	}
+
+	public void setFolderCacheTtl(long folderCacheTtl) {
+		this.folderCacheTtl = folderCacheTtl;
+	}
+
+	public GDriveMetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
+	public void setMetricsListener(GDriveMetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
+	public String getRootUrl() {
+		return rootUrl;
+	}
+
+	public void setRootUrl(String rootUrl) {
+		this.rootUrl = rootUrl;
+	}
+
+	public long getSegmentedDownloadThreshold() {
+		return segmentedDownloadThreshold;
+	}
+
+	public void setSegmentedDownloadThreshold(long segmentedDownloadThreshold) {
+		this.segmentedDownloadThreshold = segmentedDownloadThreshold;
+	}
+
+	public long getDownloadSegmentSize() {
+		return downloadSegmentSize;
+	}
+
+	public void setDownloadSegmentSize(long downloadSegmentSize) {
+		this.downloadSegmentSize = downloadSegmentSize;
+	}
+
+	public int getDownloadSegmentConcurrency() {
+		return downloadSegmentConcurrency;
+	}
+
+	public void setDownloadSegmentConcurrency(int downloadSegmentConcurrency) {
+		this.downloadSegmentConcurrency = downloadSegmentConcurrency;
+	}
+
+	public boolean isVerifyChecksum() {
+		return verifyChecksum;
+	}
+
+	public void setVerifyChecksum(boolean verifyChecksum) {
+		this.verifyChecksum = verifyChecksum;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public void setPageSize(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	public int getPushPort() {
+		return pushPort;
+	}
+
+	public void setPushPort(int pushPort) {
+		this.pushPort = pushPort;
+	}
+
+	public String getPushHost() {
+		return pushHost;
+	}
+
+	public void setPushHost(String pushHost) {
+		this.pushHost = pushHost;
+	}
+
+	public String getPushToken() {
+		return pushToken;
+	}
+
+	public void setPushToken(String pushToken) {
+		this.pushToken = pushToken;
+	}
+
+	public String getPushAddress() {
+		return pushAddress;
+	}
+
+	public void setPushAddress(String pushAddress) {
+		this.pushAddress = pushAddress;
+	}
+
+	public long getPushChannelTtl() {
+		return pushChannelTtl;
+	}
+
+	public void setPushChannelTtl(long pushChannelTtl) {
+		this.pushChannelTtl = pushChannelTtl;
+	}
+
+	public int getShardCount() {
+		return shardCount;
+	}
+
+	public void setShardCount(int shardCount) {
+		this.shardCount = shardCount;
+	}
+
+	public int getShardIndex() {
+		return shardIndex;
+	}
+
+	public void setShardIndex(int shardIndex) {
+		this.shardIndex = shardIndex;
+	}
+
+	public long getLeaseDuration() {
+		return leaseDuration;
+	}
+
+	public void setLeaseDuration(long leaseDuration) {
+		this.leaseDuration = leaseDuration;
+	}
+
+	public String getLeaseOwner() {
+		return leaseOwner;
+	}
+
+	public void setLeaseOwner(String leaseOwner) {
+		this.leaseOwner = leaseOwner;
+	}
+
+	public int getPrefetchSize() {
+		return prefetchSize;
+	}
+
+	public void setPrefetchSize(int prefetchSize) {
+		this.prefetchSize = prefetchSize;
+	}
+
+	public long getPrefetchBytes() {
+		return prefetchBytes;
+	}
+
+	public void setPrefetchBytes(long prefetchBytes) {
+		this.prefetchBytes = prefetchBytes;
+	}
 	
 }
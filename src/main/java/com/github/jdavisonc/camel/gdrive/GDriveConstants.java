@@ -32,5 +32,23 @@ public interface GDriveConstants {
 	String MD5_CHECKSUM			= "CamelGDriveMD5";
 	String CONTENT_LENGTH		= "CamelGDriveContentLength";
 	String LAST_MODIFIED		= "CamelGDriveLastModified";
+	String BYTES_UPLOADED		= "CamelGDriveBytesUploaded";
+	String IDEMPOTENT_KEY		= "CamelGDriveIdempotentKey";
+	String DEDUPLICATED		= "CamelGDriveDeduplicated";
+	String FOLDER_ID			= "CamelGDriveFolderId";
+	String FOLDER_PATH		= "CamelGDriveFolderPath";
+	String BATCH_RESULTS		= "CamelGDriveBatchResults";
+	String RANGE				= "CamelGDriveRange";
+	
+	/**
+	 * File metadata requested by the consumer, what the exchange headers need.
+	 */
+	String DEFAULT_FILE_FIELDS	= "id,etag,title,description,mimeType,downloadUrl,md5Checksum,fileSize,"
+								+ "modifiedDate,parents(id,isRoot),labels(trashed)";
+	
+	/**
+	 * File properties, listed as well when files are claimed through leases.
+	 */
+	String PROPERTIES_FIELDS	= "properties(key,value,visibility)";
 	
 }
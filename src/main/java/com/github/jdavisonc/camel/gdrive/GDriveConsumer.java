@@ -16,22 +16,46 @@
  */
 package com.github.jdavisonc.camel.gdrive;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
 import org.apache.camel.impl.ScheduledBatchPollingConsumer;
+import org.apache.camel.processor.idempotent.MemoryIdempotentRepository;
+import org.apache.camel.spi.IdempotentRepository;
 import org.apache.camel.spi.Synchronization;
 import org.apache.camel.util.CastUtils;
+import org.apache.camel.util.IOHelper;
 import org.apache.camel.util.ObjectHelper;
+import org.apache.camel.util.ServiceHelper;
 import org.apache.camel.util.URISupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.api.client.http.HttpResponseException;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.Drive.Files.List;
+import com.google.api.services.drive.model.Change;
+import com.google.api.services.drive.model.ChangeList;
 import com.google.api.services.drive.model.File;
 import com.google.api.services.drive.model.FileList;
 
@@ -44,22 +68,615 @@ public class GDriveConsumer extends ScheduledBatchPollingConsumer {
 
 	private static final transient Logger LOG = LoggerFactory.getLogger(GDriveConsumer.class);
 	
+	private static final String LEASED_FILE = "CamelGDriveLeasedFile";
+	
+	private GDriveChangeIdStore changeIdStore;
+	
+	private ExecutorService pageExecutor;
+	
+	private GDriveFileFilter fileFilter;
+	
+	private ExecutorService downloadExecutor;
+	
+	private GDriveDownloadPipeline downloadPipeline;
+	
+	private GDriveDeleteQueue deleteQueue;
+	
+	private IdempotentRepository<String> idempotentRepository;
+	
+	private ScheduledExecutorService deleteExecutor;
+	
+	private GDrivePushListener pushListener;
+	
+	private ScheduledExecutorService pushExecutor;
+	
+	private final AtomicBoolean pushPollPending = new AtomicBoolean();
+	
+	private final Lock pollLock = new ReentrantLock();
+	
+	private GDriveLease lease;
+	
+	/** Exchanges holding a lease, renewed until they complete */
+	private final Set<Exchange> leasedExchanges = Collections.newSetFromMap(new ConcurrentHashMap<Exchange, Boolean>());
+	
+	private ScheduledExecutorService leaseExecutor;
+	
+	private volatile GDrivePrefetchQueue prefetchQueue;
+	
+	private ExecutorService prefetchExecutor;
+	
+	private final Semaphore prefetchWakeup = new Semaphore(0);
+	
+	/** Ids of the files prefetched and not consumed yet, or consumed and not deleted yet */
+	private final Map<String, Boolean> prefetchedIds = new ConcurrentHashMap<String, Boolean>();
+	
+	/** Last change id listed by the prefetch stage, which runs ahead of the stored one */
+	private Long prefetchChangeId;
+	
+	/** Ids of the changed files whose exchange failed, the change id moved past them */
+	private final Set<String> failedIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	
     public GDriveConsumer(GDriveEndpoint endpoint, Processor processor) {
         super(endpoint, processor);
     }
 
+    @Override
+    protected void doStart() throws Exception {
+        fileFilter = new GDriveFileFilter(getConfiguration());
+        if (getConfiguration().isUseChanges() && changeIdStore == null) {
+            changeIdStore = getConfiguration().getChangeIdStore();
+            if (changeIdStore == null) {
+                String storeFile = getConfiguration().getChangeIdStoreFile();
+                changeIdStore = storeFile != null
+                    ? new GDriveFileChangeIdStore(storeFile) : new GDriveMemoryChangeIdStore();
+            }
+            LOG.debug("Using change id store {}", changeIdStore);
+        }
+        if (getConfiguration().isPagePrefetch() && pageExecutor == null) {
+            pageExecutor = getEndpoint().getCamelContext().getExecutorServiceManager()
+                .newSingleThreadExecutor(this, "GDrivePagePrefetch");
+        }
+        int concurrency = getConfiguration().getDownloadConcurrency();
+        boolean prefetch = getConfiguration().getPrefetchSize() > 0;
+        if ((concurrency > 1 || prefetch) && downloadPipeline == null) {
+            downloadExecutor = getEndpoint().getCamelContext().getExecutorServiceManager()
+                .newFixedThreadPool(this, "GDriveDownload", concurrency);
+            downloadPipeline = new GDriveDownloadPipeline(downloadExecutor, concurrency,
+                getConfiguration().getSpoolThreshold());
+        }
+        int deleteBatchSize = getConfiguration().getDeleteBatchSize();
+        if (getConfiguration().isDeleteAfterRead() && deleteBatchSize > 1 && deleteQueue == null) {
+            deleteQueue = new GDriveDeleteQueue(getEndpoint(), getExceptionHandler(), deleteBatchSize);
+            long interval = getConfiguration().getDeleteBatchInterval();
+            if (interval > 0) {
+                deleteExecutor = getEndpoint().getCamelContext().getExecutorServiceManager()
+                    .newSingleThreadScheduledExecutor(this, "GDriveDelete");
+                deleteExecutor.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        deleteQueue.flush();
+                    }
+                }, interval, interval, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (getConfiguration().getLeaseDuration() >= 0 && lease == null) {
+            String owner = getConfiguration().getLeaseOwner();
+            lease = new GDriveLease(getEndpoint(), owner != null ? owner : createLeaseOwner(),
+                getConfiguration().getLeaseDuration());
+            LOG.debug("Claiming files as {}", lease.getOwner());
+        }
+        if (lease != null && lease.getDuration() > 0 && leaseExecutor == null) {
+            leaseExecutor = getEndpoint().getCamelContext().getExecutorServiceManager()
+                .newSingleThreadScheduledExecutor(this, "GDriveLeaseRenewal");
+            long interval = Math.max(lease.getDuration() / 2, 1);
+            leaseExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    renewLeases();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        if (idempotentRepository == null) {
+            idempotentRepository = createIdempotentRepository();
+        }
+        if (idempotentRepository != null) {
+            ServiceHelper.startService(idempotentRepository);
+        }
+        super.doStart();
+        if (getConfiguration().getPushPort() >= 0 && pushListener == null) {
+            pushExecutor = getEndpoint().getCamelContext().getExecutorServiceManager()
+                .newSingleThreadScheduledExecutor(this, "GDrivePush");
+            pushListener = new GDrivePushListener(getEndpoint(), getConfiguration(), new Runnable() {
+                @Override
+                public void run() {
+                    triggerPoll();
+                }
+            });
+            pushListener.start(pushExecutor);
+        }
+        if (prefetch && prefetchQueue == null) {
+            prefetchQueue = new GDrivePrefetchQueue(getConfiguration().getPrefetchSize(), 
+                getConfiguration().getPrefetchBytes());
+            prefetchExecutor = getEndpoint().getCamelContext().getExecutorServiceManager()
+                .newSingleThreadExecutor(this, "GDrivePrefetch");
+            prefetchExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    prefetch();
+                }
+            });
+        }
+    }
+    
+    /**
+     * The prefetch stage, listing the files and starting their downloads ahead of the route
+     * until the queue is full, then listing again every delay millis or on a trigger.
+     */
+    private void prefetch() {
+        while (isRunAllowed()) {
+            try {
+                if (!isSuspended() && resolveFolder()) {
+                    if (getConfiguration().isUseChanges()) {
+                        pollChanges();
+                    } else {
+                        pollFiles();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (isRunAllowed()) {
+                    getExceptionHandler().handleException("Error prefetching files", e);
+                }
+            }
+            try {
+                prefetchWakeup.tryAcquire(getDelay(), TimeUnit.MILLISECONDS);
+                prefetchWakeup.drainPermits();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Poll as soon as possible, out of the schedule. Notifications received before the
+     * triggered poll starts are served by that same poll.
+     */
+    public void triggerPoll() {
+        if (prefetchQueue != null) {
+            // list again at once, the stage polls once it queued the new files
+            prefetchWakeup.release();
+            return;
+        }
+        pollNow();
+    }
+    
+    /**
+     * Run a poll on the push executor, unless one is already pending. Without push
+     * notifications the next scheduled poll does it.
+     */
+    private void pollNow() {
+        ScheduledExecutorService executor = pushExecutor;
+        if (executor != null && pushPollPending.compareAndSet(false, true)) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    pushPollPending.set(false);
+                    GDriveConsumer.this.run();
+                }
+            });
+        }
+    }
+    
+    /**
+     * @return an owner unique to this consumer, named after the host
+     */
+    protected String createLeaseOwner() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+    
+    protected IdempotentRepository<String> createIdempotentRepository() {
+        GDriveConfiguration configuration = getConfiguration();
+        if (configuration.getIdempotentRepository() != null) {
+            return configuration.getIdempotentRepository();
+        }
+        if (configuration.getIdempotentRepositoryFile() != null) {
+            return new GDriveFileIdempotentRepository(configuration.getIdempotentRepositoryFile());
+        }
+        if (configuration.isIdempotent()) {
+            return MemoryIdempotentRepository.memoryIdempotentRepository(configuration.getIdempotentCacheSize());
+        }
+        return null;
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (pushListener != null) {
+            pushListener.stop();
+            pushListener = null;
+        }
+        if (pushExecutor != null) {
+            getEndpoint().getCamelContext().getExecutorServiceManager().shutdownNow(pushExecutor);
+            pushExecutor = null;
+        }
+        super.doStop();
+        GDrivePrefetchQueue queue = prefetchQueue;
+        if (queue != null) {
+            prefetchQueue = null;
+            // give back what the route did not get
+            for (Object item : queue.close()) {
+                if (item instanceof Exchange) {
+                    releaseExchange((Exchange) item);
+                }
+            }
+            getEndpoint().getCamelContext().getExecutorServiceManager().shutdownNow(prefetchExecutor);
+            prefetchExecutor = null;
+            prefetchedIds.clear();
+            prefetchChangeId = null;
+        }
+        ServiceHelper.stopService(idempotentRepository);
+        if (deleteExecutor != null) {
+            getEndpoint().getCamelContext().getExecutorServiceManager().shutdownNow(deleteExecutor);
+            deleteExecutor = null;
+        }
+        if (leaseExecutor != null) {
+            getEndpoint().getCamelContext().getExecutorServiceManager().shutdownNow(leaseExecutor);
+            leaseExecutor = null;
+        }
+        if (deleteQueue != null) {
+            // delete what the completed exchanges left behind
+            deleteQueue.close();
+            deleteQueue = null;
+        }
+        if (pageExecutor != null) {
+            getEndpoint().getCamelContext().getExecutorServiceManager().shutdownNow(pageExecutor);
+            pageExecutor = null;
+        }
+        if (downloadExecutor != null) {
+            getEndpoint().getCamelContext().getExecutorServiceManager().shutdownNow(downloadExecutor);
+            downloadExecutor = null;
+            downloadPipeline = null;
+        }
+    }
+
     @Override
     protected int poll() throws Exception {
-    	
+    	// scheduled and triggered polls take turns
+    	pollLock.lock();
+    	try {
+    		int files;
+    		if (prefetchQueue != null) {
+    			files = pollPrefetched();
+    		} else if (!resolveFolder()) {
+    			return 0;
+    		} else {
+    			files = getConfiguration().isUseChanges() ? pollChanges() : pollFiles();
+    		}
+    		getEndpoint().getMetrics().recordPoll(files);
+    		return files;
+    	} finally {
+    		try {
+    			if (deleteQueue != null) {
+    				deleteQueue.flush();
+    			}
+    		} finally {
+    			pollLock.unlock();
+    		}
+    	}
+    }
+    
+    /**
+     * Resolve the folder path to consume from, if any, the resolved folders are cached
+     * so this costs no call most of the time.
+     * 
+     * @return {@code false} if the folder does not exist
+     */
+    private boolean resolveFolder() throws IOException {
+    	String folderPath = getConfiguration().getFolderPath();
+    	if (folderPath == null || getConfiguration().getFolderId() != null) {
+    		return true;
+    	}
+    	String folderId = getEndpoint().getFolderResolver()
+    			.resolve(getGDriveClient(), getEndpoint().getRateLimiter(), folderPath, false);
+    	if (folderId == null) {
+    		LOG.debug("Folder {} not found, nothing to consume", folderPath);
+    		return false;
+    	}
+    	if (!folderId.equals(fileFilter.getFolderId())) {
+    		fileFilter = new GDriveFileFilter(getConfiguration(), folderId);
+    	}
+    	return true;
+    }
+    
+    public GDrivePushListener getPushListener() {
+    	return pushListener;
+    }
+    
+    /**
+     * Polls all the files of the drive, page by page.
+     */
+    protected int pollFiles() throws Exception {
     	LOG.trace("Quering objects in drive...");
-    	List listMethod = getGDriveClient().files().list();
-    	listMethod.setMaxResults(getMaxMessagesPerPoll());
-    	FileList fileList = listMethod.execute();
+    	final List listMethod = getGDriveClient().files().list();
+    	listMethod.setQ(fileFilter.toQuery());
+    	listMethod.setFields("nextPageToken,items(" + getFields() + ")");
+    	GDrivePageIterator<FileList> pages = new GDrivePageIterator<FileList>(pageExecutor, 
+    			getConfiguration().getPageSize(), getMaxListed()) {
+    		@Override
+    		protected FileList fetchPage(String pageToken, int maxResults) throws Exception {
+    			listMethod.setPageToken(pageToken);
+    			listMethod.setMaxResults(maxResults > 0 ? maxResults : null);
+    			return execute("list", new GDriveRateLimiter.Call<FileList>() {
+    				@Override
+    				public FileList call() throws IOException {
+    					return listMethod.execute();
+    				}
+    			});
+    		}
+    		
+    		@Override
+    		protected String getNextPageToken(FileList page) {
+    			return page.getNextPageToken();
+    		}
+    		
+    		@Override
+    		protected int getItemCount(FileList page) {
+    			return page.getItems() != null ? page.getItems().size() : 0;
+    		}
+    	};
+    	
+    	int total = 0;
+    	Set<String> listed = prefetchQueue != null ? new HashSet<String>() : null;
+    	try {
+    		while (isBatchAllowed() && pages.hasNext()) {
+    			FileList fileList = pages.next();
+    			if (fileList.getItems() == null) {
+    				continue;
+    			}
+    			LOG.trace("Found {} objects in drive...", fileList.getItems().size());
+    			
+    			java.util.List<File> files = filter(fileList.getItems());
+    			if (listed != null) {
+    				for (File file : files) {
+    					listed.add(file.getId());
+    				}
+    			}
+    			total += dispatch(createExchanges(files));
+    		}
+    		if (listed != null && isBatchAllowed()) {
+    			// consumed files no longer listed are deleted, forget them
+    			for (Map.Entry<String, Boolean> entry : prefetchedIds.entrySet()) {
+    				if (entry.getValue() && !listed.contains(entry.getKey())) {
+    					prefetchedIds.remove(entry.getKey());
+    				}
+    			}
+    		}
+    	} finally {
+    		pages.close();
+    	}
+    	return total;
+    }
+    
+    /**
+     * Polls only the files changed since the last processed change id, so the
+     * cost of a poll depends on the churn of the drive and not on its size.
+     */
+    protected int pollChanges() throws Exception {
+    	GDrivePrefetchQueue queue = prefetchQueue;
+    	Long lastChangeId = queue != null && prefetchChangeId != null ? prefetchChangeId : changeIdStore.load();
     	
-    	LOG.trace("Found {} objects in drive...", fileList.getItems().size());
+    	LOG.trace("Quering changes in drive since change id {}...", lastChangeId);
+    	final Drive.Changes.List listMethod = getGDriveClient().changes().list();
+    	listMethod.setIncludeDeleted(false);
+    	if (lastChangeId != null) {
+    		listMethod.setStartChangeId(lastChangeId + 1);
+    	}
+    	listMethod.setFields("nextPageToken,largestChangeId,items(id,deleted,file(" + getFields() + "))");
     	
-    	Queue<Exchange> exchanges = createExchanges(fileList.getItems());
-    	return processBatch(CastUtils.cast(exchanges));
+    	int total = 0;
+    	if (!failedIds.isEmpty()) {
+    		total += dispatch(createExchanges(getFailedFiles()));
+    	}
+    	int maxListed = getMaxListed();
+    	if (maxListed > 0 && total >= maxListed) {
+    		return total;
+    	}
+    	// the cursor is only moved past whole pages, so pages end where the poll does
+    	GDrivePageIterator<ChangeList> pages = new GDrivePageIterator<ChangeList>(pageExecutor, 
+    			getConfiguration().getPageSize(), maxListed > 0 ? maxListed - total : 0) {
+    		@Override
+    		protected ChangeList fetchPage(String pageToken, int maxResults) throws Exception {
+    			listMethod.setPageToken(pageToken);
+    			listMethod.setMaxResults(maxResults > 0 ? maxResults : null);
+    			return execute("changes", new GDriveRateLimiter.Call<ChangeList>() {
+    				@Override
+    				public ChangeList call() throws IOException {
+    					return listMethod.execute();
+    				}
+    			});
+    		}
+    		
+    		@Override
+    		protected String getNextPageToken(ChangeList page) {
+    			return page.getNextPageToken();
+    		}
+    		
+    		@Override
+    		protected int getItemCount(ChangeList page) {
+    			return page.getItems() != null ? page.getItems().size() : 0;
+    		}
+    	};
+    	
+    	try {
+    		while (isBatchAllowed() && pages.hasNext()) {
+    			ChangeList changeList = pages.next();
+    			
+    			java.util.List<File> files = new ArrayList<File>();
+    			Long cursor = lastChangeId;
+    			if (changeList.getItems() != null) {
+    				for (Change change : changeList.getItems()) {
+    					if (!Boolean.TRUE.equals(change.getDeleted()) && change.getFile() != null
+    							&& fileFilter.accept(change.getFile())) {
+    						files.add(change.getFile());
+    					}
+    					cursor = change.getId();
+    				}
+    			}
+    			// nothing left after this page, so jump straight to the head of the feed
+    			if (changeList.getNextPageToken() == null && changeList.getLargestChangeId() != null) {
+    				cursor = changeList.getLargestChangeId();
+    			}
+    			
+    			LOG.trace("Found {} changed objects in drive...", files.size());
+    			
+    			total += dispatch(createExchanges(files));
+    			
+    			// only move the cursor if the whole page was handed to the route
+    			if (cursor != null && isBatchAllowed() && !cursor.equals(lastChangeId)) {
+    				if (queue != null) {
+    					// stored once the route got the page
+    					if (!queue.put(new ChangeCursor(cursor), 0)) {
+    						break;
+    					}
+    					prefetchChangeId = cursor;
+    				} else {
+    					changeIdStore.save(cursor);
+    				}
+    				lastChangeId = cursor;
+    			}
+    		}
+    	} finally {
+    		pages.close();
+    	}
+    	return total;
+    }
+    
+    /**
+     * @return the maximum number of files listed by a poll, 0 for all of them. The
+     *         prefetch stage is bounded by its queue instead
+     */
+    private int getMaxListed() {
+    	return prefetchQueue != null ? 0 : Math.max(getMaxMessagesPerPoll(), 0);
+    }
+    
+    /**
+     * Get the files whose exchange failed since the last poll in changes mode, as the stored
+     * change id no longer lists them. Files deleted or filtered out since are dropped.
+     */
+    private java.util.List<File> getFailedFiles() throws Exception {
+    	java.util.List<File> files = new ArrayList<File>();
+    	for (final String fileId : new ArrayList<String>(failedIds)) {
+    		failedIds.remove(fileId);
+    		final Drive.Files.Get getMethod = getGDriveClient().files().get(fileId).setFields(getFields());
+    		File file;
+    		try {
+    			file = execute("get", new GDriveRateLimiter.Call<File>() {
+    				@Override
+    				public File call() throws IOException {
+    					return getMethod.execute();
+    				}
+    			});
+    		} catch (HttpResponseException e) {
+    			if (e.getStatusCode() == 404) {
+    				LOG.trace("Failed object with id [{}] was deleted", fileId);
+    				continue;
+    			}
+    			failedIds.add(fileId);
+    			throw e;
+    		}
+    		if (fileFilter.accept(file)) {
+    			LOG.trace("Retrying failed object with id [{}]", fileId);
+    			files.add(file);
+    		}
+    	}
+    	return files;
+    }
+    
+    /**
+     * Hand a page of exchanges to the route or, with prefetch, queue them for the route,
+     * waiting while the queue is full.
+     */
+    private int dispatch(Queue<Exchange> exchanges) throws Exception {
+    	GDrivePrefetchQueue queue = prefetchQueue;
+    	if (queue == null) {
+    		return processBatch(CastUtils.cast(exchanges));
+    	}
+    	int total = 0;
+    	while (!exchanges.isEmpty()) {
+    		Exchange exchange = exchanges.poll();
+    		Long length = exchange.getIn().getHeader(GDriveConstants.CONTENT_LENGTH, Long.class);
+    		if (!isBatchAllowed() || !queue.put(exchange, length != null ? length : 0)) {
+    			releaseExchange(exchange);
+    			continue;
+    		}
+    		total++;
+    	}
+    	if (total > 0) {
+    		// hand the new files to the route without waiting for the next delay
+    		pollNow();
+    	}
+    	return total;
+    }
+    
+    /**
+     * Hand the prefetched exchanges to the route, batch after batch while there are some,
+     * and store the change ids reached on the way.
+     */
+    protected int pollPrefetched() throws Exception {
+    	GDrivePrefetchQueue queue = prefetchQueue;
+    	int total = 0;
+    	while (queue != null && isBatchAllowed()) {
+    		java.util.List<Object> items = queue.drain(getMaxMessagesPerPoll());
+    		if (items.isEmpty()) {
+    			break;
+    		}
+    		Queue<Object> batch = new LinkedList<Object>();
+    		for (Object item : items) {
+    			if (!(item instanceof ChangeCursor)) {
+    				batch.add(item);
+    				continue;
+    			}
+    			total += processBatch(batch);
+    			batch.clear();
+    			if (isBatchAllowed()) {
+    				changeIdStore.save(((ChangeCursor) item).changeId);
+    			}
+    		}
+    		total += processBatch(batch);
+    	}
+    	return total;
+    }
+    
+    /**
+     * @return the fields of the listed files, with their properties when files are leased
+     */
+    private String getFields() {
+    	String fields = getConfiguration().getFields();
+    	return lease != null ? fields + "," + GDriveConstants.PROPERTIES_FIELDS : fields;
+    }
+    
+    /**
+     * Drop the listed files the route would not be able to consume, such as files
+     * without downloadable content.
+     */
+    protected java.util.List<File> filter(java.util.List<File> files) {
+        java.util.List<File> answer = new ArrayList<File>(files.size());
+        for (File file : files) {
+            if (fileFilter.accept(file)) {
+                answer.add(file);
+            } else {
+                LOG.trace("Skipping object with id [{}]", file.getId());
+            }
+        }
+        return answer;
     }
     
     protected Queue<Exchange> createExchanges(java.util.List<File> fileList) throws Exception {
@@ -67,13 +684,79 @@ public class GDriveConsumer extends ScheduledBatchPollingConsumer {
         
         Queue<Exchange> answer = new LinkedList<Exchange>();
         for (File file : fileList) {
-            Exchange exchange = getEndpoint().createExchange(file);
+            if (prefetchQueue != null && prefetchedIds.containsKey(file.getId())) {
+                LOG.trace("Skipping prefetched object with id [{}]", file.getId());
+                continue;
+            }
+            String key = null;
+            if (idempotentRepository != null) {
+                key = getIdempotentKey(file);
+                if (!idempotentRepository.add(key)) {
+                    LOG.trace("Skipping already consumed object with id [{}]", file.getId());
+                    continue;
+                }
+            }
+            File claimed = file;
+            if (lease != null) {
+                try {
+                    claimed = lease.claim(file);
+                } catch (IOException e) {
+                    // such as a read-only file, the others can still be claimed
+                    LOG.warn("Cannot claim file with id " + file.getId() + ", skipping it", e);
+                    claimed = null;
+                }
+                if (claimed == null) {
+                    if (key != null) {
+                        idempotentRepository.remove(key);
+                    }
+                    continue;
+                }
+            }
+            Exchange exchange;
+            try {
+                exchange = getEndpoint().createExchange(getEndpoint().getExchangePattern(), claimed, downloadPipeline);
+            } catch (Exception e) {
+                // give back this file and the exchanges which will not reach the route
+                if (key != null) {
+                    idempotentRepository.remove(key);
+                }
+                if (lease != null) {
+                    try {
+                        lease.release(claimed);
+                    } catch (IOException ignored) {
+                        LOG.debug("Cannot release lease of file with id " + file.getId() + ", it expires by itself", ignored);
+                    }
+                }
+                for (Exchange created : answer) {
+                    releaseExchange(created);
+                }
+                throw e;
+            }
+            if (key != null) {
+                exchange.setProperty(GDriveConstants.IDEMPOTENT_KEY, key);
+            }
+            if (lease != null) {
+                exchange.setProperty(LEASED_FILE, claimed);
+                leasedExchanges.add(exchange);
+            }
+            if (prefetchQueue != null) {
+                prefetchedIds.put(file.getId(), Boolean.FALSE);
+            }
             answer.add(exchange);
         }
 
         return answer;
     }
 
+    /**
+     * The key of a file in the idempotent repository, it changes with the content of the
+     * file, or with its etag when Drive has no checksum for it.
+     */
+    protected String getIdempotentKey(File file) {
+        String version = file.getMd5Checksum() != null ? file.getMd5Checksum() : file.getEtag();
+        return file.getId() + ":" + version;
+    }
+
 	@Override
 	public int processBatch(Queue<Object> exchanges) throws Exception {
         int total = exchanges.size();
@@ -109,21 +792,70 @@ public class GDriveConsumer extends ScheduledBatchPollingConsumer {
             LOG.trace("Processing exchange [{}]...", exchange);
             getProcessor().process(exchange);
         }
+        
+        // the consumer is stopping, give back what was not handed to the route
+        while (!exchanges.isEmpty()) {
+            releaseExchange(ObjectHelper.cast(Exchange.class, exchanges.poll()));
+        }
         return total;
 	}
     
     /**
-     * Strategy to delete the message after being processed.
+     * Release an exchange which will not be processed, so its file is picked up again later.
+     */
+    protected void releaseExchange(Exchange exchange) {
+        String key = exchange.getProperty(GDriveConstants.IDEMPOTENT_KEY, String.class);
+        if (key != null) {
+            idempotentRepository.remove(key);
+        }
+        releaseLease(exchange);
+        forgetPrefetched(exchange, false);
+        retryLater(exchange);
+        Object body = exchange.getIn().getBody();
+        if (body instanceof Closeable) {
+            IOHelper.close((Closeable) body);
+        }
+    }
+    
+    /**
+     * Strategy to delete the message after being processed. When deletes are batched
+     * the file is only queued, and the outcome is reported through the exception handler.
      *
      * @param exchange the exchange
      */
     protected void processCommit(Exchange exchange) {
+        String key = exchange.getProperty(GDriveConstants.IDEMPOTENT_KEY, String.class);
+        if (key != null) {
+            idempotentRepository.confirm(key);
+        }
+        // a deleted file stays known until it is no longer listed
+        forgetPrefetched(exchange, getConfiguration().isDeleteAfterRead() && !getConfiguration().isUseChanges());
+        leasedExchanges.remove(exchange);
+        File leased = exchange.getProperty(LEASED_FILE, File.class);
+        if (leased != null && !getConfiguration().isDeleteAfterRead()) {
+            try {
+                // no other consumer takes this content again
+                lease.complete(leased);
+            } catch (IOException e) {
+                LOG.warn("Error occurred during completing lease of file with id " + leased.getId(), e);
+            }
+        }
         try {
             if (getConfiguration().isDeleteAfterRead()) {
-                String fileId = exchange.getIn().getHeader(GDriveConstants.FILE_ID, String.class);
+                final String fileId = exchange.getIn().getHeader(GDriveConstants.FILE_ID, String.class);
+                if (deleteQueue != null) {
+                    LOG.trace("Queuing file with id {} for deletion...", fileId);
+                    deleteQueue.add(fileId, exchange);
+                    return;
+                }
                 LOG.trace("Deleting file with id {}...", fileId);
 
-                getGDriveClient().files().delete(fileId).execute();
+                execute("delete", new GDriveRateLimiter.Call<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        return getGDriveClient().files().delete(fileId).execute();
+                    }
+                });
                 LOG.trace("File deleted");
             }
         } catch (IOException e) {
@@ -138,6 +870,14 @@ public class GDriveConsumer extends ScheduledBatchPollingConsumer {
      * @param exchange the exchange
      */
     protected void processRollback(Exchange exchange) {
+        String key = exchange.getProperty(GDriveConstants.IDEMPOTENT_KEY, String.class);
+        if (key != null) {
+            // the file can be consumed again
+            idempotentRepository.remove(key);
+        }
+        releaseLease(exchange);
+        forgetPrefetched(exchange, false);
+        retryLater(exchange);
         Exception cause = exchange.getException();
         if (cause != null) {
             LOG.warn("Exchange failed, so rolling back message status: " + exchange, cause);
@@ -146,6 +886,101 @@ public class GDriveConsumer extends ScheduledBatchPollingConsumer {
         }
     }
 
+    /**
+     * Give the file of an exchange back to the other consumers, if it was leased.
+     */
+    private void releaseLease(Exchange exchange) {
+        leasedExchanges.remove(exchange);
+        File leased = exchange.getProperty(LEASED_FILE, File.class);
+        if (leased != null) {
+            try {
+                lease.release(leased);
+            } catch (IOException e) {
+                LOG.debug("Cannot release lease of file with id " + leased.getId() + ", it expires by itself", e);
+            }
+        }
+    }
+
+    /**
+     * Extend the leases of the exchanges not completed yet, so no other consumer claims
+     * their files while they are queued or processed.
+     */
+    private void renewLeases() {
+        for (Exchange exchange : leasedExchanges) {
+            File leased = exchange.getProperty(LEASED_FILE, File.class);
+            try {
+                File renewed = lease.renew(leased);
+                if (renewed == null) {
+                    LOG.warn("Lease of file with id {} lost, another consumer may take it", leased.getId());
+                    leasedExchanges.remove(exchange);
+                } else if (leasedExchanges.contains(exchange)) {
+                    exchange.setProperty(LEASED_FILE, renewed);
+                }
+            } catch (Exception e) {
+                LOG.warn("Cannot renew lease of file with id " + leased.getId() + ", renewing it again later", e);
+            }
+        }
+    }
+
+    private void forgetPrefetched(Exchange exchange, boolean untilUnlisted) {
+        if (prefetchQueue != null) {
+            String fileId = exchange.getIn().getHeader(GDriveConstants.FILE_ID, String.class);
+            if (untilUnlisted) {
+                prefetchedIds.put(fileId, Boolean.TRUE);
+            } else {
+                prefetchedIds.remove(fileId);
+            }
+        }
+    }
+
+    /**
+     * In changes mode the change id may already be past the file of the exchange,
+     * so remember it to fetch it again on the next poll.
+     */
+    private void retryLater(Exchange exchange) {
+        if (getConfiguration().isUseChanges()) {
+            String fileId = exchange.getIn().getHeader(GDriveConstants.FILE_ID, String.class);
+            if (fileId != null) {
+                failedIds.add(fileId);
+            }
+        }
+    }
+
+    public GDrivePrefetchQueue getPrefetchQueue() {
+        return prefetchQueue;
+    }
+
+    public GDriveLease getLease() {
+        return lease;
+    }
+
+    public IdempotentRepository<String> getIdempotentRepository() {
+        return idempotentRepository;
+    }
+
+    public void setIdempotentRepository(IdempotentRepository<String> idempotentRepository) {
+        this.idempotentRepository = idempotentRepository;
+    }
+
+    public GDriveDeleteQueue getDeleteQueue() {
+        return deleteQueue;
+    }
+
+    public GDriveChangeIdStore getChangeIdStore() {
+        return changeIdStore;
+    }
+
+    public void setChangeIdStore(GDriveChangeIdStore changeIdStore) {
+        this.changeIdStore = changeIdStore;
+    }
+
+    /**
+     * Execute a call to the Drive API through the rate limiter of the consumer's credential.
+     */
+    protected <T> T execute(String operation, GDriveRateLimiter.Call<T> call) throws IOException {
+        return getEndpoint().getRateLimiter().execute(operation, call);
+    }
+
     protected GDriveConfiguration getConfiguration() {
         return getEndpoint().getConfiguration();
     }
@@ -164,4 +999,16 @@ public class GDriveConsumer extends ScheduledBatchPollingConsumer {
         return (GDriveEndpoint) super.getEndpoint();
     }
     
+    /**
+     * Marks in the prefetch queue the change id reached once the exchanges before it are handed to the route.
+     */
+    private static final class ChangeCursor {
+        
+        private final Long changeId;
+        
+        private ChangeCursor(Long changeId) {
+            this.changeId = changeId;
+        }
+    }
+    
 }
@@ -0,0 +1,418 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.regex.Pattern;
+
+import org.apache.camel.util.IOHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Local cache of file contents, addressed by their MD5 checksum. The content of a
+ * file is kept in a file named after its checksum, so the files with the same
+ * content share one entry whatever their id. The least recently used entries are
+ * evicted once the cache grows over its maximum size.
+ * <p>
+ * The content is checked against its checksum when it enters the cache and again
+ * while a cached body is read, a corrupted entry fails the read and is evicted.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveContentCache {
+
+	private static final Logger LOG = LoggerFactory.getLogger(GDriveContentCache.class);
+
+	private static final Pattern ENTRY_NAME = Pattern.compile("[0-9a-f]{32}");
+
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File directory;
+
+	private final long maxSize;
+
+	/** Entry sizes by checksum, in access order */
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+	private final ConcurrentMap<String, FutureTask<File>> loads = new ConcurrentHashMap<String, FutureTask<File>>();
+
+	private long size;
+
+	public GDriveContentCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		init();
+	}
+
+	private void init() {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("Cannot create cache directory " + directory);
+		}
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		List<File> cached = new ArrayList<File>();
+		for (File file : files) {
+			if (file.getName().endsWith(TEMP_SUFFIX)) {
+				// left over by an interrupted download
+				delete(file);
+			} else if (ENTRY_NAME.matcher(file.getName()).matches()) {
+				cached.add(file);
+			}
+		}
+		// rebuild the access order from the modification dates, which are updated on hits
+		Collections.sort(cached, new Comparator<File>() {
+			@Override
+			public int compare(File f1, File f2) {
+				long m1 = f1.lastModified();
+				long m2 = f2.lastModified();
+				return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+			}
+		});
+		synchronized (this) {
+			for (File file : cached) {
+				entries.put(file.getName(), file.length());
+				size += file.length();
+			}
+			evict();
+		}
+		LOG.debug("Content cache {} opened with {} entries ({} bytes)", new Object[] {directory, entries.size(), size});
+	}
+
+	/**
+	 * @return {@code true} if the content with the given checksum is cached
+	 */
+	public synchronized boolean contains(String md5) {
+		return entries.containsKey(normalize(md5));
+	}
+
+	/**
+	 * Open the cached content with the given checksum.
+	 * 
+	 * @return a stream over the cached content, {@code null} if it is not cached
+	 */
+	public InputStream get(String md5) throws IOException {
+		String key = normalize(md5);
+		synchronized (this) {
+			if (!entries.containsKey(key)) {
+				return null;
+			}
+		}
+		File file = new File(directory, key);
+		CachedInputStream is;
+		try {
+			is = new CachedInputStream(file, key);
+		} catch (IOException e) {
+			// deleted behind our back
+			invalidate(key);
+			return null;
+		}
+		file.setLastModified(System.currentTimeMillis());
+		return is;
+	}
+
+	/**
+	 * Open the cached content with the given checksum, loading it first if it is not
+	 * cached. Concurrent loads of the same content share a single download. Content
+	 * larger than the cache is not kept, it is streamed from the loader instead.
+	 * 
+	 * @param md5 the checksum of the content
+	 * @param loader opens the stream to load the content from
+	 * @return a stream over the cached content
+	 * @throws IOException if the content cannot be loaded or does not match its checksum
+	 */
+	public InputStream get(String md5, Callable<InputStream> loader) throws IOException {
+		InputStream is = get(md5);
+		if (is != null) {
+			return is;
+		}
+		load(md5, loader);
+		is = get(md5);
+		if (is == null) {
+			// evicted right away, the content does not fit in the cache
+			LOG.debug("Content {} does not fit in the cache, streaming it", md5);
+			is = stream(md5, loader);
+		}
+		return is;
+	}
+
+	/**
+	 * @return a stream over the content straight from the loader, checked against its checksum
+	 */
+	private static InputStream stream(String md5, Callable<InputStream> loader) throws IOException {
+		InputStream is;
+		try {
+			is = loader.call();
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("Cannot load content " + md5, e);
+		}
+		return new GDriveChecksumInputStream(is != null ? is : new ByteArrayInputStream(new byte[0]), 
+				normalize(md5), -1);
+	}
+
+	/**
+	 * Load the content with the given checksum into the cache, unless it is already there.
+	 * 
+	 * @see #get(String, Callable)
+	 */
+	public void load(final String md5, final Callable<InputStream> loader) throws IOException {
+		final String key = normalize(md5);
+		if (contains(key)) {
+			return;
+		}
+		FutureTask<File> task = loads.get(key);
+		if (task == null) {
+			FutureTask<File> created = new FutureTask<File>(new Callable<File>() {
+				@Override
+				public File call() throws Exception {
+					try {
+						return doLoad(key, loader);
+					} finally {
+						loads.remove(key);
+					}
+				}
+			});
+			task = loads.putIfAbsent(key, created);
+			if (task == null) {
+				task = created;
+				task.run();
+			}
+		}
+		try {
+			task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading content " + md5);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Cannot load content " + md5, e.getCause());
+		}
+	}
+
+	private File doLoad(String key, Callable<InputStream> loader) throws Exception {
+		File temp = File.createTempFile(key, TEMP_SUFFIX, directory);
+		MessageDigest digest = newDigest();
+		InputStream is = null;
+		OutputStream os = null;
+		try {
+			is = loader.call();
+			os = new FileOutputStream(temp);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			if (is != null) {
+				int n;
+				while ((n = is.read(buffer)) != -1) {
+					digest.update(buffer, 0, n);
+					os.write(buffer, 0, n);
+				}
+			}
+			os.close();
+			os = null;
+			String actual = hex(digest.digest());
+			if (!actual.equals(key)) {
+				throw new IOException("Checksum mismatch, expected " + key + " but downloaded " + actual);
+			}
+			File file = new File(directory, key);
+			if (!temp.renameTo(file)) {
+				// an entry left by another process, replace it
+				delete(file);
+				if (!temp.renameTo(file)) {
+					throw new IOException("Cannot move " + temp + " to " + file);
+				}
+			}
+			add(key, file.length());
+			LOG.trace("Cached content {}", key);
+			return file;
+		} finally {
+			IOHelper.close(is);
+			IOHelper.close(os);
+			if (temp.exists()) {
+				delete(temp);
+			}
+		}
+	}
+
+	private synchronized void add(String key, long length) {
+		Long previous = entries.put(key, length);
+		if (previous != null) {
+			size -= previous;
+		}
+		size += length;
+		evict();
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+		while (size > maxSize && it.hasNext()) {
+			Map.Entry<String, Long> eldest = it.next();
+			it.remove();
+			size -= eldest.getValue();
+			// streams already open keep reading the unlinked file
+			delete(new File(directory, eldest.getKey()));
+			LOG.trace("Evicted content {}", eldest.getKey());
+		}
+	}
+
+	/**
+	 * Drop the cached content with the given checksum.
+	 */
+	public synchronized void invalidate(String md5) {
+		String key = normalize(md5);
+		Long length = entries.remove(key);
+		if (length != null) {
+			size -= length;
+			delete(new File(directory, key));
+		}
+	}
+
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	private static String normalize(String md5) {
+		return md5.toLowerCase();
+	}
+
+	private static void delete(File file) {
+		if (!file.delete() && file.exists()) {
+			LOG.debug("Cannot delete {}", file);
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		return BaseEncoding.base16().lowerCase().encode(bytes);
+	}
+
+	/**
+	 * A stream over a cached file, which checks the content against its checksum
+	 * as it is read.
+	 */
+	private final class CachedInputStream extends FileInputStream {
+
+		private final String key;
+
+		private final MessageDigest digest = newDigest();
+
+		private boolean verified;
+
+		private CachedInputStream(File file, String key) throws IOException {
+			super(file);
+			this.key = key;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b == -1) {
+				verify();
+			} else {
+				digest.update((byte) b);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b) throws IOException {
+			return read(b, 0, b.length);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n == -1) {
+				verify();
+			} else {
+				digest.update(b, off, n);
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// the skipped bytes must be digested too
+			byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+			long skipped = 0;
+			while (skipped < n) {
+				int r = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+				if (r == -1) {
+					break;
+				}
+				skipped += r;
+			}
+			return skipped;
+		}
+
+		private void verify() throws IOException {
+			if (verified) {
+				return;
+			}
+			verified = true;
+			String actual = hex(digest.digest());
+			if (!actual.equals(key)) {
+				invalidate(key);
+				throw new IOException("Cached content " + key + " is corrupted, its checksum is " + actual);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.spi.ExceptionHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.services.drive.Drive;
+
+/**
+ * Collects the files to delete after their exchanges were committed, and
+ * deletes them in batch requests once enough of them are queued, or when
+ * flushed.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveDeleteQueue {
+
+	private static final Logger LOG = LoggerFactory.getLogger(GDriveDeleteQueue.class);
+
+	/**
+	 * Maximum number of calls in one batch request.
+	 */
+	public static final int MAX_BATCH_SIZE = 100;
+
+	private static final int MAX_ATTEMPTS = 5;
+
+	/**
+	 * Millis to wait before sending the throttled deletes again when closing, doubled each time.
+	 */
+	private static final long RETRY_DELAY = 100;
+
+	private final GDriveEndpoint endpoint;
+
+	private final ExceptionHandler exceptionHandler;
+
+	private final int batchSize;
+
+	private final Object flushLock = new Object();
+
+	private List<PendingDelete> pending = new ArrayList<PendingDelete>();
+
+	public GDriveDeleteQueue(GDriveEndpoint endpoint, ExceptionHandler exceptionHandler, int batchSize) {
+		this.endpoint = endpoint;
+		this.exceptionHandler = exceptionHandler;
+		this.batchSize = Math.min(Math.max(batchSize, 1), MAX_BATCH_SIZE);
+	}
+
+	/**
+	 * Queue the file of a committed exchange for deletion.
+	 */
+	public void add(String fileId, Exchange exchange) {
+		boolean full;
+		synchronized (this) {
+			pending.add(new PendingDelete(fileId, exchange));
+			full = pending.size() >= batchSize;
+			endpoint.getMetrics().getDeleteQueueDepth().set(pending.size());
+		}
+		if (full) {
+			flush();
+		}
+	}
+
+	/**
+	 * Delete all the queued files.
+	 */
+	public void flush() {
+		synchronized (flushLock) {
+			List<PendingDelete> deletes;
+			synchronized (this) {
+				if (pending.isEmpty()) {
+					return;
+				}
+				deletes = pending;
+				pending = new ArrayList<PendingDelete>();
+				endpoint.getMetrics().getDeleteQueueDepth().set(0);
+			}
+			for (int from = 0; from < deletes.size(); from += batchSize) {
+				execute(deletes.subList(from, Math.min(from + batchSize, deletes.size())));
+			}
+		}
+	}
+
+	/**
+	 * Delete all the queued files before the consumer stops. Throttled deletes are sent
+	 * again until they run out of attempts, and reported as failed then.
+	 */
+	public void close() {
+		flush();
+		long delay = RETRY_DELAY;
+		// only throttled deletes are queued again by a flush
+		while (size() > 0) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				List<PendingDelete> deletes;
+				synchronized (this) {
+					deletes = pending;
+					pending = new ArrayList<PendingDelete>();
+					endpoint.getMetrics().getDeleteQueueDepth().set(0);
+				}
+				for (PendingDelete delete : deletes) {
+					failed(delete, e);
+				}
+				return;
+			}
+			delay *= 2;
+			flush();
+		}
+	}
+
+	/**
+	 * @return the number of files waiting to be deleted
+	 */
+	public synchronized int size() {
+		return pending.size();
+	}
+
+	private void execute(List<PendingDelete> deletes) {
+		LOG.trace("Deleting {} files in batch...", deletes.size());
+		GDriveRateLimiter rateLimiter = endpoint.getRateLimiter();
+		final List<PendingDelete> throttled = new ArrayList<PendingDelete>();
+		try {
+			Drive client = endpoint.getGDriveClient();
+			final BatchRequest batch = client.batch();
+			for (final PendingDelete delete : deletes) {
+				client.files().delete(delete.fileId).queue(batch, new JsonBatchCallback<Void>() {
+					@Override
+					public void onSuccess(Void result, HttpHeaders responseHeaders) {
+						LOG.trace("File {} deleted", delete.fileId);
+					}
+
+					@Override
+					public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+						if (GDriveRateLimiter.isRateLimitExceeded(error) && ++delete.attempts < MAX_ATTEMPTS) {
+							throttled.add(delete);
+							return;
+						}
+						failed(delete, new IOException("Error occurred during deleting file " 
+								+ delete.fileId + ": " + error.getMessage()));
+					}
+				});
+			}
+			rateLimiter.execute("batch", deletes.size(), new GDriveRateLimiter.Call<Void>() {
+				@Override
+				public Void call() throws IOException {
+					batch.execute();
+					return null;
+				}
+			});
+		} catch (Exception e) {
+			for (PendingDelete delete : deletes) {
+				failed(delete, e);
+			}
+			return;
+		}
+		if (!throttled.isEmpty()) {
+			// slow down and send them again with the next batch
+			LOG.debug("{} deletes throttled, queuing them again", throttled.size());
+			rateLimiter.onRateLimitExceeded();
+			synchronized (this) {
+				pending.addAll(throttled);
+				endpoint.getMetrics().getDeleteQueueDepth().set(pending.size());
+			}
+		}
+	}
+
+	/**
+	 * Report a failed delete. The exchange has already completed, so it is only given
+	 * to the exception handler for context.
+	 */
+	private void failed(PendingDelete delete, Throwable cause) {
+		String message = "Error occurred during deleting file " + delete.fileId;
+		if (exceptionHandler != null) {
+			exceptionHandler.handleException(message, delete.exchange, cause);
+		} else {
+			LOG.warn(message, cause);
+		}
+	}
+
+	private static final class PendingDelete {
+
+		private final String fileId;
+
+		private final Exchange exchange;
+
+		private int attempts;
+
+		PendingDelete(String fileId, Exchange exchange) {
+			this.fileId = fileId;
+			this.exchange = exchange;
+		}
+	}
+
+}
@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Downloads the content of a batch of files concurrently. At most
+ * {@code concurrency} bodies are downloaded or held at once, a permit is only
+ * given back when the body of an exchange is closed, so downloads never run
+ * further ahead of the route than that.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveDownloadPipeline {
+
+	private final ExecutorService executorService;
+
+	private final Semaphore permits;
+
+	private final int concurrency;
+
+	private final long spoolThreshold;
+
+	public GDriveDownloadPipeline(ExecutorService executorService, int concurrency, long spoolThreshold) {
+		this.executorService = executorService;
+		this.permits = new Semaphore(concurrency, true);
+		this.concurrency = concurrency;
+		this.spoolThreshold = spoolThreshold;
+	}
+
+	/**
+	 * Schedule a download, downloads are started in submission order.
+	 * 
+	 * @param source opens the stream to download
+	 * @return the handle of the download
+	 */
+	public Download submit(Callable<InputStream> source) {
+		Download download = new Download(source);
+		download.future = executorService.submit(download);
+		return download;
+	}
+
+	/**
+	 * @return the number of bodies being downloaded or waiting to be read
+	 */
+	public int getInflight() {
+		return concurrency - permits.availablePermits();
+	}
+
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	public final class Download implements Callable<GDriveSpool> {
+
+		private final Callable<InputStream> source;
+
+		private Future<GDriveSpool> future;
+
+		private GDriveSpool result;
+
+		private boolean permitHeld;
+
+		private boolean closed;
+
+		private Download(Callable<InputStream> source) {
+			this.source = source;
+		}
+
+		@Override
+		public GDriveSpool call() throws Exception {
+			permits.acquire();
+			synchronized (this) {
+				permitHeld = true;
+				if (closed) {
+					releasePermit();
+					return null;
+				}
+			}
+			GDriveSpool spool;
+			try {
+				spool = GDriveSpool.copyOf(source.call(), spoolThreshold);
+			} catch (Exception e) {
+				synchronized (this) {
+					releasePermit();
+				}
+				throw e;
+			}
+			synchronized (this) {
+				if (closed) {
+					// nobody is waiting for this body anymore
+					spool.release();
+					releasePermit();
+					return null;
+				}
+				result = spool;
+				return spool;
+			}
+		}
+
+		/**
+		 * Wait for the download to complete.
+		 * 
+		 * @return a stream over the downloaded content
+		 * @throws IOException if the download failed
+		 */
+		public InputStream await() throws IOException {
+			try {
+				GDriveSpool spool = future.get();
+				if (spool == null) {
+					throw new IOException("Download closed");
+				}
+				return spool.newInputStream();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for download");
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException("Download failed", e.getCause());
+			}
+		}
+
+		/**
+		 * Discard the downloaded content and give the permit back.
+		 */
+		public synchronized void close() {
+			if (!closed) {
+				closed = true;
+				future.cancel(false);
+				if (result != null) {
+					result.release();
+					result = null;
+				}
+				releasePermit();
+			}
+		}
+
+		private void releasePermit() {
+			if (permitHeld) {
+				permitHeld = false;
+				permits.release();
+			}
+		}
+
+	}
+
+}
@@ -16,8 +16,14 @@
  */
 package com.github.jdavisonc.camel.gdrive;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.camel.Consumer;
 import org.apache.camel.Exchange;
@@ -25,8 +31,14 @@ import org.apache.camel.ExchangePattern;
 import org.apache.camel.Message;
 import org.apache.camel.Processor;
 import org.apache.camel.Producer;
+import org.apache.camel.api.management.ManagedAttribute;
+import org.apache.camel.api.management.ManagedOperation;
+import org.apache.camel.api.management.ManagedResource;
 import org.apache.camel.impl.DefaultExchange;
 import org.apache.camel.impl.ScheduledPollEndpoint;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.apache.camel.util.IOHelper;
+import org.apache.camel.util.ObjectHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,44 +46,54 @@ import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
 import com.google.api.client.googleapis.auth.oauth2.GoogleRefreshTokenRequest;
 import com.google.api.client.googleapis.auth.oauth2.GoogleTokenResponse;
 import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
 import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.http.HttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.jackson.JacksonFactory;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.File;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 
 /**
  * Represents a GDrive endpoint.
  * 
  * @author Jorge Davison (jdavisonc)
  */
+@ManagedResource(description = "Managed GDrive Endpoint")
 public class GDriveEndpoint extends ScheduledPollEndpoint {
 	
 	private static final Logger LOG = LoggerFactory.getLogger(GDriveEndpoint.class);
 	
-	private Drive gDriveClient;
+	private volatile Drive gDriveClient;
+	
+	private volatile LoadingCache<String, Drive> gDriveClients;
 	
 	private int maxMessagesPerPoll = 10;
 	
 	private GDriveConfiguration configuration;
 	
-	private final HttpTransport httpTransport;
-	
 	private final JsonFactory jsonFactory;
+	
+	private GDriveContentCache contentCache;
+	
+	private final GDriveMetrics metrics;
+	
+	private ExecutorService segmentExecutor;
 
     public GDriveEndpoint(String uri, GDriveComponent component) {
-        super(uri, component);
-	    httpTransport = new NetHttpTransport();
-	    jsonFactory = new JacksonFactory();
+        this(uri, component, new GDriveConfiguration());
     }
 
     public GDriveEndpoint(String uri, GDriveComponent comp, GDriveConfiguration configuration) {
     	super(uri, comp);
         this.configuration = configuration;
-	    httpTransport = new NetHttpTransport();
 	    jsonFactory = new JacksonFactory();
+	    metrics = new GDriveMetrics(configuration.getMetricsListener());
 	}
 
 	@Override
@@ -92,20 +114,179 @@ public class GDriveEndpoint extends ScheduledPollEndpoint {
         return true;
     }
 
-	public Drive getGDriveClient() {
-        if (gDriveClient == null) {
-        	gDriveClient = configuration.getGDriveClient() != null
-                ? configuration.getGDriveClient() : createGDriveClient();
+    @Override
+    protected void doStart() throws Exception {
+        super.doStart();
+        contentCache = getComponent().getContentCache(configuration);
+        if (configuration.getSegmentedDownloadThreshold() >= 0) {
+            segmentExecutor = getCamelContext().getExecutorServiceManager()
+                    .newFixedThreadPool(this, "GDriveSegmentedDownload", configuration.getDownloadSegmentConcurrency());
         }
-        return gDriveClient;
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        if (segmentExecutor != null) {
+            getCamelContext().getExecutorServiceManager().shutdownNow(segmentExecutor);
+            segmentExecutor = null;
+        }
+        if (gDriveClients != null) {
+            gDriveClients.invalidateAll();
+        }
+    }
+
+	public Drive getGDriveClient() {
+		if (configuration.getGDriveClient() != null) {
+			return configuration.getGDriveClient();
+		}
+		if (gDriveClient != null) {
+			// a client was given explicitly
+			return gDriveClient;
+		}
+		String accessToken;
+		try {
+			accessToken = getAccessToken(configuration.getAccessToken(), configuration.getRefreshToken());
+		} catch (IOException e) {
+			throw ObjectHelper.wrapRuntimeCamelException(e);
+		}
+		if (accessToken == null) {
+			throw new IllegalArgumentException("Any AccessToken set");
+		}
+		return getGDriveClient(accessToken);
 	}
     
+	/**
+	 * Get the client for the given access token. Clients are kept in a bounded LRU
+	 * cache keyed by token and dropped once idle, they all share the endpoint's
+	 * {@link HttpTransport}.
+	 */
 	public Drive getGDriveClient(String accessToken) {
-        if (gDriveClient == null) {
-        	gDriveClient = configuration.getGDriveClient() != null
-                ? configuration.getGDriveClient() : createGDriveClient(accessToken);
-        }
-        return gDriveClient;
+		if (configuration.getGDriveClient() != null) {
+			return configuration.getGDriveClient();
+		}
+		if (gDriveClient != null) {
+			return gDriveClient;
+		}
+		LoadingCache<String, Drive> clients = getGDriveClients();
+		Drive client = clients.getUnchecked(accessToken);
+		if (client.getRequestFactory().getTransport() != getHttpTransport()) {
+			// the component was restarted and shut down the transport of the client
+			clients.invalidate(accessToken);
+			client = clients.getUnchecked(accessToken);
+		}
+		return client;
+	}
+
+	private LoadingCache<String, Drive> getGDriveClients() {
+		LoadingCache<String, Drive> clients = gDriveClients;
+		if (clients == null) {
+			synchronized (this) {
+				clients = gDriveClients;
+				if (clients == null) {
+					clients = CacheBuilder.newBuilder()
+						.maximumSize(configuration.getClientCacheSize())
+						.expireAfterAccess(configuration.getClientIdleTimeout(), TimeUnit.MILLISECONDS)
+						.build(new CacheLoader<String, Drive>() {
+							@Override
+							public Drive load(String accessToken) {
+								LOG.trace("Creating Drive client for a new access token");
+								return createGDriveClient(accessToken);
+							}
+						});
+					gDriveClients = clients;
+				}
+			}
+		}
+		return clients;
+	}
+
+	/**
+	 * Resolve the access token to use for a request. When a client id and secret are
+	 * configured and a refresh token is known, the token is served by the shared
+	 * {@link GDriveTokenManager}, which keeps it fresh in the background.
+	 * 
+	 * @param accessToken the access token at hand, may be {@code null}
+	 * @param refreshToken the refresh token it belongs to, may be {@code null}
+	 * @return the access token to use, {@code null} if none is available
+	 */
+	public String getAccessToken(String accessToken, String refreshToken) throws IOException {
+		GDriveTokenManager tokenManager = getTokenManager();
+		if (tokenManager == null || refreshToken == null) {
+			return accessToken;
+		}
+		if (accessToken != null) {
+			tokenManager.seed(refreshToken, accessToken);
+		}
+		return tokenManager.getAccessToken(refreshToken);
+	}
+
+	/**
+	 * Refresh a rejected access token, concurrent calls for the same token share
+	 * a single refresh request.
+	 * 
+	 * @return the new access token, {@code null} if the token cannot be refreshed
+	 */
+	public String refreshAccessToken(String refreshToken, String staleAccessToken) throws IOException {
+		GDriveTokenManager tokenManager = getTokenManager();
+		if (tokenManager == null || refreshToken == null) {
+			return null;
+		}
+		long start = System.nanoTime();
+		int statusCode = 0;
+		try {
+			return tokenManager.refresh(refreshToken, staleAccessToken);
+		} catch (HttpResponseException e) {
+			statusCode = e.getStatusCode();
+			throw e;
+		} finally {
+			metrics.recordCall("refresh", System.nanoTime() - start, statusCode);
+		}
+	}
+
+	/**
+	 * @return the rate limiter of the configured credential
+	 */
+	public GDriveRateLimiter getRateLimiter() {
+		return getRateLimiter(configuration.getAccessToken(), configuration.getRefreshToken());
+	}
+
+	/**
+	 * @return the rate limiter of the given credential, identified by its refresh token if known
+	 */
+	public GDriveRateLimiter getRateLimiter(String accessToken, String refreshToken) {
+		String credentialKey = refreshToken != null ? refreshToken : accessToken;
+		return getComponent().getRateLimiter(credentialKey != null ? credentialKey : "", configuration)
+				.view(configuration.getBackoffRetries(), configuration.getBackoffInitialDelay(), 
+						configuration.getBackoffMaxDelay(), metrics);
+	}
+
+	/**
+	 * @return the folder resolver of the configured credential
+	 */
+	public GDriveFolderResolver getFolderResolver() {
+		return getFolderResolver(configuration.getAccessToken(), configuration.getRefreshToken());
+	}
+
+	/**
+	 * @return the folder resolver of the given credential, identified by its refresh token if known
+	 */
+	public GDriveFolderResolver getFolderResolver(String accessToken, String refreshToken) {
+		String credentialKey = refreshToken != null ? refreshToken : accessToken;
+		return getComponent().getFolderResolver(credentialKey != null ? credentialKey : "", configuration);
+	}
+
+	/**
+	 * @return the token manager of the configured client id, {@code null} if no
+	 *         client id and secret are configured
+	 */
+	public GDriveTokenManager getTokenManager() {
+		String clientId = getConfiguration().getClientId();
+		String clientSecret = getConfiguration().getClientSecret();
+		if (clientId == null || clientSecret == null) {
+			return null;
+		}
+		return getComponent().getTokenManager(clientId, clientSecret, getHttpTransport(), jsonFactory);
 	}
 
 	public void setGDriveClient(Drive gDriveClient) {
@@ -129,10 +310,29 @@ public class GDriveEndpoint extends ScheduledPollEndpoint {
 	}
 	
 	private Drive createGDriveClient(String accessToken) {
-	    GoogleCredential credential = new GoogleCredential().setAccessToken(accessToken);
-	    return new Drive.Builder(httpTransport, jsonFactory, credential).build();
+	    final GoogleCredential credential = new GoogleCredential().setAccessToken(accessToken);
+	    final int connectTimeout = configuration.getConnectTimeout();
+	    final int readTimeout = configuration.getReadTimeout();
+	    HttpRequestInitializer initializer = new HttpRequestInitializer() {
+	    	@Override
+	    	public void initialize(HttpRequest request) throws IOException {
+	    		credential.initialize(request);
+	    		request.setConnectTimeout(connectTimeout);
+	    		request.setReadTimeout(readTimeout);
+	    	}
+	    };
+	    Drive.Builder builder = new Drive.Builder(getHttpTransport(), jsonFactory, initializer);
+	    if (configuration.getRootUrl() != null) {
+	    	builder.setRootUrl(configuration.getRootUrl());
+	    }
+	    return builder.build();
 	}
 	
+	/**
+	 * @deprecated use {@link #refreshAccessToken(String, String)}, which shares the
+	 *             refreshed token with the other endpoints of the same client id
+	 */
+	@Deprecated
 	public GoogleTokenResponse refreshToken(String refreshToken) throws IOException {
 		String clientId = getConfiguration().getClientId();
 		String clientSecret = getConfiguration().getClientSecret();
@@ -144,7 +344,7 @@ public class GDriveEndpoint extends ScheduledPollEndpoint {
 			refreshToken = getConfiguration().getRefreshToken();
 		}
 		
-		GoogleRefreshTokenRequest refresh = new GoogleRefreshTokenRequest(httpTransport, jsonFactory, 
+		GoogleRefreshTokenRequest refresh = new GoogleRefreshTokenRequest(getHttpTransport(), jsonFactory, 
 				refreshToken, clientId, clientSecret);
 		return refresh.execute();
 	}
@@ -155,11 +355,19 @@ public class GDriveEndpoint extends ScheduledPollEndpoint {
     }
 	
     public Exchange createExchange(ExchangePattern pattern, File file) throws IOException {
+        return createExchange(pattern, file, null);
+    }
+    
+    /**
+     * Create an exchange for the file, its content is downloaded through the given
+     * pipeline or, if there is none, on the first read of the body.
+     */
+    public Exchange createExchange(ExchangePattern pattern, File file, GDriveDownloadPipeline pipeline) throws IOException {
         LOG.trace("Getting object with id [{}]...", file.getId());
         
         Exchange exchange = new DefaultExchange(this, pattern);
         Message message = exchange.getIn();
-        message.setBody(downloadFile(getGDriveClient(), file));
+        message.setBody(createBody(exchange, getGDriveClient(), file, pipeline));
         message.setHeader(GDriveConstants.E_TAG, file.getEtag());
         message.setHeader(GDriveConstants.CONTENT_TYPE, file.getMimeType());
         message.setHeader(GDriveConstants.DESCRIPTION, file.getDescription());
@@ -173,6 +381,158 @@ public class GDriveEndpoint extends ScheduledPollEndpoint {
         return exchange;
     }
     
+    /**
+     * Create a body which only downloads the file's content when it is first read,
+     * or which waits for the download scheduled in the given pipeline.
+     * With a content cache, cached contents are read from disk without any request
+     * and downloaded contents are cached before being read.
+     * When the exchange has a range header as the body is opened, only that range is read,
+     * which is requested from Drive unless the content is already cached or prefetched.
+     * With verifyChecksum, whole contents are checked against their MD5 checksum as they are read.
+     * The connection is released when the exchange is done, read or not.
+     */
+    protected InputStream createBody(final Exchange exchange, final Drive service, final File file,
+            GDriveDownloadPipeline pipeline) throws IOException {
+        if (file.getDownloadUrl() == null || file.getDownloadUrl().length() == 0) {
+            // The file doesn't have any content stored on Drive.
+            return null;
+        }
+        // a content larger than the whole cache would be evicted as soon as loaded
+        final GDriveContentCache cache = file.getMd5Checksum() != null && contentCache != null
+                && (file.getFileSize() == null || file.getFileSize() <= contentCache.getMaxSize()) ? contentCache : null;
+        // the content cache verifies the contents it holds already
+        final boolean verify = cache == null && configuration.isVerifyChecksum() && file.getMd5Checksum() != null;
+        final Callable<InputStream> source = new Callable<InputStream>() {
+            @Override
+            public InputStream call() throws IOException {
+                InputStream is = download(service, file);
+                return verify && is != null ? new GDriveChecksumInputStream(is, file.getMd5Checksum(), 
+                        file.getFileSize() != null ? file.getFileSize() : -1) : is;
+            }
+        };
+        final InputStream body;
+        if (cache != null && cache.contains(file.getMd5Checksum())) {
+            LOG.trace("Content of object with id [{}] is cached", file.getId());
+            body = new GDriveLazyInputStream() {
+                @Override
+                protected InputStream open() throws IOException {
+                    return slice(exchange, cache.get(file.getMd5Checksum(), source));
+                }
+            };
+        } else if (pipeline != null) {
+            Callable<InputStream> task = source;
+            if (cache != null) {
+                // download into the cache, the body is read from there
+                task = new Callable<InputStream>() {
+                    @Override
+                    public InputStream call() throws IOException {
+                        cache.load(file.getMd5Checksum(), source);
+                        return new ByteArrayInputStream(new byte[0]);
+                    }
+                };
+            }
+            final GDriveDownloadPipeline.Download download = pipeline.submit(task);
+            body = new GDriveLazyInputStream() {
+                @Override
+                protected InputStream open() throws IOException {
+                    InputStream is = download.await();
+                    if (cache != null) {
+                        IOHelper.close(is);
+                        is = cache.get(file.getMd5Checksum(), source);
+                    }
+                    return slice(exchange, is);
+                }
+                
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        download.close();
+                    }
+                }
+            };
+        } else {
+            body = new GDriveLazyInputStream() {
+                @Override
+                protected InputStream open() throws IOException {
+                    GDriveByteRange range = getRange(exchange);
+                    if (range != null) {
+                        return range(service, file, range);
+                    }
+                    if (cache != null) {
+                        return cache.get(file.getMd5Checksum(), source);
+                    }
+                    try {
+                        return source.call();
+                    } catch (IOException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new IOException(e);
+                    }
+                }
+            };
+        }
+        exchange.addOnCompletion(new SynchronizationAdapter() {
+            @Override
+            public void onDone(Exchange exchange) {
+                IOHelper.close(body, "GDrive body", LOG);
+            }
+        });
+        return body;
+    }
+    
+    private static GDriveByteRange getRange(Exchange exchange) {
+        return GDriveByteRange.of(exchange.getIn().getHeader(GDriveConstants.RANGE));
+    }
+    
+    private static InputStream slice(Exchange exchange, InputStream is) throws IOException {
+        GDriveByteRange range = getRange(exchange);
+        return range != null && is != null ? range.slice(is) : is;
+    }
+    
+    /**
+     * Download a file's whole content, in parallel segments if it is larger than
+     * the segmentedDownloadThreshold option.
+     */
+    protected InputStream download(final Drive service, final File file) throws IOException {
+        ExecutorService executor = segmentExecutor;
+        if (executor != null && file.getFileSize() != null 
+                && file.getFileSize() >= configuration.getSegmentedDownloadThreshold()) {
+            LOG.trace("Downloading content of object with id [{}] in segments...", file.getId());
+            return new GDriveSegmentedDownload(this, service, file, configuration.getDownloadSegmentSize(), 
+                    configuration.getBackoffRetries()).download(executor);
+        }
+        LOG.trace("Downloading content of object with id [{}]...", file.getId());
+        return getRateLimiter().execute("get", new GDriveRateLimiter.Call<InputStream>() {
+            @Override
+            public InputStream call() throws IOException {
+                return openDownload(service, file, null);
+            }
+        });
+    }
+    
+    /**
+     * Download a range of a file's content with a single request.
+     */
+    protected InputStream range(final Drive service, final File file, final GDriveByteRange range) throws IOException {
+        LOG.trace("Downloading range {} of object with id [{}]...", range, file.getId());
+        return getRateLimiter().execute("get", new GDriveRateLimiter.Call<InputStream>() {
+            @Override
+            public InputStream call() throws IOException {
+                return openDownload(service, file, range);
+            }
+        });
+    }
+    
+    /**
+     * Open a metered download of a file's content, or of a range of it if one is given.
+     */
+    InputStream openDownload(Drive service, File file, GDriveByteRange range) throws IOException {
+        InputStream is = range != null ? downloadFile(service, file, range) : downloadFile(service, file);
+        return is != null ? new MeteredInputStream(is, metrics) : null;
+    }
+    
     /**
      * Download a file's content.
      * 
@@ -194,6 +554,141 @@ public class GDriveEndpoint extends ScheduledPollEndpoint {
 		}
 	}
 	
+	/**
+	 * Download a range of a file's content.
+	 * 
+	 * @throws IOException if the server does not answer with the range
+	 */
+	protected static InputStream downloadFile(Drive service, File file, GDriveByteRange range) throws IOException {
+		if (file.getDownloadUrl() != null && file.getDownloadUrl().length() > 0) {
+			HttpRequest request = service.getRequestFactory()
+					.buildGetRequest(new GenericUrl(file.getDownloadUrl()));
+			request.getHeaders().setRange(range.toHeader());
+			HttpResponse resp = request.execute();
+			if (resp.getStatusCode() != 206) {
+				resp.disconnect();
+				throw new IOException("Range " + range + " of object with id " + file.getId() 
+						+ " not served, status " + resp.getStatusCode());
+			}
+			return resp.getContent();
+		} else {
+			return null;
+		}
+	}
+	
+    @Override
+    public GDriveComponent getComponent() {
+        return (GDriveComponent) super.getComponent();
+    }
+
+    /**
+     * @return the transport of the component for the settings of this endpoint, a new
+     *         one once the component was restarted
+     */
+    public HttpTransport getHttpTransport() {
+        return getComponent().getHttpTransport(configuration);
+    }
+
+    public GDriveMetrics getMetrics() {
+        return metrics;
+    }
+
+    @ManagedAttribute(description = "Bytes downloaded from Drive")
+    public long getBytesDownloaded() {
+        return metrics.getBytesDownloaded();
+    }
+
+    @ManagedAttribute(description = "Bytes uploaded to Drive")
+    public long getBytesUploaded() {
+        return metrics.getBytesUploaded();
+    }
+
+    @ManagedAttribute(description = "Number of polls")
+    public long getPolls() {
+        return metrics.getPolls();
+    }
+
+    @ManagedAttribute(description = "Number of files found by all the polls")
+    public long getFilesPolled() {
+        return metrics.getFilesPolled();
+    }
+
+    @ManagedAttribute(description = "Number of files found by the last poll")
+    public long getLastPollFiles() {
+        return metrics.getLastPollFiles();
+    }
+
+    @ManagedAttribute(description = "Downloads in progress")
+    public long getInflightDownloads() {
+        return metrics.getInflightDownloads().get();
+    }
+
+    @ManagedAttribute(description = "Uploads in progress")
+    public long getInflightUploads() {
+        return metrics.getInflightUploads().get();
+    }
+
+    @ManagedAttribute(description = "Files waiting to be deleted in batch")
+    public long getDeleteQueueDepth() {
+        return metrics.getDeleteQueueDepth().get();
+    }
+
+    @ManagedAttribute(description = "Calls answered with 401 Unauthorized")
+    public long getUnauthorizedCount() {
+        return metrics.getStatusCount(401);
+    }
+
+    @ManagedAttribute(description = "Calls answered with 403 Forbidden, including quota errors")
+    public long getForbiddenCount() {
+        return metrics.getStatusCount(403);
+    }
+
+    @ManagedAttribute(description = "Calls answered with 429 Too Many Requests")
+    public long getTooManyRequestsCount() {
+        return metrics.getStatusCount(429);
+    }
+
+    @ManagedAttribute(description = "Access token refreshes of the client id, shared with the other endpoints")
+    public long getTokenRefreshCount() {
+        GDriveTokenManager tokenManager = getTokenManager();
+        return tokenManager != null ? tokenManager.getRefreshLatency().getCount() : 0;
+    }
+
+    @ManagedAttribute(description = "Calls per second currently allowed for the credential")
+    public double getAllowedCallRate() {
+        return getRateLimiter().getRate();
+    }
+
+    @ManagedOperation(description = "Latency of the API calls per operation")
+    public String latencySummary() {
+        StringBuilder answer = new StringBuilder();
+        for (Map.Entry<String, GDriveMetrics.Histogram> entry : metrics.getHistograms().entrySet()) {
+            answer.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        GDriveTokenManager tokenManager = getTokenManager();
+        if (tokenManager != null) {
+            answer.append("token refresh (client id): ").append(tokenManager.getRefreshLatency()).append('\n');
+        }
+        return answer.toString();
+    }
+
+    @ManagedOperation(description = "Latency percentile of an operation in millis")
+    public long latencyPercentile(String operation, double percentile) {
+        return metrics.getHistogram(operation).getPercentile(percentile);
+    }
+
+    @ManagedOperation(description = "Reset the metrics")
+    public void resetMetrics() {
+        metrics.reset();
+    }
+
+    /**
+     * @return the content cache of the endpoint, {@code null} if it has none
+     */
+    public GDriveContentCache getContentCache() {
+        return contentCache;
+    }
+
     public int getMaxMessagesPerPoll() {
         return maxMessagesPerPoll;
     }
@@ -202,4 +697,47 @@ public class GDriveEndpoint extends ScheduledPollEndpoint {
         this.maxMessagesPerPoll = maxMessagesPerPoll;
     }
     
+    /**
+     * Counts the bytes of a download, which is in flight until closed.
+     */
+    private static final class MeteredInputStream extends FilterInputStream {
+
+        private final GDriveMetrics metrics;
+
+        private boolean closed;
+
+        MeteredInputStream(InputStream in, GDriveMetrics metrics) {
+            super(in);
+            this.metrics = metrics;
+            metrics.getInflightDownloads().incrementAndGet();
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                metrics.recordBytesDownloaded(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                metrics.recordBytesDownloaded(n);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                metrics.getInflightDownloads().decrementAndGet();
+            }
+            super.close();
+        }
+    }
+
 }
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import com.google.common.io.Files;
+
+/**
+ * A {@link GDriveChangeIdStore} which keeps the cursor in a local file, so a
+ * restarted consumer resumes where it left off.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveFileChangeIdStore implements GDriveChangeIdStore {
+
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	private final File file;
+
+	private volatile Long changeId;
+
+	public GDriveFileChangeIdStore(String fileName) {
+		this(new File(fileName));
+	}
+
+	public GDriveFileChangeIdStore(File file) {
+		this.file = file;
+	}
+
+	@Override
+	public synchronized Long load() throws IOException {
+		if (changeId == null && file.exists()) {
+			String content = Files.toString(file, CHARSET).trim();
+			if (content.length() > 0) {
+				changeId = Long.valueOf(content);
+			}
+		}
+		return changeId;
+	}
+
+	@Override
+	public synchronized void save(long changeId) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) {
+			throw new IOException("Cannot create directory " + parent);
+		}
+		// write to a temporary file first, so a crash never leaves a truncated cursor
+		File tmp = new File(file.getAbsolutePath() + ".tmp");
+		Files.write(Long.toString(changeId), tmp, CHARSET);
+		if (!tmp.renameTo(file)) {
+			if (!file.delete() || !tmp.renameTo(file)) {
+				throw new IOException("Cannot rename " + tmp + " to " + file);
+			}
+		}
+		this.changeId = changeId;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public String toString() {
+		return "GDriveFileChangeIdStore[" + file + "]";
+	}
+
+}
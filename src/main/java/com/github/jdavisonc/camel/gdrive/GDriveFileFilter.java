@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.ParentReference;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * Selects the files a consumer routes. The criteria are sent to Drive as a
+ * search query when listing files, and checked locally for the files of the
+ * changes feed, which cannot be queried. With several shards, only the files of
+ * the filter's shard are accepted, which Drive cannot query either.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveFileFilter {
+
+	public static final String FOLDER_MIME_TYPE = "application/vnd.google-apps.folder";
+
+	private final String folderId;
+
+	private final String mimeType;
+
+	private final String modifiedSince;
+
+	private final long modifiedSinceValue;
+
+	private final String titleContains;
+
+	private final boolean includeTrashed;
+
+	private final String query;
+
+	private final int shardCount;
+
+	private final int shardIndex;
+
+	public GDriveFileFilter(GDriveConfiguration configuration) {
+		this(configuration, configuration.getFolderId());
+	}
+
+	/**
+	 * Create the filter of the configuration, for the given folder, such as the one a
+	 * folder path was resolved to.
+	 */
+	public GDriveFileFilter(GDriveConfiguration configuration, String folderId) {
+		this(folderId, configuration.getMimeType(), configuration.getModifiedSince(), 
+				configuration.getTitleContains(), configuration.isIncludeTrashed(), configuration.getQuery(),
+				configuration.getShardCount(), configuration.getShardIndex());
+	}
+
+	public GDriveFileFilter(String folderId, String mimeType, String modifiedSince, String titleContains,
+			boolean includeTrashed, String query) {
+		this(folderId, mimeType, modifiedSince, titleContains, includeTrashed, query, 1, 0);
+	}
+
+	public GDriveFileFilter(String folderId, String mimeType, String modifiedSince, String titleContains,
+			boolean includeTrashed, String query, int shardCount, int shardIndex) {
+		if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+			throw new IllegalArgumentException("Invalid shard " + shardIndex + " of " + shardCount);
+		}
+		this.folderId = folderId;
+		this.mimeType = mimeType;
+		this.modifiedSince = modifiedSince;
+		this.modifiedSinceValue = modifiedSince != null ? DateTime.parseRfc3339(modifiedSince).getValue() : 0;
+		this.titleContains = titleContains;
+		this.includeTrashed = includeTrashed;
+		this.query = query;
+		this.shardCount = shardCount;
+		this.shardIndex = shardIndex;
+	}
+
+	public String getFolderId() {
+		return folderId;
+	}
+
+	/**
+	 * @return the Drive search query matching the criteria
+	 */
+	public String toQuery() {
+		List<String> terms = new ArrayList<String>();
+		if (folderId != null) {
+			terms.add(quote(folderId) + " in parents");
+		}
+		if (mimeType != null) {
+			terms.add("mimeType = " + quote(mimeType));
+		} else {
+			terms.add("mimeType != " + quote(FOLDER_MIME_TYPE));
+		}
+		if (modifiedSince != null) {
+			terms.add("modifiedDate > " + quote(modifiedSince));
+		}
+		if (titleContains != null) {
+			terms.add("title contains " + quote(titleContains));
+		}
+		if (!includeTrashed) {
+			terms.add("trashed = false");
+		}
+		if (query != null) {
+			terms.add("(" + query + ")");
+		}
+		StringBuilder answer = new StringBuilder();
+		for (String term : terms) {
+			if (answer.length() > 0) {
+				answer.append(" and ");
+			}
+			answer.append(term);
+		}
+		return answer.toString();
+	}
+
+	/**
+	 * Check the file against the criteria, except for the free query which can
+	 * only be evaluated by Drive. Files without downloadable content are never accepted.
+	 */
+	public boolean accept(File file) {
+		if (file.getDownloadUrl() == null || file.getDownloadUrl().length() == 0) {
+			return false;
+		}
+		if (mimeType != null ? !mimeType.equals(file.getMimeType()) : FOLDER_MIME_TYPE.equals(file.getMimeType())) {
+			return false;
+		}
+		if (!includeTrashed && file.getLabels() != null && Boolean.TRUE.equals(file.getLabels().getTrashed())) {
+			return false;
+		}
+		if (titleContains != null && (file.getTitle() == null || !titleContains(file.getTitle(), titleContains))) {
+			return false;
+		}
+		if (modifiedSince != null && file.getModifiedDate() != null
+				&& file.getModifiedDate().getValue() <= modifiedSinceValue) {
+			return false;
+		}
+		if (folderId != null && !hasParent(file, folderId)) {
+			return false;
+		}
+		if (shardCount > 1 && shard(file.getId(), shardCount) != shardIndex) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the shard of a file, a consistent hash of its id, so going from n to n + 1
+	 *         shards only moves the files the new shard takes over
+	 */
+	public static int shard(String fileId, int shardCount) {
+		return Hashing.consistentHash(Hashing.murmur3_32().hashString(fileId, Charsets.UTF_8), shardCount);
+	}
+
+	/**
+	 * Match a title the way the contains operator of Drive does: it only performs prefix
+	 * matching on the terms of the title, ignoring case. "HelloWorld" contains "Hello"
+	 * but not "World", while "Hello World" contains both.
+	 */
+	static boolean titleContains(String title, String text) {
+		String lowerTitle = title.toLowerCase(Locale.ENGLISH);
+		String lowerText = text.toLowerCase(Locale.ENGLISH);
+		for (int i = lowerTitle.indexOf(lowerText); i >= 0; i = lowerTitle.indexOf(lowerText, i + 1)) {
+			if (i == 0 || !Character.isLetterOrDigit(lowerTitle.charAt(i - 1))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static boolean hasParent(File file, String parentId) {
+		if (file.getParents() != null) {
+			for (ParentReference parent : file.getParents()) {
+				if (parentId.equals(parent.getId()) || ("root".equals(parentId) && Boolean.TRUE.equals(parent.getIsRoot()))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	static String quote(String value) {
+		return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+	}
+
+}
@@ -0,0 +1,503 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.camel.spi.IdempotentRepository;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.camel.util.IOHelper;
+import org.apache.camel.util.ObjectHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * A persistent {@link IdempotentRepository} for large numbers of keys. Keys
+ * are appended to a log file, and located through an open addressing hash
+ * table kept in a memory-mapped index file next to it, so lookups cost O(1)
+ * whatever the number of keys and only the index is held in memory. The index
+ * is rebuilt from the log if it is missing or out of date. Once removed keys make
+ * up more than the compaction ratio of the log, the live keys are rewritten to a
+ * new log.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveFileIdempotentRepository extends ServiceSupport implements IdempotentRepository<String> {
+
+	private static final Logger LOG = LoggerFactory.getLogger(GDriveFileIdempotentRepository.class);
+
+	private static final int MAGIC = 0x47444932;
+
+	// magic, capacity, size, tombstones, log length, live bytes
+	private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8 + 8;
+
+	// key hash, offset of the key in the log plus one
+	private static final int SLOT_SIZE = 8 + 8;
+
+	private static final long EMPTY = 0;
+
+	private static final long TOMBSTONE = -1;
+
+	private static final byte ADD = 1;
+
+	private static final byte REMOVE = 0;
+
+	// operation, key length
+	private static final int RECORD_HEADER_SIZE = 1 + 2;
+
+	private static final double MAX_LOAD = 0.7;
+
+	// smaller logs are never compacted
+	private static final long MIN_COMPACTION_LENGTH = 1 << 16;
+
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private final File file;
+
+	private final File indexFile;
+
+	private int initialCapacity = 1 << 16;
+
+	private double compactionRatio = 0.5;
+
+	private RandomAccessFile log;
+
+	private FileChannel logChannel;
+
+	private long logLength;
+
+	// length of the records of the live keys
+	private long liveBytes;
+
+	private RandomAccessFile index;
+
+	private FileChannel indexChannel;
+
+	private MappedByteBuffer slots;
+
+	private int capacity;
+
+	private int size;
+
+	private int tombstones;
+
+	public GDriveFileIdempotentRepository(String fileName) {
+		this(new File(fileName));
+	}
+
+	public GDriveFileIdempotentRepository(File file) {
+		this.file = file;
+		this.indexFile = new File(file.getPath() + ".idx");
+	}
+
+	@Override
+	public synchronized boolean add(String key) {
+		try {
+			long hash = hash(key);
+			if (find(key, hash) >= 0) {
+				return false;
+			}
+			insert(hash, append(ADD, key));
+			liveBytes += recordSize(key);
+			writeHeader();
+			return true;
+		} catch (IOException e) {
+			throw ObjectHelper.wrapRuntimeCamelException(e);
+		}
+	}
+
+	@Override
+	public synchronized boolean contains(String key) {
+		try {
+			return find(key, hash(key)) >= 0;
+		} catch (IOException e) {
+			throw ObjectHelper.wrapRuntimeCamelException(e);
+		}
+	}
+
+	@Override
+	public synchronized boolean remove(String key) {
+		try {
+			int slot = find(key, hash(key));
+			if (slot < 0) {
+				return false;
+			}
+			append(REMOVE, key);
+			delete(slot);
+			liveBytes -= recordSize(key);
+			writeHeader();
+			if (logLength >= MIN_COMPACTION_LENGTH && logLength - liveBytes > logLength * compactionRatio) {
+				compact();
+			}
+			return true;
+		} catch (IOException e) {
+			throw ObjectHelper.wrapRuntimeCamelException(e);
+		}
+	}
+
+	@Override
+	public boolean confirm(String key) {
+		// keys are stored when added
+		return true;
+	}
+
+	/**
+	 * @return the number of keys in the repository
+	 */
+	public synchronized int getSize() {
+		return size;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getInitialCapacity() {
+		return initialCapacity;
+	}
+
+	/**
+	 * @param initialCapacity initial number of slots of the index, rounded up to a power of two
+	 */
+	public void setInitialCapacity(int initialCapacity) {
+		this.initialCapacity = initialCapacity;
+	}
+
+	public double getCompactionRatio() {
+		return compactionRatio;
+	}
+
+	/**
+	 * @param compactionRatio share of the log taken by removed keys above which it is compacted
+	 */
+	public void setCompactionRatio(double compactionRatio) {
+		this.compactionRatio = compactionRatio;
+	}
+
+	/**
+	 * @return the length of the log file
+	 */
+	public synchronized long getLogLength() {
+		return logLength;
+	}
+
+	@Override
+	protected synchronized void doStart() throws Exception {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs()) {
+			throw new IOException("Cannot create directory " + parent);
+		}
+		log = new RandomAccessFile(file, "rw");
+		logChannel = log.getChannel();
+		logLength = logChannel.size();
+		index = new RandomAccessFile(indexFile, "rw");
+		indexChannel = index.getChannel();
+		if (!loadIndex()) {
+			LOG.debug("Rebuilding index {} from {}", indexFile, file);
+			rebuildIndex();
+		}
+		LOG.debug("Loaded {} keys from {}", size, file);
+	}
+
+	@Override
+	protected synchronized void doStop() throws Exception {
+		if (slots != null) {
+			writeHeader();
+			slots.force();
+			slots = null;
+		}
+		if (logChannel != null) {
+			logChannel.force(false);
+		}
+		IOHelper.close(indexChannel);
+		IOHelper.close(index);
+		IOHelper.close(logChannel);
+		IOHelper.close(log);
+		indexChannel = null;
+		logChannel = null;
+	}
+
+	private boolean loadIndex() throws IOException {
+		long length = indexChannel.size();
+		if (length < HEADER_SIZE) {
+			return false;
+		}
+		MappedByteBuffer mapped = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+		int storedCapacity = mapped.getInt(4);
+		if (mapped.getInt(0) != MAGIC || Integer.bitCount(storedCapacity) != 1
+				|| length != HEADER_SIZE + (long) storedCapacity * SLOT_SIZE || mapped.getLong(16) != logLength) {
+			return false;
+		}
+		slots = mapped;
+		capacity = storedCapacity;
+		size = mapped.getInt(8);
+		tombstones = mapped.getInt(12);
+		liveBytes = mapped.getLong(24);
+		return true;
+	}
+
+	private void rebuildIndex() throws IOException {
+		map(tableSizeFor(initialCapacity));
+		liveBytes = 0;
+		long offset = 0;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			while (offset < logLength) {
+				byte op;
+				byte[] bytes;
+				try {
+					op = in.readByte();
+					bytes = new byte[in.readUnsignedShort()];
+					in.readFully(bytes);
+				} catch (EOFException e) {
+					// a record was only partially written, drop it
+					LOG.warn("Truncating incomplete record at {} of {}", offset, file);
+					logChannel.truncate(offset);
+					logLength = offset;
+					break;
+				}
+				String key = new String(bytes, Charsets.UTF_8);
+				long hash = hash(key);
+				int slot = find(key, hash);
+				if (op == ADD && slot < 0) {
+					insert(hash, offset);
+					liveBytes += RECORD_HEADER_SIZE + bytes.length;
+				} else if (op == REMOVE && slot >= 0) {
+					delete(slot);
+					liveBytes -= RECORD_HEADER_SIZE + bytes.length;
+				}
+				offset += RECORD_HEADER_SIZE + bytes.length;
+			}
+		} finally {
+			IOHelper.close(in);
+		}
+		writeHeader();
+	}
+
+	/**
+	 * Rewrite the live keys to a new log and index them there. The index is marked out of
+	 * date first, so it is rebuilt from whichever log survives a crash.
+	 */
+	private void compact() throws IOException {
+		LOG.debug("Compacting {}, {} bytes of {} in use", new Object[] {file, liveBytes, logLength});
+		File tmp = new File(file.getPath() + ".tmp");
+		long[] hashes = new long[size];
+		long[] offsets = new long[size];
+		int count = 0;
+		FileOutputStream compacted = new FileOutputStream(tmp);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(compacted));
+			long position = 0;
+			for (int slot = 0; slot < capacity; slot++) {
+				long offset = offsetAt(slot);
+				if (offset != EMPTY && offset != TOMBSTONE) {
+					byte[] bytes = readKey(offset - 1).getBytes(Charsets.UTF_8);
+					out.writeByte(ADD);
+					out.writeShort(bytes.length);
+					out.write(bytes);
+					hashes[count] = hashAt(slot);
+					offsets[count++] = position;
+					position += RECORD_HEADER_SIZE + bytes.length;
+				}
+			}
+			out.flush();
+			compacted.getChannel().force(false);
+		} finally {
+			IOHelper.close(compacted);
+		}
+
+		slots.putLong(16, -1);
+		slots.force();
+		IOHelper.close(logChannel);
+		IOHelper.close(log);
+		if (!tmp.renameTo(file) && (!file.delete() || !tmp.renameTo(file))) {
+			throw new IOException("Cannot rename " + tmp + " to " + file);
+		}
+		log = new RandomAccessFile(file, "rw");
+		logChannel = log.getChannel();
+		logLength = logChannel.size();
+
+		map(capacity);
+		for (int i = 0; i < count; i++) {
+			insert(hashes[i], offsets[i]);
+		}
+		liveBytes = logLength;
+		writeHeader();
+	}
+
+	private void map(int newCapacity) throws IOException {
+		// the index is recreated from scratch, so every slot starts empty
+		slots = null;
+		indexChannel.truncate(0);
+		slots = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+		capacity = newCapacity;
+		size = 0;
+		tombstones = 0;
+	}
+
+	private void resize(int newCapacity) throws IOException {
+		long[] hashes = new long[size];
+		long[] offsets = new long[size];
+		int count = 0;
+		for (int slot = 0; slot < capacity; slot++) {
+			long offset = offsetAt(slot);
+			if (offset != EMPTY && offset != TOMBSTONE) {
+				hashes[count] = hashAt(slot);
+				offsets[count++] = offset - 1;
+			}
+		}
+		map(newCapacity);
+		for (int i = 0; i < count; i++) {
+			insert(hashes[i], offsets[i]);
+		}
+	}
+
+	private int find(String key, long hash) throws IOException {
+		int mask = capacity - 1;
+		int slot = (int) (hash & mask);
+		for (int probes = 0; probes < capacity; probes++) {
+			long offset = offsetAt(slot);
+			if (offset == EMPTY) {
+				return -1;
+			}
+			if (offset != TOMBSTONE && hashAt(slot) == hash && key.equals(readKey(offset - 1))) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private void insert(long hash, long logOffset) throws IOException {
+		int mask = capacity - 1;
+		int slot = (int) (hash & mask);
+		while (true) {
+			long offset = offsetAt(slot);
+			if (offset == EMPTY || offset == TOMBSTONE) {
+				if (offset == TOMBSTONE) {
+					tombstones--;
+				}
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		int position = HEADER_SIZE + slot * SLOT_SIZE;
+		slots.putLong(position, hash);
+		slots.putLong(position + 8, logOffset + 1);
+		size++;
+		if (size + tombstones > capacity * MAX_LOAD) {
+			// grow when full of keys, otherwise just clean up the tombstones
+			resize(size > capacity * MAX_LOAD / 2 ? capacity * 2 : capacity);
+		}
+	}
+
+	private void delete(int slot) {
+		slots.putLong(HEADER_SIZE + slot * SLOT_SIZE + 8, TOMBSTONE);
+		size--;
+		tombstones++;
+	}
+
+	private long hashAt(int slot) {
+		return slots.getLong(HEADER_SIZE + slot * SLOT_SIZE);
+	}
+
+	private long offsetAt(int slot) {
+		return slots.getLong(HEADER_SIZE + slot * SLOT_SIZE + 8);
+	}
+
+	private void writeHeader() {
+		slots.putInt(0, MAGIC);
+		slots.putInt(4, capacity);
+		slots.putInt(8, size);
+		slots.putInt(12, tombstones);
+		slots.putLong(16, logLength);
+		slots.putLong(24, liveBytes);
+	}
+
+	private long append(byte op, String key) throws IOException {
+		byte[] bytes = key.getBytes(Charsets.UTF_8);
+		if (bytes.length > 0xFFFF) {
+			throw new IllegalArgumentException("Key too long: " + key);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + bytes.length);
+		buffer.put(op).putShort((short) bytes.length).put(bytes);
+		buffer.flip();
+		long offset = logLength;
+		long position = offset;
+		while (buffer.hasRemaining()) {
+			position += logChannel.write(buffer, position);
+		}
+		logLength = position;
+		return offset;
+	}
+
+	private String readKey(long offset) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+		readFully(header, offset);
+		byte[] bytes = new byte[header.getShort(1) & 0xFFFF];
+		readFully(ByteBuffer.wrap(bytes), offset + RECORD_HEADER_SIZE);
+		return new String(bytes, Charsets.UTF_8);
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = logChannel.read(buffer, position);
+			if (read < 0) {
+				throw new EOFException("Unexpected end of " + file);
+			}
+			position += read;
+		}
+	}
+
+	private static int recordSize(String key) {
+		return RECORD_HEADER_SIZE + key.getBytes(Charsets.UTF_8).length;
+	}
+
+	private static long hash(String key) {
+		return HASH.hashString(key, Charsets.UTF_8).asLong();
+	}
+
+	private static int tableSizeFor(int capacity) {
+		int answer = 16;
+		while (answer < capacity) {
+			answer <<= 1;
+		}
+		return answer;
+	}
+
+	@Override
+	public String toString() {
+		return "GDriveFileIdempotentRepository[" + file + "]";
+	}
+
+}
@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.google.api.client.util.ArrayMap;
+import com.google.api.services.drive.model.File;
+
+/**
+ * Reads and writes the custom properties of a file. The Drive model this component is
+ * built with has no properties field on {@link File}, so they are kept in the file's
+ * JSON as an unknown key, each property being a map with a key, a value and a visibility.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+final class GDriveFileProperties {
+
+	static final String FIELD = "properties";
+
+	private GDriveFileProperties() {
+	}
+
+	/**
+	 * @return a copy of the properties of the file, empty if it has none
+	 */
+	static List<Map<String, Object>> get(File file) {
+		List<Map<String, Object>> answer = new ArrayList<Map<String, Object>>();
+		Object properties = file.get(FIELD);
+		if (properties instanceof List) {
+			for (Object property : (List<?>) properties) {
+				if (property instanceof Map) {
+					Map<String, Object> copy = ArrayMap.create();
+					for (Map.Entry<?, ?> entry : ((Map<?, ?>) property).entrySet()) {
+						copy.put(String.valueOf(entry.getKey()), entry.getValue());
+					}
+					answer.add(copy);
+				}
+			}
+		}
+		return answer;
+	}
+
+	/**
+	 * @return the value of a property of the file, {@code null} if it has no such property
+	 */
+	static String getValue(File file, String key, String visibility) {
+		for (Map<String, Object> property : get(file)) {
+			if (matches(property, key, visibility)) {
+				Object value = property.get("value");
+				return value != null ? value.toString() : null;
+			}
+		}
+		return null;
+	}
+
+	static boolean matches(Map<String, Object> property, String key, String visibility) {
+		Object propertyVisibility = property.get("visibility");
+		return key.equals(property.get("key")) 
+				&& (visibility == null || propertyVisibility == null || visibility.equals(propertyVisibility));
+	}
+
+	static void set(File file, List<Map<String, Object>> properties) {
+		file.set(FIELD, properties);
+	}
+
+	static Map<String, Object> property(String key, String value, String visibility) {
+		Map<String, Object> property = ArrayMap.create();
+		property.put("key", key);
+		property.put("value", value);
+		if (visibility != null) {
+			property.put("visibility", visibility);
+		}
+		return property;
+	}
+
+}
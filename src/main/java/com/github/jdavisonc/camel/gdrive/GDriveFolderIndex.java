@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+
+/**
+ * Index of the files of a folder by MD5 checksum. The first lookup lists the whole
+ * folder, later ones only list the files modified since the last refresh, once
+ * the refresh interval has elapsed. Files deleted for good or moved out of the folder
+ * are not listed by a refresh, so the files found must be confirmed before being trusted.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveFolderIndex {
+
+	private static final Logger LOG = LoggerFactory.getLogger(GDriveFolderIndex.class);
+
+	/**
+	 * File metadata kept in the index.
+	 */
+	static final String FILE_FIELDS = "id,etag,title,description,mimeType,md5Checksum,modifiedDate,labels(trashed)";
+
+	/**
+	 * File metadata needed to confirm an indexed file is still in the folder.
+	 */
+	static final String CONFIRM_FIELDS = FILE_FIELDS + ",parents(id,isRoot)";
+
+	private static final String FIELDS = "nextPageToken,items(" + FILE_FIELDS + ")";
+
+	private final String folderId;
+
+	private final long refreshInterval;
+
+	private final Map<String, File> files = new HashMap<String, File>();
+
+	private final SetMultimap<String, String> idsByChecksum = HashMultimap.create();
+
+	/** Latest modification date seen, in Drive's clock */
+	private DateTime cursor;
+
+	private long lastRefresh;
+
+	/**
+	 * @param folderId the folder id, {@code root} for the root folder
+	 * @param refreshInterval millis during which the index is used without listing changes
+	 */
+	public GDriveFolderIndex(String folderId, long refreshInterval) {
+		this.folderId = folderId;
+		this.refreshInterval = refreshInterval;
+	}
+
+	/**
+	 * Find a file of the folder with the given content and title.
+	 * 
+	 * @return the file, {@code null} if there is none
+	 */
+	public synchronized File find(Drive client, GDriveRateLimiter rateLimiter, String md5, String title) 
+			throws IOException {
+		if (lastRefresh == 0 || System.currentTimeMillis() - lastRefresh >= refreshInterval) {
+			refresh(client, rateLimiter);
+		}
+		for (String id : idsByChecksum.get(md5)) {
+			File file = files.get(id);
+			if (title == null ? file.getTitle() == null : title.equals(file.getTitle())) {
+				return file;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Add or update a file, such as one just uploaded to the folder.
+	 */
+	public synchronized void put(File file) {
+		File previous = files.remove(file.getId());
+		if (previous != null && previous.getMd5Checksum() != null) {
+			idsByChecksum.remove(previous.getMd5Checksum(), previous.getId());
+		}
+		if (file.getLabels() != null && Boolean.TRUE.equals(file.getLabels().getTrashed())) {
+			return;
+		}
+		if (file.getMd5Checksum() != null) {
+			files.put(file.getId(), file);
+			idsByChecksum.put(file.getMd5Checksum(), file.getId());
+		}
+		if (file.getModifiedDate() != null 
+				&& (cursor == null || file.getModifiedDate().getValue() > cursor.getValue())) {
+			cursor = file.getModifiedDate();
+		}
+	}
+
+	/**
+	 * Drop a file, such as one found deleted.
+	 */
+	public synchronized void remove(String fileId) {
+		File previous = files.remove(fileId);
+		if (previous != null && previous.getMd5Checksum() != null) {
+			idsByChecksum.remove(previous.getMd5Checksum(), fileId);
+		}
+	}
+
+	/**
+	 * @return {@code true} if the file, fetched with its parents, is in the folder and not trashed
+	 */
+	public boolean contains(File file) {
+		if (file.getLabels() != null && Boolean.TRUE.equals(file.getLabels().getTrashed())) {
+			return false;
+		}
+		return GDriveFileFilter.hasParent(file, folderId);
+	}
+
+	public String getFolderId() {
+		return folderId;
+	}
+
+	public synchronized int size() {
+		return files.size();
+	}
+
+	private void refresh(Drive client, GDriveRateLimiter rateLimiter) throws IOException {
+		StringBuilder query = new StringBuilder();
+		query.append(GDriveFileFilter.quote(folderId)).append(" in parents");
+		if (cursor != null) {
+			// trashed files are listed too, to drop them from the index
+			query.append(" and modifiedDate >= ").append(GDriveFileFilter.quote(cursor.toStringRfc3339()));
+		} else {
+			query.append(" and trashed = false");
+		}
+		LOG.trace("Refreshing index of folder {} with query [{}]", folderId, query);
+		final Drive.Files.List list = client.files().list()
+				.setQ(query.toString())
+				.setFields(FIELDS)
+				.setMaxResults(1000);
+		int count = 0;
+		String pageToken = null;
+		do {
+			list.setPageToken(pageToken);
+			FileList page = rateLimiter.execute("list", new GDriveRateLimiter.Call<FileList>() {
+				@Override
+				public FileList call() throws IOException {
+					return list.execute();
+				}
+			});
+			if (page.getItems() != null) {
+				for (File file : page.getItems()) {
+					put(file);
+					count++;
+				}
+			}
+			pageToken = page.getNextPageToken();
+		} while (pageToken != null);
+		lastRefresh = System.currentTimeMillis();
+		LOG.debug("Index of folder {} refreshed, {} files listed, {} indexed", new Object[] {folderId, count, files.size()});
+	}
+
+}
@@ -0,0 +1,219 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+import com.google.api.services.drive.model.ParentReference;
+
+/**
+ * Resolves folder paths such as {@code reports/2026/q3} to folder ids. Resolved
+ * folders are kept in a tree mirroring the paths, so resolving a path which was
+ * resolved less than {@code ttl} millis ago makes no call at all.
+ * <p>
+ * Missing folders can be created. Within this resolver a folder is only created
+ * once, as the lookups and creations of the children of a folder are serialized.
+ * Other processes may still create the same folder at the same time, so after a
+ * creation the folder is looked up again and, if there are several, every creator
+ * settles on the oldest one and trashes its own. This is not atomic: Drive search is
+ * eventually consistent, so a lookup right after a creation may not list the folder
+ * another process has just created, and both processes then keep their own folder.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveFolderResolver {
+
+	private static final Logger LOG = LoggerFactory.getLogger(GDriveFolderResolver.class);
+
+	private static final String FIELDS = "items(id,createdDate)";
+
+	private final long ttl;
+
+	private final Node root = new Node("root", Long.MAX_VALUE);
+
+	public GDriveFolderResolver(long ttl) {
+		this.ttl = ttl;
+	}
+
+	/**
+	 * Resolve a folder path, relative to the root folder.
+	 * 
+	 * @param path the folder titles separated by {@code /}
+	 * @param create {@code true} to create the missing folders
+	 * @return the id of the folder, {@code null} if it does not exist and is not created
+	 */
+	public String resolve(Drive client, GDriveRateLimiter rateLimiter, String path, boolean create) 
+			throws IOException {
+		Node node = root;
+		for (String title : split(path)) {
+			node = getChild(client, rateLimiter, node, title, create);
+			if (node == null) {
+				return null;
+			}
+		}
+		return node.id;
+	}
+
+	/**
+	 * Forget a resolved folder and its subfolders, such as one found deleted.
+	 */
+	public void invalidate(String path) {
+		List<String> titles = split(path);
+		Node node = root;
+		for (int i = 0; i < titles.size() - 1 && node != null; i++) {
+			node = node.children.get(titles.get(i));
+		}
+		if (node != null && !titles.isEmpty()) {
+			node.children.remove(titles.get(titles.size() - 1));
+		}
+	}
+
+	private Node getChild(Drive client, GDriveRateLimiter rateLimiter, Node parent, String title, boolean create) 
+			throws IOException {
+		Node child = parent.children.get(title);
+		if (child != null && !child.isExpired()) {
+			return child;
+		}
+		synchronized (parent) {
+			child = parent.children.get(title);
+			if (child != null && !child.isExpired()) {
+				return child;
+			}
+			String id = lookup(client, rateLimiter, parent.id, title);
+			if (id == null) {
+				if (!create) {
+					parent.children.remove(title);
+					return null;
+				}
+				id = create(client, rateLimiter, parent.id, title);
+			}
+			if (child != null && child.id.equals(id)) {
+				// still the same folder, keep its resolved subfolders
+				child.expiresAt = System.currentTimeMillis() + ttl;
+			} else {
+				child = new Node(id, System.currentTimeMillis() + ttl);
+				parent.children.put(title, child);
+			}
+			return child;
+		}
+	}
+
+	private String create(Drive client, GDriveRateLimiter rateLimiter, String parentId, String title) 
+			throws IOException {
+		File folder = new File();
+		folder.setTitle(title);
+		folder.setMimeType(GDriveFileFilter.FOLDER_MIME_TYPE);
+		folder.setParents(Collections.singletonList(new ParentReference().setId(parentId)));
+		final Drive.Files.Insert insert = client.files().insert(folder).setFields("id");
+		final String id = rateLimiter.execute("insert", new GDriveRateLimiter.Call<File>() {
+			@Override
+			public File call() throws IOException {
+				return insert.execute();
+			}
+		}).getId();
+		LOG.debug("Created folder {} in {} with id {}", new Object[] {title, parentId, id});
+
+		String winner = lookup(client, rateLimiter, parentId, title);
+		if (winner != null && !winner.equals(id)) {
+			LOG.debug("Folder {} in {} was created concurrently, using {}", new Object[] {title, parentId, winner});
+			final Drive.Files.Trash trash = client.files().trash(id);
+			rateLimiter.execute("trash", new GDriveRateLimiter.Call<File>() {
+				@Override
+				public File call() throws IOException {
+					return trash.execute();
+				}
+			});
+			return winner;
+		}
+		return id;
+	}
+
+	/**
+	 * @return the id of the oldest folder with the given title in the parent, {@code null} if there is none
+	 */
+	private String lookup(Drive client, GDriveRateLimiter rateLimiter, String parentId, String title) 
+			throws IOException {
+		String query = GDriveFileFilter.quote(parentId) + " in parents and title = " + GDriveFileFilter.quote(title)
+				+ " and mimeType = " + GDriveFileFilter.quote(GDriveFileFilter.FOLDER_MIME_TYPE) + " and trashed = false";
+		final Drive.Files.List list = client.files().list().setQ(query).setFields(FIELDS);
+		FileList folders = rateLimiter.execute("list", new GDriveRateLimiter.Call<FileList>() {
+			@Override
+			public FileList call() throws IOException {
+				return list.execute();
+			}
+		});
+		File oldest = null;
+		if (folders.getItems() != null) {
+			for (File folder : folders.getItems()) {
+				if (oldest == null || isOlder(folder, oldest)) {
+					oldest = folder;
+				}
+			}
+		}
+		return oldest != null ? oldest.getId() : null;
+	}
+
+	private static boolean isOlder(File file, File other) {
+		long created = file.getCreatedDate() != null ? file.getCreatedDate().getValue() : Long.MAX_VALUE;
+		long otherCreated = other.getCreatedDate() != null ? other.getCreatedDate().getValue() : Long.MAX_VALUE;
+		if (created != otherCreated) {
+			return created < otherCreated;
+		}
+		// same millisecond, any stable order will do
+		return file.getId().compareTo(other.getId()) < 0;
+	}
+
+	private static List<String> split(String path) {
+		List<String> titles = new ArrayList<String>();
+		for (String title : path.split("/")) {
+			if (title.length() > 0) {
+				titles.add(title);
+			}
+		}
+		return titles;
+	}
+
+	private static final class Node {
+
+		private final String id;
+
+		private volatile long expiresAt;
+
+		private final ConcurrentMap<String, Node> children = new ConcurrentHashMap<String, Node>();
+
+		Node(String id, long expiresAt) {
+			this.id = id;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isExpired() {
+			return System.currentTimeMillis() >= expiresAt;
+		}
+	}
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.NoConnectionReuseStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.ApacheHttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+
+/**
+ * Creates the {@link HttpTransport} described by a {@link GDriveConfiguration}.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public final class GDriveHttpTransportFactory {
+
+	public static final String NET = "net";
+
+	public static final String APACHE = "apache";
+
+	private GDriveHttpTransportFactory() {
+	}
+
+	public static HttpTransport createHttpTransport(GDriveConfiguration configuration) {
+		String type = configuration.getTransportType();
+		if (APACHE.equalsIgnoreCase(type)) {
+			return createApacheHttpTransport(configuration);
+		}
+		if (NET.equalsIgnoreCase(type)) {
+			// pooling and keep-alive are driven by the http.keepAlive and http.maxConnections system properties
+			return new NetHttpTransport();
+		}
+		throw new IllegalArgumentException("Unknown transport type " + type);
+	}
+
+	/**
+	 * Create a transport backed by a pooled Apache HttpClient.
+	 */
+	public static HttpTransport createApacheHttpTransport(GDriveConfiguration configuration) {
+		HttpParams params = new BasicHttpParams();
+		// pooled connections may have been closed by the server while idle
+		HttpConnectionParams.setStaleCheckingEnabled(params, true);
+		HttpConnectionParams.setSocketBufferSize(params, 8192);
+		HttpConnectionParams.setConnectionTimeout(params, configuration.getConnectTimeout());
+		HttpConnectionParams.setSoTimeout(params, configuration.getReadTimeout());
+		ConnManagerParams.setMaxTotalConnections(params, configuration.getMaxConnections());
+		ConnManagerParams.setMaxConnectionsPerRoute(params, 
+				new ConnPerRouteBean(configuration.getMaxConnectionsPerRoute()));
+
+		SchemeRegistry registry = new SchemeRegistry();
+		registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+		registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+		ClientConnectionManager connectionManager = new ThreadSafeClientConnManager(params, registry);
+
+		DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager, params);
+		// retries are handled by the google client, only a request which could not be sent
+		// on a connection closed in between is sent again
+		httpClient.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(1, false));
+
+		final long keepAliveTimeout = configuration.getKeepAliveTimeout();
+		if (keepAliveTimeout == 0) {
+			httpClient.setReuseStrategy(new NoConnectionReuseStrategy());
+		} else if (keepAliveTimeout > 0) {
+			httpClient.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+				@Override
+				public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+					return keepAliveTimeout;
+				}
+			});
+		}
+		return new ApacheHttpTransport(httpClient);
+	}
+
+	/**
+	 * @return a key which is the same for configurations producing equivalent transports
+	 */
+	static String getKey(GDriveConfiguration configuration) {
+		StringBuilder key = new StringBuilder(configuration.getTransportType().toLowerCase());
+		if (APACHE.equalsIgnoreCase(configuration.getTransportType())) {
+			key.append(':').append(configuration.getMaxConnections())
+				.append(':').append(configuration.getMaxConnectionsPerRoute())
+				.append(':').append(configuration.getConnectTimeout())
+				.append(':').append(configuration.getReadTimeout())
+				.append(':').append(configuration.getKeepAliveTimeout());
+		}
+		return key.toString();
+	}
+
+}
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} which only opens the underlying stream when it is
+ * first read, so a body that is never read never costs a download.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public abstract class GDriveLazyInputStream extends InputStream {
+
+	private InputStream delegate;
+
+	private boolean closed;
+
+	/**
+	 * Open the underlying stream, called once on the first read.
+	 * 
+	 * @return the underlying stream, {@code null} if there is no content
+	 * @throws IOException
+	 */
+	protected abstract InputStream open() throws IOException;
+
+	/**
+	 * @return {@code true} if the underlying stream was already opened
+	 */
+	public synchronized boolean isOpened() {
+		return delegate != null;
+	}
+
+	private synchronized InputStream delegate() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		if (delegate == null) {
+			InputStream is = open();
+			delegate = is != null ? is : new EmptyInputStream();
+		}
+		return delegate;
+	}
+
+	@Override
+	public int read() throws IOException {
+		return delegate().read();
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		return delegate().read(b, off, len);
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		return delegate().skip(n);
+	}
+
+	@Override
+	public int available() throws IOException {
+		// do not trigger the download just to answer this
+		synchronized (this) {
+			return delegate != null ? delegate.available() : 0;
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			if (delegate != null) {
+				delegate.close();
+			}
+		}
+	}
+
+	private static final class EmptyInputStream extends InputStream {
+		@Override
+		public int read() {
+			return -1;
+		}
+	}
+
+}
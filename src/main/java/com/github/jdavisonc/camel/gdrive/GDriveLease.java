@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+
+/**
+ * Claims files for one consumer among several consuming the same drive, through a lease
+ * kept in a private property of each file.
+ * <p>
+ * A file is claimed by writing the lease, {@code owner;expiry}, with a patch conditional
+ * on the etag the file was listed with, so only one consumer wins a file and the others
+ * get a 412 and skip it. Once consumed, the lease is marked done for the file's content,
+ * {@code owner;done;md5}, so no consumer takes the same content again, while a failed
+ * file is released at once. The lease of a file being processed is renewed, conditional
+ * on the etag of the last write, while the lease of a consumer that died expires after
+ * the lease duration and the file can be claimed again.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveLease {
+
+	private static final Logger LOG = LoggerFactory.getLogger(GDriveLease.class);
+
+	public static final String PROPERTY = "CamelGDriveLease";
+
+	public static final String VISIBILITY = "PRIVATE";
+
+	private static final String DONE = "done";
+
+	private final GDriveEndpoint endpoint;
+
+	private final String owner;
+
+	private final long duration;
+
+	public GDriveLease(GDriveEndpoint endpoint, String owner, long duration) {
+		if (owner.indexOf(';') >= 0) {
+			throw new IllegalArgumentException("Lease owner " + owner + " cannot contain ;");
+		}
+		this.endpoint = endpoint;
+		this.owner = owner;
+		this.duration = duration;
+	}
+
+	public String getOwner() {
+		return owner;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Claim a listed file, which must come with its properties.
+	 * 
+	 * @return the claimed file, {@code null} if another consumer holds it or consumed its content
+	 */
+	public File claim(File file) throws IOException {
+		if (!isClaimable(getValue(file), owner, file.getMd5Checksum(), System.currentTimeMillis())) {
+			LOG.trace("Object with id [{}] is leased by another consumer", file.getId());
+			return null;
+		}
+		try {
+			File claimed = write(file, owner + ";" + (System.currentTimeMillis() + duration), file.getEtag());
+			LOG.trace("Object with id [{}] leased by {}", file.getId(), owner);
+			return claimed;
+		} catch (HttpResponseException e) {
+			if (e.getStatusCode() == 412 || e.getStatusCode() == 404) {
+				// changed, claimed or deleted since it was listed
+				LOG.trace("Object with id [{}] claimed by another consumer", file.getId());
+				return null;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Extend the lease of a claimed file, unless it was written by anyone else since.
+	 * 
+	 * @param claimed the file as returned by the last write of its lease
+	 * @return the file with the renewed lease, {@code null} if the lease was lost
+	 */
+	public File renew(File claimed) throws IOException {
+		try {
+			return write(claimed, owner + ";" + (System.currentTimeMillis() + duration), claimed.getEtag());
+		} catch (HttpResponseException e) {
+			if (e.getStatusCode() == 412 || e.getStatusCode() == 404) {
+				LOG.debug("Lease of object with id [{}] lost, it changed since it was claimed", claimed.getId());
+				return null;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Mark the content of a claimed file as consumed.
+	 */
+	public void complete(File claimed) throws IOException {
+		write(claimed, owner + ";" + DONE + ";" + claimed.getMd5Checksum(), null);
+	}
+
+	/**
+	 * Give a claimed file back, so any consumer can claim it again.
+	 */
+	public void release(File claimed) throws IOException {
+		write(claimed, owner + ";0", null);
+	}
+
+	/**
+	 * @param value the current lease of the file, {@code null} if there is none
+	 * @return {@code true} if the owner can claim a file whose content has the given checksum
+	 */
+	public static boolean isClaimable(String value, String owner, String md5, long now) {
+		if (value == null) {
+			return true;
+		}
+		String[] lease = value.split(";");
+		if (lease.length == 3 && DONE.equals(lease[1])) {
+			// consumed already, unless the content changed since
+			return md5 == null || !md5.equals(lease[2]);
+		}
+		if (lease.length != 2 || owner.equals(lease[0])) {
+			return true;
+		}
+		try {
+			return Long.parseLong(lease[1]) <= now;
+		} catch (NumberFormatException e) {
+			return true;
+		}
+	}
+
+	static String getValue(File file) {
+		return GDriveFileProperties.getValue(file, PROPERTY, VISIBILITY);
+	}
+
+	/**
+	 * Patch the lease, keeping the other properties of the file, only if the file still has
+	 * the given etag when there is one.
+	 */
+	private File write(File file, String value, String etag) throws IOException {
+		List<Map<String, Object>> properties = new ArrayList<Map<String, Object>>();
+		for (Map<String, Object> property : GDriveFileProperties.get(file)) {
+			if (!GDriveFileProperties.matches(property, PROPERTY, VISIBILITY)) {
+				properties.add(property);
+			}
+		}
+		properties.add(GDriveFileProperties.property(PROPERTY, value, VISIBILITY));
+		File patch = new File();
+		GDriveFileProperties.set(patch, properties);
+		
+		final Drive.Files.Patch request = endpoint.getGDriveClient().files().patch(file.getId(), patch)
+				.setFields(endpoint.getConfiguration().getFields() + "," + GDriveConstants.PROPERTIES_FIELDS);
+		if (etag != null) {
+			request.getRequestHeaders().setIfMatch(etag);
+		}
+		return endpoint.getRateLimiter().execute("lease", new GDriveRateLimiter.Call<File>() {
+			@Override
+			public File call() throws IOException {
+				return request.execute();
+			}
+		});
+	}
+
+}
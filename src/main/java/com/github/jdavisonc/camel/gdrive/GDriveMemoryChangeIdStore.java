@@ -0,0 +1,39 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+/**
+ * A {@link GDriveChangeIdStore} which only keeps the cursor in memory, the
+ * changes feed is read again from the beginning after a restart.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveMemoryChangeIdStore implements GDriveChangeIdStore {
+
+	private volatile Long changeId;
+
+	@Override
+	public Long load() {
+		return changeId;
+	}
+
+	@Override
+	public void save(long changeId) {
+		this.changeId = changeId;
+	}
+
+}
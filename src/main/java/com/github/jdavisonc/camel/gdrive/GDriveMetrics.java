@@ -0,0 +1,258 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Measures what an endpoint does: the latency of its API calls per operation,
+ * the HTTP errors Drive answers with, the bytes transferred, the files found
+ * per poll and the work in flight. Every measure is also forwarded to the
+ * configured {@link GDriveMetricsListener}, if any.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveMetrics {
+
+	private final GDriveMetricsListener listener;
+
+	private final ConcurrentMap<String, Histogram> latencies = new ConcurrentHashMap<String, Histogram>();
+
+	private final ConcurrentMap<Integer, AtomicLong> statusCodes = new ConcurrentHashMap<Integer, AtomicLong>();
+
+	private final AtomicLong bytesDownloaded = new AtomicLong();
+
+	private final AtomicLong bytesUploaded = new AtomicLong();
+
+	private final AtomicLong polls = new AtomicLong();
+
+	private final AtomicLong filesPolled = new AtomicLong();
+
+	private final AtomicLong lastPollFiles = new AtomicLong();
+
+	private final AtomicLong inflightDownloads = new AtomicLong();
+
+	private final AtomicLong inflightUploads = new AtomicLong();
+
+	private final AtomicLong deleteQueueDepth = new AtomicLong();
+
+	public GDriveMetrics(GDriveMetricsListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Record an API call.
+	 * 
+	 * @param operation name of the operation, such as list, get or insert
+	 * @param nanos duration of the call
+	 * @param statusCode HTTP status of the failed call, 0 if it succeeded or failed without an answer
+	 */
+	public void recordCall(String operation, long nanos, int statusCode) {
+		getHistogram(operation).record(TimeUnit.NANOSECONDS.toMillis(nanos));
+		if (statusCode != 0) {
+			AtomicLong count = statusCodes.get(statusCode);
+			if (count == null) {
+				AtomicLong created = new AtomicLong();
+				count = statusCodes.putIfAbsent(statusCode, created);
+				if (count == null) {
+					count = created;
+				}
+			}
+			count.incrementAndGet();
+		}
+		if (listener != null) {
+			listener.onCall(operation, nanos, statusCode);
+		}
+	}
+
+	public void recordBytesDownloaded(long bytes) {
+		bytesDownloaded.addAndGet(bytes);
+		if (listener != null) {
+			listener.onBytesDownloaded(bytes);
+		}
+	}
+
+	public void recordBytesUploaded(long bytes) {
+		bytesUploaded.addAndGet(bytes);
+		if (listener != null) {
+			listener.onBytesUploaded(bytes);
+		}
+	}
+
+	public void recordPoll(int files) {
+		polls.incrementAndGet();
+		filesPolled.addAndGet(files);
+		lastPollFiles.set(files);
+		if (listener != null) {
+			listener.onPoll(files);
+		}
+	}
+
+	public AtomicLong getInflightDownloads() {
+		return inflightDownloads;
+	}
+
+	public AtomicLong getInflightUploads() {
+		return inflightUploads;
+	}
+
+	public AtomicLong getDeleteQueueDepth() {
+		return deleteQueueDepth;
+	}
+
+	public long getBytesDownloaded() {
+		return bytesDownloaded.get();
+	}
+
+	public long getBytesUploaded() {
+		return bytesUploaded.get();
+	}
+
+	public long getPolls() {
+		return polls.get();
+	}
+
+	public long getFilesPolled() {
+		return filesPolled.get();
+	}
+
+	public long getLastPollFiles() {
+		return lastPollFiles.get();
+	}
+
+	/**
+	 * @return the number of calls which failed with the given HTTP status
+	 */
+	public long getStatusCount(int statusCode) {
+		AtomicLong count = statusCodes.get(statusCode);
+		return count != null ? count.get() : 0;
+	}
+
+	/**
+	 * @return the latency histogram of the given operation, created on first use
+	 */
+	public Histogram getHistogram(String operation) {
+		Histogram histogram = latencies.get(operation);
+		if (histogram == null) {
+			Histogram created = new Histogram();
+			histogram = latencies.putIfAbsent(operation, created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * @return the latency histograms by operation, sorted by name
+	 */
+	public Map<String, Histogram> getHistograms() {
+		return new TreeMap<String, Histogram>(latencies);
+	}
+
+	/**
+	 * Reset every measure but the gauges of the work in flight.
+	 */
+	public void reset() {
+		latencies.clear();
+		statusCodes.clear();
+		bytesDownloaded.set(0);
+		bytesUploaded.set(0);
+		polls.set(0);
+		filesPolled.set(0);
+		lastPollFiles.set(0);
+	}
+
+	/**
+	 * A latency histogram in milliseconds, with fixed buckets growing in a 1-2-5
+	 * sequence up to a minute. Recording is lock free.
+	 */
+	public static final class Histogram {
+
+		private static final long[] BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 
+			1000, 2000, 5000, 10000, 20000, 60000, Long.MAX_VALUE};
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length);
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong sum = new AtomicLong();
+
+		private final AtomicLong max = new AtomicLong();
+
+		public void record(long millis) {
+			int bucket = 0;
+			while (millis > BOUNDS[bucket]) {
+				bucket++;
+			}
+			buckets.incrementAndGet(bucket);
+			count.incrementAndGet();
+			sum.addAndGet(millis);
+			long current = max.get();
+			while (millis > current && !max.compareAndSet(current, millis)) {
+				current = max.get();
+			}
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		public double getMean() {
+			long n = count.get();
+			return n > 0 ? (double) sum.get() / n : 0;
+		}
+
+		public long getMax() {
+			return max.get();
+		}
+
+		/**
+		 * @param percentile between 0 and 100
+		 * @return the upper bound of the bucket holding the given percentile, or the
+		 *         maximum if that is lower
+		 */
+		public long getPercentile(double percentile) {
+			long n = count.get();
+			if (n == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(n * percentile / 100);
+			long seen = 0;
+			for (int i = 0; i < BOUNDS.length; i++) {
+				seen += buckets.get(i);
+				if (seen >= rank) {
+					return Math.min(BOUNDS[i], max.get());
+				}
+			}
+			return max.get();
+		}
+
+		@Override
+		public String toString() {
+			return String.format("count=%d mean=%.1fms p50=%dms p95=%dms p99=%dms max=%dms", 
+					getCount(), getMean(), getPercentile(50), getPercentile(95), getPercentile(99), getMax());
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+/**
+ * Receives the measures of an endpoint, to publish them to a metrics registry.
+ * Methods are called from the threads doing the work, so they must be fast
+ * and thread safe.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public interface GDriveMetricsListener {
+
+	/**
+	 * @param operation name of the operation, such as list, get, insert, delete or refresh
+	 * @param nanos duration of the call
+	 * @param statusCode HTTP status of the failed call, 0 if it succeeded or failed without an answer
+	 */
+	void onCall(String operation, long nanos, int statusCode);
+
+	void onBytesDownloaded(long bytes);
+
+	void onBytesUploaded(long bytes);
+
+	/**
+	 * @param files number of files found by the poll
+	 */
+	void onPoll(int files);
+
+}
@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.camel.util.ObjectHelper;
+
+/**
+ * Lazy iterator over the pages of a Drive listing. When an executor is
+ * given, the next page is requested while the current one is being
+ * processed, so at most two pages are held in memory at any time. With a
+ * maximum number of items, each page is requested no larger than what is
+ * left of it, and no page is requested once it is reached.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public abstract class GDrivePageIterator<P> implements Iterator<P> {
+
+	private final ExecutorService executorService;
+
+	private final int pageSize;
+
+	private final int maxItems;
+
+	private int items;
+
+	private Future<P> pending;
+
+	private boolean started;
+
+	public GDrivePageIterator(ExecutorService executorService) {
+		this(executorService, 0, 0);
+	}
+
+	/**
+	 * @param pageSize number of items requested per page, 0 or less for the default of Drive
+	 * @param maxItems maximum number of items listed, 0 or less for all of them
+	 */
+	public GDrivePageIterator(ExecutorService executorService, int pageSize, int maxItems) {
+		this.executorService = executorService;
+		this.pageSize = pageSize;
+		this.maxItems = maxItems;
+	}
+
+	/**
+	 * Request a page of the listing.
+	 * 
+	 * @param pageToken token of the page, {@code null} for the first page
+	 * @param maxResults maximum number of items of the page, 0 for the default of Drive
+	 * @return the page
+	 * @throws Exception
+	 */
+	protected abstract P fetchPage(String pageToken, int maxResults) throws Exception;
+
+	/**
+	 * @return the token of the page following the given one, or {@code null} if it is the last one
+	 */
+	protected abstract String getNextPageToken(P page);
+
+	/**
+	 * @return the number of items of the page
+	 */
+	protected abstract int getItemCount(P page);
+
+	@Override
+	public boolean hasNext() {
+		if (!started) {
+			started = true;
+			pending = submit(null);
+		}
+		return pending != null;
+	}
+
+	@Override
+	public P next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		P page = await(pending);
+		items += getItemCount(page);
+		String nextPageToken = getNextPageToken(page);
+		pending = nextPageToken != null && (maxItems <= 0 || items < maxItems) ? submit(nextPageToken) : null;
+		return page;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Discard the page being prefetched, if any.
+	 */
+	public void close() {
+		if (pending != null) {
+			pending.cancel(true);
+			pending = null;
+		}
+	}
+
+	private Future<P> submit(final String pageToken) {
+		int remaining = maxItems - items;
+		final int maxResults = maxItems <= 0 ? Math.max(pageSize, 0)
+				: pageSize > 0 ? Math.min(pageSize, remaining) : remaining;
+		Callable<P> task = new Callable<P>() {
+			@Override
+			public P call() throws Exception {
+				return fetchPage(pageToken, maxResults);
+			}
+		};
+		if (executorService != null) {
+			return executorService.submit(task);
+		}
+		FutureTask<P> future = new FutureTask<P>(task);
+		future.run();
+		return future;
+	}
+
+	private P await(Future<P> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw ObjectHelper.wrapRuntimeCamelException(e);
+		} catch (ExecutionException e) {
+			throw ObjectHelper.wrapRuntimeCamelException(e.getCause());
+		}
+	}
+
+}
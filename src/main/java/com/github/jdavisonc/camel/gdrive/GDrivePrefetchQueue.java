@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A FIFO queue bounded both by a number of items and by their total size in bytes,
+ * filled by a background stage and drained by the consumer. An item larger than the
+ * byte bound on its own is still accepted once the queue is empty.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDrivePrefetchQueue {
+
+	private final int maxSize;
+
+	private final long maxBytes;
+
+	private final LinkedList<Entry> entries = new LinkedList<Entry>();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notFull = lock.newCondition();
+
+	private long bytes;
+
+	private boolean closed;
+
+	public GDrivePrefetchQueue(int maxSize, long maxBytes) {
+		this.maxSize = maxSize;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Add an item, waiting while the queue is full.
+	 * 
+	 * @return {@code false} if the queue was closed, the item was not added
+	 */
+	public boolean put(Object item, long size) throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (!closed && !entries.isEmpty() 
+					&& (entries.size() >= maxSize || (maxBytes > 0 && bytes + size > maxBytes))) {
+				notFull.await();
+			}
+			if (closed) {
+				return false;
+			}
+			entries.add(new Entry(item, size));
+			bytes += size;
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Take the items available, without waiting.
+	 * 
+	 * @param max maximum number of items to take, 0 or less for all
+	 */
+	public List<Object> drain(int max) {
+		lock.lock();
+		try {
+			List<Object> answer = new ArrayList<Object>();
+			while (!entries.isEmpty() && (max <= 0 || answer.size() < max)) {
+				Entry entry = entries.removeFirst();
+				bytes -= entry.size;
+				answer.add(entry.item);
+			}
+			if (!answer.isEmpty()) {
+				notFull.signalAll();
+			}
+			return answer;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Close the queue, waking up the stage waiting to add an item.
+	 * 
+	 * @return the items left in the queue
+	 */
+	public List<Object> close() {
+		lock.lock();
+		try {
+			closed = true;
+			notFull.signalAll();
+			return drain(0);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int size() {
+		lock.lock();
+		try {
+			return entries.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getBytes() {
+		lock.lock();
+		try {
+			return bytes;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static final class Entry {
+
+		private final Object item;
+
+		private final long size;
+
+		private Entry(Object item, long size) {
+			this.item = item;
+			this.size = size;
+		}
+	}
+
+}
@@ -17,46 +17,177 @@
 package com.github.jdavisonc.camel.gdrive;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.camel.AsyncCallback;
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
-import org.apache.camel.impl.DefaultProducer;
+import org.apache.camel.impl.DefaultAsyncProducer;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.util.ObjectHelper;
 import org.apache.camel.util.URISupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.api.client.googleapis.auth.oauth2.GoogleTokenResponse;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.googleapis.media.MediaHttpUploaderProgressListener;
+import com.google.api.client.http.HttpHeaders;
 import com.google.api.client.http.HttpResponseException;
-import com.google.api.client.http.InputStreamContent;
+import com.google.api.client.http.AbstractInputStreamContent;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.ParentReference;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 /**
- * The GDrive producer.
+ * The GDrive producer. With asyncUpload the uploads run in a dedicated pool and
+ * the routing thread is given back right away, at most maxInflightUploads
+ * uploads are in flight, further exchanges wait for one of them to complete.
  *
  * @author Jorge Davison (jdavisonc)
  */
-public class GDriveProducer extends DefaultProducer {
+public class GDriveProducer extends DefaultAsyncProducer {
 
     private static final transient Logger LOG = LoggerFactory.getLogger(GDriveProducer.class);
 
+    private static final int MAX_BATCH_ATTEMPTS = 5;
+
+    private final Cache<String, GDriveFolderIndex> folderIndexes = CacheBuilder.newBuilder()
+    		.expireAfterAccess(1, TimeUnit.HOURS).build();
+
+    private volatile ExecutorService uploadExecutor;
+
+    private volatile Semaphore inflightUploads;
+
+    private ExecutorService batchExecutor;
+
     public GDriveProducer(GDriveEndpoint endpoint) {
         super(endpoint);
     }
 
     @Override
-	public void process(Exchange exchange) throws Exception {
+    protected void doStart() throws Exception {
+        super.doStart();
+        if (getConfiguration().isAsyncUpload()) {
+            int maxInflightUploads = getConfiguration().getMaxInflightUploads();
+            inflightUploads = new Semaphore(maxInflightUploads);
+            uploadExecutor = getEndpoint().getCamelContext().getExecutorServiceManager()
+                    .newFixedThreadPool(this, "GDriveUpload", maxInflightUploads);
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        synchronized (this) {
+            if (batchExecutor != null) {
+                getEndpoint().getCamelContext().getExecutorServiceManager().shutdown(batchExecutor);
+                batchExecutor = null;
+            }
+        }
+        if (uploadExecutor != null) {
+            // let the uploads in flight complete
+            getEndpoint().getCamelContext().getExecutorServiceManager().shutdown(uploadExecutor);
+            uploadExecutor = null;
+        }
+        super.doStop();
+    }
+
+    @Override
+    public boolean process(final Exchange exchange, final AsyncCallback callback) {
+        if (!getConfiguration().isAsyncUpload()) {
+            try {
+                upload(exchange);
+            } catch (Exception e) {
+                exchange.setException(e);
+            }
+            callback.done(true);
+            return true;
+        }
+
+        // the fields are cleared when the producer stops, maybe while waiting for a permit
+        ExecutorService executor = uploadExecutor;
+        final Semaphore semaphore = inflightUploads;
+        if (executor == null || semaphore == null) {
+            exchange.setException(new RejectedExecutionException("Producer is not started: " + this));
+            callback.done(true);
+            return true;
+        }
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.setException(e);
+            callback.done(true);
+            return true;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        upload(exchange);
+                    } catch (Throwable e) {
+                        exchange.setException(e);
+                    } finally {
+                        semaphore.release();
+                        callback.done(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            semaphore.release();
+            exchange.setException(e);
+            callback.done(true);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of uploads in flight, when uploading asynchronously
+     */
+    public int getInflightUploads() {
+        Semaphore semaphore = inflightUploads;
+        return semaphore != null ? getConfiguration().getMaxInflightUploads() - semaphore.availablePermits() : 0;
+    }
+
+	protected void upload(Exchange exchange) throws Exception {
+    	// the aggregator's GroupedExchangeAggregationStrategy keeps the group in a property
+    	List<?> grouped = exchange.getProperty(Exchange.GROUPED_EXCHANGE, List.class);
+    	if (grouped != null) {
+    		uploadBatch(exchange, grouped);
+    		return;
+    	}
+    	if (exchange.getIn().getBody() instanceof Collection) {
+    		uploadBatch(exchange, exchange.getIn().getBody(Collection.class));
+    		return;
+    	}
 
-    	InputStream is = exchange.getIn().getMandatoryBody(InputStream.class);
     	String contentType = exchange.getIn().getHeader(GDriveConstants.CONTENT_TYPE, String.class);
     	String description = exchange.getIn().getHeader(GDriveConstants.DESCRIPTION, String.class);
     	String title = exchange.getIn().getHeader(GDriveConstants.TITLE, String.class);
     	if (title == null) {
     		title = exchange.getIn().getHeader(Exchange.FILE_NAME_ONLY, String.class);
     	}
-    	String accessToken = exchange.getIn().getHeader(GDriveConstants.ACCESS_TOKEN, String.class);
+    	String refreshToken = getRefreshToken(exchange);
+    	String accessToken = getAccessToken(exchange, refreshToken);
 
+    	GDriveRateLimiter rateLimiter = getEndpoint().getRateLimiter(accessToken, refreshToken);
     	Drive gDriveClient = null;
     	if (accessToken != null) {
     		gDriveClient = getGDriveClient(accessToken);
@@ -69,44 +200,570 @@ public class GDriveProducer extends DefaultProducer {
         body.setTitle(title);
         body.setDescription(description);
         body.setMimeType(contentType);
-    	InputStreamContent mediaContent = new InputStreamContent(contentType, is);
+        String folderPath = getFolderPath(exchange);
+        GDriveFolderResolver folderResolver = getEndpoint().getFolderResolver(accessToken, refreshToken);
+        String folderId = folderPath != null 
+        		? folderResolver.resolve(gDriveClient, rateLimiter, folderPath, true) : getFolderId(exchange);
+        if (folderId != null) {
+        	body.setParents(Collections.singletonList(new ParentReference().setId(folderId)));
+        }
+    	// the body is buffered once, so any retry sends the whole content again
+    	GDriveReplayableContent mediaContent = GDriveReplayableContent.fromExchange(exchange, contentType,
+    			getConfiguration().getSpoolThreshold(), 
+    			getConfiguration().isDeduplicate() || getConfiguration().isVerifyChecksum());
+    	GDriveFolderIndex folderIndex = getFolderIndex(accessToken, refreshToken, folderId);
 
+    	getEndpoint().getMetrics().getInflightUploads().incrementAndGet();
     	try {
     		LOG.trace("Put file [{}] from exchange [{}]...", body, exchange);
-    		uploadFile(exchange, gDriveClient, body, mediaContent);
-		} catch (HttpResponseException e) {
-			if (e.getStatusCode() == 401) {
+    		storeFile(exchange, gDriveClient, rateLimiter, folderIndex, body, mediaContent);
+    	} catch (HttpResponseException e) {
+    		if (e.getStatusCode() == 404 && folderPath != null) {
+    			// the cached folder was deleted, resolve the path again
+    			LOG.debug("Folder {} of path {} not found, resolving it again", folderId, folderPath);
+    			folderResolver.invalidate(folderPath);
+    			folderId = folderResolver.resolve(gDriveClient, rateLimiter, folderPath, true);
+    			body.setParents(Collections.singletonList(new ParentReference().setId(folderId)));
+    			storeFile(exchange, gDriveClient, rateLimiter, getFolderIndex(accessToken, refreshToken, folderId), 
+    					body, mediaContent);
+    			return;
+    		}
+    		if (e.getStatusCode() != 401) {
+    			throw e;
+    		}
+    		// Attempt to refresh token in case of failed request
+    		String newToken = refreshToken(refreshToken, accessToken);
+    		if (newToken == null) {
+    			throw e;
+    		}
+    		storeFile(exchange, getGDriveClient(newToken), rateLimiter, folderIndex, body, mediaContent);
+    	} finally {
+    		getEndpoint().getMetrics().getInflightUploads().decrementAndGet();
+    		mediaContent.release();
+    	}
+    }
+
+	/**
+	 * Store every item of a batch. Folders, metadata-only files and patches are sent in
+	 * batch requests, while the items with content are uploaded in parallel, each one as
+	 * a single exchange would be. The outcome of each item is set in the
+	 * {@link GDriveConstants#BATCH_RESULTS} header, in the order of the batch.
+	 */
+	protected void uploadBatch(Exchange exchange, Collection<?> payloads) throws Exception {
+		String refreshToken = getRefreshToken(exchange);
+		String accessToken = getAccessToken(exchange, refreshToken);
+		if (accessToken == null) {
+			throw new IllegalArgumentException("No access token for the batch, set the accessToken option, "
+					+ "a refreshToken with the client credentials or the " + GDriveConstants.ACCESS_TOKEN + " header");
+		}
+		GDriveRateLimiter rateLimiter = getEndpoint().getRateLimiter(accessToken, refreshToken);
+
+		List<GDriveBatchResult> results = new ArrayList<GDriveBatchResult>(payloads.size());
+		List<PendingItem> metadataItems = new ArrayList<PendingItem>();
+		List<Future<?>> uploads = new ArrayList<Future<?>>();
+		int index = 0;
+		for (Object payload : payloads) {
+			final Exchange child = toExchange(exchange, payload);
+			final GDriveBatchResult result = new GDriveBatchResult(index++, 
+					child.getIn().getHeader(GDriveConstants.TITLE, String.class));
+			results.add(result);
+			GDriveBatchItem item = payload instanceof GDriveBatchItem ? (GDriveBatchItem) payload : null;
+			if (item != null ? !item.hasContent() : child.getIn().getBody() == null) {
+				String folderPath = getFolderPath(child);
+				String folderId = folderPath != null 
+						? getEndpoint().getFolderResolver(accessToken, refreshToken)
+								.resolve(getGDriveClient(accessToken), rateLimiter, folderPath, true)
+						: getFolderId(child);
+				metadataItems.add(new PendingItem(result, toMetadata(child, item, folderId)));
+				continue;
+			}
+			uploads.add(getBatchExecutor().submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						upload(child);
+					} catch (Exception e) {
+						child.setException(e);
+					}
+					Message message = child.hasOut() ? child.getOut() : child.getIn();
+					result.setFileId(message.getHeader(GDriveConstants.FILE_ID, String.class));
+					result.setEtag(message.getHeader(GDriveConstants.E_TAG, String.class));
+					result.setException(child.getException());
+				}
+			}));
+		}
+
+		if (!metadataItems.isEmpty()) {
+			storeMetadata(accessToken, refreshToken, rateLimiter, metadataItems);
+		}
+		for (Future<?> upload : uploads) {
+			upload.get();
+		}
+
+		int failures = 0;
+		for (GDriveBatchResult result : results) {
+			if (!result.isSuccess()) {
+				failures++;
+			}
+		}
+		if (failures > 0) {
+			LOG.warn("{} out of {} items of the batch failed", failures, results.size());
+		}
+		getMessageForResponse(exchange).setHeader(GDriveConstants.BATCH_RESULTS, results);
+	}
+
+	/**
+	 * Send the metadata-only operations in batch requests. The operations throttled by
+	 * Drive are sent again in the next batch, after slowing down, and the unauthorized
+	 * ones once the access token is refreshed, as an upload would be.
+	 */
+	private void storeMetadata(String accessToken, String refreshToken, GDriveRateLimiter rateLimiter, 
+			List<PendingItem> items) throws IOException {
+		Drive gDriveClient = getGDriveClient(accessToken);
+		List<PendingItem> pending = items;
+		boolean refreshed = false;
+		while (!pending.isEmpty()) {
+			final List<PendingItem> throttled = new ArrayList<PendingItem>();
+			final List<PendingItem> unauthorized = new ArrayList<PendingItem>();
+			final boolean canRefresh = !refreshed;
+			for (int from = 0; from < pending.size(); from += GDriveDeleteQueue.MAX_BATCH_SIZE) {
+				List<PendingItem> chunk = pending.subList(from, 
+						Math.min(from + GDriveDeleteQueue.MAX_BATCH_SIZE, pending.size()));
+				LOG.trace("Storing {} metadata items in batch...", chunk.size());
+				final BatchRequest batch = gDriveClient.batch();
+				for (final PendingItem item : chunk) {
+					JsonBatchCallback<File> callback = new JsonBatchCallback<File>() {
+						@Override
+						public void onSuccess(File file, HttpHeaders responseHeaders) {
+							item.result.setFileId(file.getId());
+							item.result.setEtag(file.getEtag());
+						}
+
+						@Override
+						public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+							if (GDriveRateLimiter.isRateLimitExceeded(error) && ++item.attempts < MAX_BATCH_ATTEMPTS) {
+								throttled.add(item);
+								return;
+							}
+							item.result.setException(new IOException("Error occurred during storing " 
+									+ item.metadata.getTitle() + ": " + error.getMessage()));
+							if (canRefresh && error.getCode() == 401) {
+								unauthorized.add(item);
+							}
+						}
+					};
+					if (item.metadata.getId() != null) {
+						gDriveClient.files().patch(item.metadata.getId(), item.metadata).queue(batch, callback);
+					} else {
+						gDriveClient.files().insert(item.metadata).queue(batch, callback);
+					}
+				}
+				try {
+					rateLimiter.execute("batch", chunk.size(), new GDriveRateLimiter.Call<Void>() {
+						@Override
+						public Void call() throws IOException {
+							batch.execute();
+							return null;
+						}
+					});
+				} catch (IOException e) {
+					for (PendingItem item : chunk) {
+						item.result.setException(e);
+					}
+					if (canRefresh && e instanceof HttpResponseException 
+							&& ((HttpResponseException) e).getStatusCode() == 401) {
+						unauthorized.addAll(chunk);
+					}
+				}
+			}
+			if (!throttled.isEmpty()) {
+				LOG.debug("{} batch items throttled, sending them again", throttled.size());
+				rateLimiter.onRateLimitExceeded();
+			}
+			pending = throttled;
+			if (!unauthorized.isEmpty()) {
 				// Attempt to refresh token in case of failed request
-				String newToken = refreshToken(exchange);
+				refreshed = true;
+				String newToken = refreshToken(refreshToken, accessToken);
 				if (newToken != null) {
-					uploadFile(exchange, getGDriveClient(newToken), body, mediaContent);		
-				} else {
-					throw e;					
+					LOG.debug("{} batch items unauthorized, sending them again with a new token", unauthorized.size());
+					for (PendingItem item : unauthorized) {
+						item.result.setException(null);
+					}
+					gDriveClient = getGDriveClient(newToken);
+					pending = new ArrayList<PendingItem>(throttled);
+					pending.addAll(unauthorized);
 				}
 			}
 		}
-    }
+	}
 
-	private String refreshToken(Exchange exchange) {
+	/**
+	 * @return the exchange to upload an item of a batch with, the item itself when it is an exchange
+	 */
+	private Exchange toExchange(Exchange parent, Object payload) {
+		if (payload instanceof Exchange) {
+			return (Exchange) payload;
+		}
+		Exchange child = new DefaultExchange(parent);
+		Message message = child.getIn();
+		for (String header : new String[] {GDriveConstants.ACCESS_TOKEN, GDriveConstants.REFRESH_TOKEN,
+				GDriveConstants.FOLDER_ID, GDriveConstants.FOLDER_PATH}) {
+			if (parent.getIn().getHeader(header) != null) {
+				message.setHeader(header, parent.getIn().getHeader(header));
+			}
+		}
+		if (payload instanceof GDriveBatchItem) {
+			GDriveBatchItem item = (GDriveBatchItem) payload;
+			message.setHeader(GDriveConstants.TITLE, item.getTitle());
+			message.setHeader(GDriveConstants.DESCRIPTION, item.getDescription());
+			message.setHeader(GDriveConstants.CONTENT_TYPE, item.getMimeType());
+			if (item.getParentId() != null) {
+				message.removeHeader(GDriveConstants.FOLDER_PATH);
+				message.setHeader(GDriveConstants.FOLDER_ID, item.getParentId());
+			} else if (item.getFolderPath() != null) {
+				message.removeHeader(GDriveConstants.FOLDER_ID);
+				message.setHeader(GDriveConstants.FOLDER_PATH, item.getFolderPath());
+			}
+			message.setBody(item.getContent());
+		} else if (payload instanceof java.io.File) {
+			message.setHeader(GDriveConstants.TITLE, ((java.io.File) payload).getName());
+			message.setBody(payload);
+		} else {
+			throw new IllegalArgumentException("Unsupported batch item " + payload 
+					+ ", expected an Exchange, a GDriveBatchItem or a java.io.File");
+		}
+		return child;
+	}
+
+	private File toMetadata(Exchange child, GDriveBatchItem item, String folderId) {
+		Message message = child.getIn();
+		File metadata = new File();
+		metadata.setTitle(message.getHeader(GDriveConstants.TITLE, String.class));
+		metadata.setDescription(message.getHeader(GDriveConstants.DESCRIPTION, String.class));
+		metadata.setMimeType(message.getHeader(GDriveConstants.CONTENT_TYPE, String.class));
+		if (item != null && item.getFileId() != null) {
+			metadata.setId(item.getFileId());
+		} else if (folderId != null) {
+			metadata.setParents(Collections.singletonList(new ParentReference().setId(folderId)));
+		}
+		if (item != null && !item.getProperties().isEmpty()) {
+			List<Map<String, Object>> properties = new ArrayList<Map<String, Object>>();
+			for (Map.Entry<String, String> entry : item.getProperties().entrySet()) {
+				properties.add(GDriveFileProperties.property(entry.getKey(), entry.getValue(), null));
+			}
+			GDriveFileProperties.set(metadata, properties);
+		}
+		return metadata;
+	}
+
+	private synchronized ExecutorService getBatchExecutor() {
+		if (batchExecutor == null) {
+			batchExecutor = getEndpoint().getCamelContext().getExecutorServiceManager()
+					.newFixedThreadPool(this, "GDriveBatchUpload", getConfiguration().getBatchUploadConcurrency());
+		}
+		return batchExecutor;
+	}
+
+	/**
+	 * @return the folder path to store the file in, {@code null} if there is none
+	 *         or if a folder id takes precedence
+	 */
+	private String getFolderPath(Exchange exchange) {
+		if (exchange.getIn().getHeader(GDriveConstants.FOLDER_ID) != null) {
+			return null;
+		}
+		String folderPath = exchange.getIn().getHeader(GDriveConstants.FOLDER_PATH, String.class);
+		if (folderPath == null && getConfiguration().getFolderId() == null) {
+			folderPath = getConfiguration().getFolderPath();
+		}
+		return folderPath;
+	}
+
+	/**
+	 * @return the id of the folder to store the file in, {@code null} for the root folder
+	 */
+	private String getFolderId(Exchange exchange) {
+		String folderId = exchange.getIn().getHeader(GDriveConstants.FOLDER_ID, String.class);
+		return folderId != null ? folderId : getConfiguration().getFolderId();
+	}
+
+	/**
+	 * @return the access token of the message's credential. A token given in a header is
+	 *         used as is, never replaced by one cached for the refresh token
+	 */
+	private String getAccessToken(Exchange exchange, String refreshToken) throws IOException {
+		Message message = exchange.getIn();
+		String accessToken = message.getHeader(GDriveConstants.ACCESS_TOKEN, String.class);
+		if (accessToken != null) {
+			return accessToken;
+		}
+		if (message.getHeader(GDriveConstants.REFRESH_TOKEN) != null) {
+			return getEndpoint().getAccessToken(null, refreshToken);
+		}
+		return getEndpoint().getAccessToken(getConfiguration().getAccessToken(), refreshToken);
+	}
+
+	/**
+	 * @return the refresh token of the message's credential, the endpoint's one only when
+	 *         the message does not bring an access token of its own
+	 */
+	private String getRefreshToken(Exchange exchange) {
+		Message message = exchange.getIn();
+		String refreshToken = message.getHeader(GDriveConstants.REFRESH_TOKEN, String.class);
+		if (refreshToken != null) {
+			return refreshToken;
+		}
+		return message.getHeader(GDriveConstants.ACCESS_TOKEN) == null ? getConfiguration().getRefreshToken() : null;
+	}
+
+	private String refreshToken(String refreshToken, String staleAccessToken) {
 		try {
-			String refreshToken = exchange.getIn().getHeader(GDriveConstants.REFRESH_TOKEN, String.class);
-			GoogleTokenResponse newToken = getEndpoint().refreshToken(refreshToken);
-			return (newToken != null) ? newToken.getAccessToken() : null;
+			return getEndpoint().refreshAccessToken(refreshToken, staleAccessToken);
 		} catch (IOException e) {
 			LOG.trace("Refresh token request fails", e);
 			return null;
 		}
 	}
 
-	private void uploadFile(Exchange exchange, Drive gDriveClient, File body,
-			InputStreamContent mediaContent) throws IOException {
-		File file = gDriveClient.files().insert(body, mediaContent).execute();
+	/**
+	 * Upload the file, unless deduplication is enabled and the folder already holds
+	 * a file with the same title and content.
+	 */
+	private void storeFile(Exchange exchange, Drive gDriveClient, GDriveRateLimiter rateLimiter, 
+			GDriveFolderIndex folderIndex, File body, GDriveReplayableContent mediaContent) throws IOException {
+		if (folderIndex == null) {
+			uploadVerifiedFile(exchange, gDriveClient, rateLimiter, body, mediaContent);
+			return;
+		}
+		if (!deduplicate(exchange, gDriveClient, rateLimiter, folderIndex, body, mediaContent.getMd5Checksum())) {
+			File file = uploadVerifiedFile(exchange, gDriveClient, rateLimiter, body, mediaContent);
+			folderIndex.put(file);
+			getMessageForResponse(exchange).setHeader(GDriveConstants.DEDUPLICATED, false);
+		}
+	}
+
+	/**
+	 * Look for a file with the same title and content in the folder, and update its
+	 * description and content type if they differ. The index may hold files deleted or
+	 * moved since it was refreshed, so a candidate is only trusted once Drive confirms it.
+	 * 
+	 * @return {@code true} if such a file exists, so the content need not be uploaded
+	 */
+	private boolean deduplicate(Exchange exchange, Drive gDriveClient, GDriveRateLimiter rateLimiter, 
+			GDriveFolderIndex folderIndex, File body, String md5) throws IOException {
+		File file = null;
+		File existing;
+		while (file == null && (existing = folderIndex.find(gDriveClient, rateLimiter, md5, body.getTitle())) != null) {
+			file = confirm(gDriveClient, rateLimiter, folderIndex, existing, body);
+		}
+		if (file == null) {
+			return false;
+		}
+		LOG.trace("File [{}] already holds the content of [{}]", file.getId(), body.getTitle());
+
+		Message message = getMessageForResponse(exchange);
+		message.setHeader(GDriveConstants.E_TAG, file.getEtag());
+		message.setHeader(GDriveConstants.FILE_ID, file.getId());
+		message.setHeader(GDriveConstants.BYTES_UPLOADED, 0L);
+		message.setHeader(GDriveConstants.DEDUPLICATED, true);
+		return true;
+	}
+
+	/**
+	 * Fetch an indexed file, patching its description and content type if they differ from
+	 * the upload's, and check it is still in the folder.
+	 * 
+	 * @return the up to date file, {@code null} if it was deleted, trashed or moved, it is then
+	 *         dropped from the index
+	 */
+	private File confirm(Drive gDriveClient, GDriveRateLimiter rateLimiter, GDriveFolderIndex folderIndex, 
+			File existing, File body) throws IOException {
+		boolean describe = body.getDescription() != null && !body.getDescription().equals(existing.getDescription());
+		boolean retype = body.getMimeType() != null && !body.getMimeType().equals(existing.getMimeType());
+		File file;
+		try {
+			if (describe || retype) {
+				File patch = new File();
+				if (describe) {
+					patch.setDescription(body.getDescription());
+				}
+				if (retype) {
+					patch.setMimeType(body.getMimeType());
+				}
+				final Drive.Files.Patch request = gDriveClient.files().patch(existing.getId(), patch)
+						.setFields(GDriveFolderIndex.CONFIRM_FIELDS);
+				file = rateLimiter.execute("patch", new GDriveRateLimiter.Call<File>() {
+					@Override
+					public File call() throws IOException {
+						return request.execute();
+					}
+				});
+			} else {
+				final Drive.Files.Get request = gDriveClient.files().get(existing.getId())
+						.setFields(GDriveFolderIndex.CONFIRM_FIELDS);
+				file = rateLimiter.execute("get", new GDriveRateLimiter.Call<File>() {
+					@Override
+					public File call() throws IOException {
+						return request.execute();
+					}
+				});
+			}
+		} catch (HttpResponseException e) {
+			if (e.getStatusCode() != 404) {
+				throw e;
+			}
+			file = null;
+		}
+		if (file == null || !folderIndex.contains(file)) {
+			LOG.debug("Indexed file [{}] is no longer in folder {}", existing.getId(), folderIndex.getFolderId());
+			folderIndex.remove(existing.getId());
+			return null;
+		}
+		folderIndex.put(file);
+		return file;
+	}
+
+	private GDriveFolderIndex getFolderIndex(String accessToken, String refreshToken, String folderId) {
+		if (!getConfiguration().isDeduplicate()) {
+			return null;
+		}
+		return getFolderIndex(refreshToken != null ? refreshToken : accessToken, folderId != null ? folderId : "root");
+	}
+
+	private GDriveFolderIndex getFolderIndex(String credentialKey, final String folderId) {
+		try {
+			return folderIndexes.get(credentialKey + ":" + folderId, new Callable<GDriveFolderIndex>() {
+				@Override
+				public GDriveFolderIndex call() {
+					return new GDriveFolderIndex(folderId, getConfiguration().getDeduplicateRefreshInterval());
+				}
+			});
+		} catch (ExecutionException e) {
+			throw ObjectHelper.wrapRuntimeCamelException(e.getCause());
+		}
+	}
+
+	/**
+	 * Upload the file and, with verifyChecksum, check the checksum computed by Drive against
+	 * the one computed while the content was buffered. A corrupted copy is deleted and the
+	 * content uploaded once more before giving up.
+	 */
+	private File uploadVerifiedFile(Exchange exchange, Drive gDriveClient, GDriveRateLimiter rateLimiter, File body,
+			GDriveReplayableContent mediaContent) throws IOException {
+		File file = uploadFile(exchange, gDriveClient, rateLimiter, body, mediaContent);
+		if (!getConfiguration().isVerifyChecksum()) {
+			return file;
+		}
+		String expected = mediaContent.getMd5Checksum();
+		for (int attempt = 1; file.getMd5Checksum() != null && !expected.equalsIgnoreCase(file.getMd5Checksum()); 
+				attempt++) {
+			LOG.warn("Uploaded file [{}] has checksum {} instead of {}, deleting it", 
+					new Object[] { file.getId(), file.getMd5Checksum(), expected });
+			final Drive.Files.Delete delete = gDriveClient.files().delete(file.getId());
+			rateLimiter.execute("delete", new GDriveRateLimiter.Call<Void>() {
+				@Override
+				public Void call() throws IOException {
+					return delete.execute();
+				}
+			});
+			if (attempt > 1) {
+				throw new IOException("Upload of " + body.getTitle() + " corrupted, checksum " 
+						+ file.getMd5Checksum() + " instead of " + expected);
+			}
+			file = uploadFile(exchange, gDriveClient, rateLimiter, body, mediaContent);
+		}
+		return file;
+	}
+
+	private File uploadFile(final Exchange exchange, final Drive gDriveClient, GDriveRateLimiter rateLimiter, 
+			final File body, final AbstractInputStreamContent mediaContent) throws IOException {
+		final boolean resumable = isResumableUpload(mediaContent.getLength());
+		if (resumable) {
+			LOG.trace("Using resumable upload for [{}]", body.getTitle());
+		}
+		final MediaHttpUploader[] uploader = new MediaHttpUploader[1];
+		File file = rateLimiter.execute("insert", new GDriveRateLimiter.Call<File>() {
+			@Override
+			public File call() throws IOException {
+				// an uploader runs once, so each attempt needs a new request
+				Drive.Files.Insert insert = gDriveClient.files().insert(body, mediaContent);
+				if (resumable) {
+					uploader[0] = insert.getMediaHttpUploader();
+					uploader[0].setDirectUploadEnabled(false);
+					uploader[0].setChunkSize(getConfiguration().getUploadChunkSize());
+					// on server errors the uploader asks for the last confirmed offset and resumes from there
+					uploader[0].setBackOffPolicyEnabled(true);
+					uploader[0].setProgressListener(new UploadProgressListener(exchange, 
+							getConfiguration().getUploadProgressListener()));
+				} else {
+					// the client defaults to the resumable protocol, send the content in one request
+					insert.getMediaHttpUploader().setDirectUploadEnabled(true);
+				}
+				return insert.execute();
+			}
+		});
 
 		LOG.trace("Received result [{}]", file);
 
 		Message message = getMessageForResponse(exchange);
 		message.setHeader(GDriveConstants.E_TAG, file.getEtag());
 		message.setHeader(GDriveConstants.FILE_ID, file.getId());
+		long bytesUploaded = uploader[0] != null ? uploader[0].getNumBytesUploaded() : mediaContent.getLength();
+		if (bytesUploaded >= 0) {
+			message.setHeader(GDriveConstants.BYTES_UPLOADED, bytesUploaded);
+			getEndpoint().getMetrics().recordBytesUploaded(bytesUploaded);
+		}
+		return file;
+	}
+
+	/**
+	 * Large payloads, or payloads of unknown length, are sent in chunks through a
+	 * resumable upload session once a threshold is configured.
+	 */
+	private boolean isResumableUpload(long length) {
+		long threshold = getConfiguration().getResumableUploadThreshold();
+		return threshold >= 0 && (length < 0 || length >= threshold);
+	}
+
+	private static final class PendingItem {
+
+		private final GDriveBatchResult result;
+
+		private final File metadata;
+
+		private int attempts;
+
+		PendingItem(GDriveBatchResult result, File metadata) {
+			this.result = result;
+			this.metadata = metadata;
+		}
+	}
+
+	/**
+	 * Publishes the progress of a resumable upload on the exchange, and forwards it to
+	 * the configured listener if any.
+	 */
+	private static final class UploadProgressListener implements MediaHttpUploaderProgressListener {
+
+		private final Exchange exchange;
+		
+		private final MediaHttpUploaderProgressListener delegate;
+
+		UploadProgressListener(Exchange exchange, MediaHttpUploaderProgressListener delegate) {
+			this.exchange = exchange;
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void progressChanged(MediaHttpUploader uploader) throws IOException {
+			LOG.trace("Upload state {}, {} bytes uploaded", uploader.getUploadState(), 
+					uploader.getNumBytesUploaded());
+			exchange.setProperty(GDriveConstants.BYTES_UPLOADED, uploader.getNumBytesUploaded());
+			if (delegate != null) {
+				delegate.progressChanged(uploader);
+			}
+		}
 	}
 
     private Message getMessageForResponse(final Exchange exchange) {
@@ -0,0 +1,237 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.util.IOHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.json.JsonHttpContent;
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonObjectParser;
+import com.google.api.services.drive.Drive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Receives the change notifications of Drive on an embedded HTTP listener and triggers
+ * a poll for each of them.
+ * <p>
+ * With a push address, a channel watching the changes of the drive is registered so Drive
+ * posts its notifications to that address, which must reach the listener, and the channel
+ * is renewed before it expires. Without one, the listener only serves the notifications
+ * posted by a local stand-in, such as a test or a relay, which must send the push token.
+ * Notifications only trigger a poll of the changes feed, so the consumer must use it.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDrivePushListener {
+
+	private static final Logger LOG = LoggerFactory.getLogger(GDrivePushListener.class);
+
+	static final String CHANNEL_ID = "X-Goog-Channel-ID";
+
+	static final String CHANNEL_TOKEN = "X-Goog-Channel-Token";
+
+	static final String RESOURCE_STATE = "X-Goog-Resource-State";
+
+	private final GDriveEndpoint endpoint;
+
+	private final GDriveConfiguration configuration;
+
+	private final Runnable trigger;
+
+	private final String token;
+
+	private HttpServer server;
+
+	private volatile String channelId;
+
+	private volatile String resourceId;
+
+	/**
+	 * @param endpoint endpoint registering the channel, only used with a push address
+	 * @param trigger called on each change notification
+	 */
+	public GDrivePushListener(GDriveEndpoint endpoint, GDriveConfiguration configuration, Runnable trigger) {
+		this.endpoint = endpoint;
+		this.configuration = configuration;
+		this.trigger = trigger;
+		this.token = configuration.getPushToken() != null ? configuration.getPushToken() : UUID.randomUUID().toString();
+	}
+
+	/**
+	 * Start listening and, with a push address, register the channel and schedule its
+	 * renewal with the given executor.
+	 */
+	public void start(ScheduledExecutorService executor) throws IOException {
+		if (!configuration.isUseChanges()) {
+			throw new IllegalArgumentException("Push notifications require useChanges=true");
+		}
+		if (configuration.getPushAddress() == null && configuration.getPushToken() == null) {
+			throw new IllegalArgumentException("Push notifications without a pushAddress require a pushToken");
+		}
+		String host = configuration.getPushHost();
+		server = HttpServer.create(host != null ? new InetSocketAddress(host, configuration.getPushPort())
+				: new InetSocketAddress(configuration.getPushPort()), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					notified(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+		LOG.debug("Listening to change notifications on {}", server.getAddress());
+		
+		if (configuration.getPushAddress() != null) {
+			watch();
+			long renewal = configuration.getPushChannelTtl() * 9 / 10;
+			executor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					renew();
+				}
+			}, renewal, renewal, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public void stop() {
+		if (channelId != null) {
+			try {
+				unwatch(channelId, resourceId);
+			} catch (IOException e) {
+				LOG.warn("Cannot stop channel " + channelId + ", it expires by itself", e);
+			}
+			channelId = null;
+		}
+		if (server != null) {
+			server.stop(0);
+			server = null;
+		}
+	}
+
+	/**
+	 * @return the address the listener is bound to
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * @return the port the listener is bound to
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public String getChannelId() {
+		return channelId;
+	}
+
+	private void notified(HttpExchange exchange) throws IOException {
+		InputStream body = exchange.getRequestBody();
+		while (body.read() != -1) {
+			// the notification carries no content worth reading
+		}
+		IOHelper.close(body);
+		if (!"POST".equals(exchange.getRequestMethod())) {
+			exchange.sendResponseHeaders(405, -1);
+			return;
+		}
+		if (!token.equals(exchange.getRequestHeaders().getFirst(CHANNEL_TOKEN))) {
+			LOG.debug("Ignoring notification of unknown channel {}", exchange.getRequestHeaders().getFirst(CHANNEL_ID));
+			exchange.sendResponseHeaders(403, -1);
+			return;
+		}
+		String state = exchange.getRequestHeaders().getFirst(RESOURCE_STATE);
+		// the sync message only confirms a new channel
+		if (!"sync".equals(state)) {
+			LOG.trace("Change notification {} received, polling", state);
+			trigger.run();
+		}
+		exchange.sendResponseHeaders(200, -1);
+	}
+
+	/**
+	 * Register a new channel before stopping the current one, so no notification is missed.
+	 */
+	private void renew() {
+		String oldChannelId = channelId;
+		String oldResourceId = resourceId;
+		try {
+			watch();
+			unwatch(oldChannelId, oldResourceId);
+		} catch (Exception e) {
+			LOG.warn("Cannot renew the notification channel, relying on the scheduled poll", e);
+		}
+	}
+
+	private void watch() throws IOException {
+		Drive client = endpoint.getGDriveClient();
+		String id = UUID.randomUUID().toString();
+		GenericJson channel = new GenericJson();
+		channel.set("id", id);
+		channel.set("type", "web_hook");
+		channel.set("address", configuration.getPushAddress());
+		channel.set("token", token);
+		channel.set("expiration", System.currentTimeMillis() + configuration.getPushChannelTtl());
+		GenericJson answer = post(client, "changes/watch", channel, "watch");
+		resourceId = (String) answer.get("resourceId");
+		channelId = id;
+		LOG.debug("Watching changes through channel {}", id);
+	}
+
+	private void unwatch(String id, String resource) throws IOException {
+		GenericJson channel = new GenericJson();
+		channel.set("id", id);
+		channel.set("resourceId", resource);
+		post(endpoint.getGDriveClient(), "channels/stop", channel, "unwatch");
+	}
+
+	private GenericJson post(Drive client, String path, GenericJson content, String operation) throws IOException {
+		final HttpRequest request = client.getRequestFactory().buildPostRequest(
+				new GenericUrl(client.getBaseUrl() + path), new JsonHttpContent(client.getJsonFactory(), content));
+		request.setParser(new JsonObjectParser(client.getJsonFactory()));
+		return endpoint.getRateLimiter().execute(operation, new GDriveRateLimiter.Call<GenericJson>() {
+			@Override
+			public GenericJson call() throws IOException {
+				HttpResponse response = request.execute();
+				try {
+					return response.getStatusCode() == 204 ? new GenericJson() : response.parseAs(GenericJson.class);
+				} finally {
+					response.disconnect();
+				}
+			}
+		});
+	}
+
+}
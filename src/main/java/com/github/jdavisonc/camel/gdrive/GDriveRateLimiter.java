@@ -0,0 +1,269 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonError.ErrorInfo;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponseException;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Throttles the calls made with one credential. The rate is halved whenever
+ * Drive answers with a quota error (403 rateLimitExceeded or 429) and slowly
+ * grows back on success, and throttled calls are retried with a jittered
+ * exponential backoff.
+ * <p>
+ * A limiter is shared by all the endpoints using a credential, so its rate is the
+ * one of the first endpoint. Each endpoint calls through a
+ * {@link #view(int, long, long, GDriveMetrics) view} with its own retries, which
+ * records its own calls.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveRateLimiter {
+
+	private static final Logger LOG = LoggerFactory.getLogger(GDriveRateLimiter.class);
+
+	/**
+	 * A call to the Drive API.
+	 */
+	public interface Call<T> {
+		T call() throws IOException;
+	}
+
+	private final RateLimiter rateLimiter;
+
+	private final double maxRate;
+
+	private final double minRate;
+
+	private final double rateStep;
+
+	private volatile double rate;
+
+	private final int maxRetries;
+
+	private final long initialBackoff;
+
+	private final long maxBackoff;
+
+	private final Random random = new Random();
+
+	/** The limiter this one is a view of, {@code null} if it is not a view */
+	private final GDriveRateLimiter shared;
+
+	private final GDriveMetrics metrics;
+
+	/**
+	 * @param maxRate maximum calls per second, 0 or less to only back off on quota errors
+	 * @param maxRetries number of retries of a throttled call
+	 * @param initialBackoff delay in millis before the first retry
+	 * @param maxBackoff maximum delay in millis between two retries
+	 */
+	public GDriveRateLimiter(double maxRate, int maxRetries, long initialBackoff, long maxBackoff) {
+		this.maxRate = maxRate;
+		this.minRate = maxRate / 20;
+		this.rateStep = maxRate / 100;
+		this.rate = maxRate;
+		this.rateLimiter = maxRate > 0 ? RateLimiter.create(maxRate) : null;
+		this.maxRetries = maxRetries;
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+		this.shared = null;
+		this.metrics = null;
+	}
+
+	private GDriveRateLimiter(GDriveRateLimiter shared, int maxRetries, long initialBackoff, long maxBackoff, 
+			GDriveMetrics metrics) {
+		this.maxRate = shared.maxRate;
+		this.minRate = shared.minRate;
+		this.rateStep = shared.rateStep;
+		this.rate = shared.rate;
+		this.rateLimiter = shared.rateLimiter;
+		this.maxRetries = maxRetries;
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+		this.shared = shared;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return a view of this limiter, sharing its rate, which records the calls made
+	 *         through it in the given metrics
+	 */
+	public GDriveRateLimiter withMetrics(GDriveMetrics metrics) {
+		GDriveRateLimiter limiter = shared != null ? shared : this;
+		return metrics != null ? view(limiter.maxRetries, limiter.initialBackoff, limiter.maxBackoff, metrics) : limiter;
+	}
+
+	/**
+	 * @return a view of this limiter, sharing its rate, which retries throttled calls with
+	 *         the given settings and records the calls made through it in the given metrics
+	 */
+	public GDriveRateLimiter view(int maxRetries, long initialBackoff, long maxBackoff, GDriveMetrics metrics) {
+		return new GDriveRateLimiter(shared != null ? shared : this, maxRetries, initialBackoff, maxBackoff, metrics);
+	}
+
+	public <T> T execute(String operation, Call<T> call) throws IOException {
+		return execute(operation, 1, call);
+	}
+
+	/**
+	 * Execute a call once the limiter allows it, retrying it while it fails with a quota error.
+	 * 
+	 * @param operation name of the operation, for logging
+	 * @param permits number of API calls the call stands for, e.g. the size of a batch
+	 * @param call the call
+	 */
+	public <T> T execute(String operation, int permits, Call<T> call) throws IOException {
+		long backoff = initialBackoff;
+		for (int attempt = 0;; attempt++) {
+			acquire(permits);
+			long start = System.nanoTime();
+			try {
+				T result = call.call();
+				record(operation, start, 0);
+				onSuccess();
+				return result;
+			} catch (IOException e) {
+				record(operation, start, e instanceof HttpResponseException 
+						? ((HttpResponseException) e).getStatusCode() : 0);
+				if (!isRateLimitExceeded(e) || attempt >= maxRetries) {
+					throw e;
+				}
+				onRateLimitExceeded();
+				long delay = jitter(backoff);
+				LOG.debug("Quota exceeded on {}, retrying in {} ms", operation, delay);
+				sleep(delay);
+				backoff = Math.min(backoff * 2, maxBackoff);
+			}
+		}
+	}
+
+	public void acquire(int permits) {
+		if (rateLimiter != null && permits > 0) {
+			rateLimiter.acquire(permits);
+		}
+	}
+
+	/**
+	 * Slow down after a quota error.
+	 */
+	public void onRateLimitExceeded() {
+		if (shared != null) {
+			shared.onRateLimitExceeded();
+		} else if (rateLimiter != null) {
+			synchronized (this) {
+				rate = Math.max(minRate, rate / 2);
+				rateLimiter.setRate(rate);
+			}
+			LOG.debug("Rate lowered to {} calls per second", rate);
+		}
+	}
+
+	private void onSuccess() {
+		if (shared != null) {
+			shared.onSuccess();
+		} else if (rateLimiter != null && rate < maxRate) {
+			synchronized (this) {
+				rate = Math.min(maxRate, rate + rateStep);
+				rateLimiter.setRate(rate);
+			}
+		}
+	}
+
+	public double getRate() {
+		return shared != null ? shared.getRate() : rate;
+	}
+
+	/**
+	 * @return the maximum calls per second, 0 or less if only backing off on quota errors
+	 */
+	public double getMaxRate() {
+		return maxRate;
+	}
+
+	private void record(String operation, long start, int statusCode) {
+		if (metrics != null) {
+			metrics.recordCall(operation, System.nanoTime() - start, statusCode);
+		}
+	}
+
+	/**
+	 * @return {@code true} if the error is Drive telling the caller to slow down
+	 */
+	public static boolean isRateLimitExceeded(IOException e) {
+		if (!(e instanceof HttpResponseException)) {
+			return false;
+		}
+		int statusCode = ((HttpResponseException) e).getStatusCode();
+		if (statusCode == 429) {
+			return true;
+		}
+		if (statusCode != 403) {
+			return false;
+		}
+		if (e instanceof GoogleJsonResponseException) {
+			return isRateLimitExceeded(((GoogleJsonResponseException) e).getDetails());
+		}
+		String message = e.getMessage();
+		return message != null && message.toLowerCase().contains("ratelimitexceeded");
+	}
+
+	/**
+	 * @return {@code true} if the error is Drive telling the caller to slow down
+	 */
+	public static boolean isRateLimitExceeded(GoogleJsonError error) {
+		if (error == null) {
+			return false;
+		}
+		if (error.getCode() == 429) {
+			return true;
+		}
+		if (error.getErrors() != null) {
+			for (ErrorInfo info : error.getErrors()) {
+				if ("rateLimitExceeded".equals(info.getReason()) || "userRateLimitExceeded".equals(info.getReason())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private long jitter(long backoff) {
+		// random delay between half and the whole backoff, so concurrent callers spread out
+		return backoff / 2 + (long) (random.nextDouble() * (backoff / 2 + 1));
+	}
+
+	private static void sleep(long millis) throws InterruptedIOException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while backing off");
+		}
+	}
+
+}
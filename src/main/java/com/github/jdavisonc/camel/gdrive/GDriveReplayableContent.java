@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.InvalidPayloadException;
+
+import com.google.api.client.http.AbstractInputStreamContent;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Upload content which can be sent any number of times. Small bodies are
+ * buffered in memory, large ones are spooled to a temporary file, and bodies
+ * which are already a byte array or a file are read again from the source,
+ * so the body of the exchange is never read twice.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveReplayableContent extends AbstractInputStreamContent {
+
+	private final byte[] bytes;
+
+	private final java.io.File file;
+
+	private final GDriveSpool spool;
+
+	private String md5;
+
+	private GDriveReplayableContent(String type, byte[] bytes, java.io.File file, GDriveSpool spool) {
+		super(type);
+		this.bytes = bytes;
+		this.file = file;
+		this.spool = spool;
+	}
+
+	/**
+	 * Create the content from the body of the exchange.
+	 * 
+	 * @param exchange the exchange
+	 * @param type content type, may be {@code null}
+	 * @param spoolThreshold size in bytes over which a stream body is spooled to disk
+	 */
+	public static GDriveReplayableContent fromExchange(Exchange exchange, String type, long spoolThreshold) 
+			throws IOException, InvalidPayloadException {
+		return fromExchange(exchange, type, spoolThreshold, false);
+	}
+
+	/**
+	 * Create the content from the body of the exchange.
+	 * 
+	 * @param exchange the exchange
+	 * @param type content type, may be {@code null}
+	 * @param spoolThreshold size in bytes over which a stream body is spooled to disk
+	 * @param checksum {@code true} to compute the MD5 checksum of a stream body while it is buffered
+	 */
+	public static GDriveReplayableContent fromExchange(Exchange exchange, String type, long spoolThreshold,
+			boolean checksum) throws IOException, InvalidPayloadException {
+		Object body = exchange.getIn().getBody();
+		if (body instanceof byte[]) {
+			return new GDriveReplayableContent(type, (byte[]) body, null, null);
+		}
+		if (body instanceof java.io.File) {
+			return new GDriveReplayableContent(type, null, (java.io.File) body, null);
+		}
+		InputStream is = exchange.getIn().getMandatoryBody(InputStream.class);
+		return new GDriveReplayableContent(type, null, null, GDriveSpool.copyOf(is, spoolThreshold, checksum));
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		if (bytes != null) {
+			return new ByteArrayInputStream(bytes);
+		}
+		if (file != null) {
+			return new FileInputStream(file);
+		}
+		return spool.newInputStream();
+	}
+
+	@Override
+	public long getLength() {
+		if (bytes != null) {
+			return bytes.length;
+		}
+		if (file != null) {
+			return file.length();
+		}
+		return spool.length();
+	}
+
+	/**
+	 * @return the lowercase hex MD5 checksum of the content
+	 */
+	public String getMd5Checksum() throws IOException {
+		if (md5 == null) {
+			if (bytes != null) {
+				md5 = Hashing.md5().hashBytes(bytes).toString();
+			} else if (file != null) {
+				md5 = Files.hash(file, Hashing.md5()).toString();
+			} else {
+				md5 = spool.getMd5Checksum();
+			}
+		}
+		return md5;
+	}
+
+	@Override
+	public boolean retrySupported() {
+		return true;
+	}
+
+	/**
+	 * Discard any buffered content.
+	 */
+	public void release() {
+		if (spool != null) {
+			spool.release();
+		}
+	}
+
+}
@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.camel.util.IOHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+
+/**
+ * Downloads a file's content in segments fetched in parallel with HTTP Range requests,
+ * each one written at its position in a temporary file of the content's size.
+ * A segment whose transfer fails is resumed from its last written byte, without
+ * touching the other segments.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveSegmentedDownload {
+
+	private static final Logger LOG = LoggerFactory.getLogger(GDriveSegmentedDownload.class);
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final GDriveEndpoint endpoint;
+
+	private final Drive service;
+
+	private final File file;
+
+	private final long segmentSize;
+
+	private final int retries;
+
+	public GDriveSegmentedDownload(GDriveEndpoint endpoint, Drive service, File file, long segmentSize, int retries) {
+		this.endpoint = endpoint;
+		this.service = service;
+		this.file = file;
+		this.segmentSize = segmentSize;
+		this.retries = retries;
+	}
+
+	/**
+	 * Download the whole content with the given executor.
+	 * 
+	 * @return a stream over the downloaded content, which deletes the temporary file once closed
+	 */
+	public InputStream download(ExecutorService executor) throws IOException {
+		long size = file.getFileSize();
+		final java.io.File tmp = java.io.File.createTempFile("camel-gdrive", ".part");
+		RandomAccessFile raf = null;
+		boolean done = false;
+		try {
+			raf = new RandomAccessFile(tmp, "rw");
+			raf.setLength(size);
+			FileChannel channel = raf.getChannel();
+			
+			List<Future<Void>> segments = new ArrayList<Future<Void>>();
+			for (long first = 0; first < size; first += segmentSize) {
+				long last = Math.min(first + segmentSize, size) - 1;
+				segments.add(executor.submit(new Segment(channel, first, last)));
+			}
+			try {
+				for (Future<Void> segment : segments) {
+					segment.get();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while downloading object with id " + file.getId());
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException(e.getCause());
+			} finally {
+				for (Future<Void> segment : segments) {
+					segment.cancel(true);
+				}
+			}
+			raf.close();
+			
+			InputStream is = new FileInputStream(tmp) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						delete(tmp);
+					}
+				}
+			};
+			done = true;
+			return is;
+		} finally {
+			if (!done) {
+				IOHelper.close(raf);
+				delete(tmp);
+			}
+		}
+	}
+
+	private static void delete(java.io.File tmp) {
+		if (!tmp.delete()) {
+			tmp.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Fetches the inclusive range [first, last] of the content.
+	 */
+	private final class Segment implements Callable<Void> {
+
+		private final FileChannel channel;
+
+		private final long first;
+
+		private final long last;
+
+		Segment(FileChannel channel, long first, long last) {
+			this.channel = channel;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		public Void call() throws IOException {
+			long position = first;
+			int failures = 0;
+			while (position <= last) {
+				final GDriveByteRange range = new GDriveByteRange(position, last);
+				try {
+					InputStream is = endpoint.getRateLimiter().execute("get", new GDriveRateLimiter.Call<InputStream>() {
+						@Override
+						public InputStream call() throws IOException {
+							return endpoint.openDownload(service, file, range);
+						}
+					});
+					try {
+						ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+						int n;
+						while (position <= last && (n = is.read(buffer.array())) != -1) {
+							buffer.limit(n);
+							while (buffer.hasRemaining()) {
+								position += channel.write(buffer, position);
+							}
+							buffer.clear();
+						}
+					} finally {
+						IOHelper.close(is);
+					}
+					if (position <= last) {
+						throw new IOException("Premature end of segment " + range + " of object with id " + file.getId());
+					}
+				} catch (IOException e) {
+					if (Thread.currentThread().isInterrupted() || ++failures > retries) {
+						throw e;
+					}
+					LOG.debug("Resuming segment at {} of object with id [{}] after: {}", 
+							new Object[] { position, file.getId(), e.getMessage() });
+				}
+			}
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.camel.util.IOHelper;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Buffers content in memory and spools it to a temporary file once it grows
+ * over a threshold. The buffered content can be read any number of times.
+ * The MD5 checksum of the content can be computed on the way, without reading it again.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveSpool extends OutputStream {
+
+	private final long threshold;
+
+	private final MessageDigest digest;
+
+	private String md5;
+
+	private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+
+	private File file;
+
+	private OutputStream fileOut;
+
+	private long length;
+
+	private boolean closed;
+
+	public GDriveSpool(long threshold) {
+		this(threshold, false);
+	}
+
+	/**
+	 * @param threshold size in bytes over which the content is spooled to disk
+	 * @param checksum {@code true} to compute the MD5 checksum of the content
+	 */
+	public GDriveSpool(long threshold, boolean checksum) {
+		this.threshold = threshold;
+		this.digest = checksum ? newMd5Digest() : null;
+	}
+
+	/**
+	 * Copy the given stream into a new spool and close it.
+	 */
+	public static GDriveSpool copyOf(InputStream is, long threshold) throws IOException {
+		return copyOf(is, threshold, false);
+	}
+
+	/**
+	 * Copy the given stream into a new spool and close it.
+	 * 
+	 * @param checksum {@code true} to compute the MD5 checksum of the content
+	 */
+	public static GDriveSpool copyOf(InputStream is, long threshold, boolean checksum) throws IOException {
+		GDriveSpool spool = new GDriveSpool(threshold, checksum);
+		try {
+			IOHelper.copy(is, spool);
+			spool.close();
+			return spool;
+		} catch (IOException e) {
+			spool.release();
+			throw e;
+		} finally {
+			IOHelper.close(is);
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] {(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("Spool closed");
+		}
+		if (fileOut == null && length + len > threshold) {
+			file = File.createTempFile("camel-gdrive", ".tmp");
+			fileOut = new FileOutputStream(file);
+			memory.writeTo(fileOut);
+			memory = null;
+		}
+		if (fileOut != null) {
+			fileOut.write(b, off, len);
+		} else {
+			memory.write(b, off, len);
+		}
+		if (digest != null) {
+			digest.update(b, off, len);
+		}
+		length += len;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (fileOut != null) {
+			fileOut.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			if (fileOut != null) {
+				fileOut.close();
+			}
+		}
+	}
+
+	/**
+	 * @return a new stream over the whole content, the spool must be closed first
+	 */
+	public InputStream newInputStream() throws IOException {
+		if (!closed) {
+			throw new IllegalStateException("Spool not closed yet");
+		}
+		if (file != null) {
+			return new FileInputStream(file);
+		}
+		if (memory == null) {
+			throw new IOException("Spool released");
+		}
+		return new ByteArrayInputStream(memory.toByteArray());
+	}
+
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * @return the lowercase hex MD5 checksum of the content, the spool must be closed first
+	 */
+	public String getMd5Checksum() {
+		if (digest == null) {
+			throw new IllegalStateException("Spool created without checksum");
+		}
+		if (!closed) {
+			throw new IllegalStateException("Spool not closed yet");
+		}
+		if (md5 == null) {
+			md5 = BaseEncoding.base16().lowerCase().encode(digest.digest());
+		}
+		return md5;
+	}
+
+	/**
+	 * @return {@code true} if the content was spooled to disk
+	 */
+	public boolean isSpooled() {
+		return file != null;
+	}
+
+	/**
+	 * Discard the content, deleting the temporary file if any.
+	 */
+	public void release() {
+		closed = true;
+		IOHelper.close(fileOut);
+		memory = null;
+		if (file != null && !file.delete()) {
+			file.deleteOnExit();
+		}
+	}
+
+	static MessageDigest newMd5Digest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,276 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc.camel.gdrive;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleRefreshTokenRequest;
+import com.google.api.client.googleapis.auth.oauth2.GoogleTokenResponse;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
+
+/**
+ * Caches the access tokens obtained for the refresh tokens of one client id.
+ * Tokens in use are refreshed in the background before they expire, and
+ * concurrent refreshes of the same refresh token share one request.
+ * 
+ * @author Jorge Davison (jdavisonc)
+ */
+public class GDriveTokenManager {
+
+	private static final Logger LOG = LoggerFactory.getLogger(GDriveTokenManager.class);
+
+	private final ConcurrentMap<String, Token> tokens = new ConcurrentHashMap<String, Token>();
+
+	private final ConcurrentMap<String, FutureTask<Token>> refreshing = new ConcurrentHashMap<String, FutureTask<Token>>();
+
+	private final ConcurrentMap<String, ScheduledFuture<?>> scheduled = new ConcurrentHashMap<String, ScheduledFuture<?>>();
+
+	private final HttpTransport httpTransport;
+
+	private final JsonFactory jsonFactory;
+
+	private final String clientId;
+
+	private final String clientSecret;
+
+	private final ScheduledExecutorService scheduler;
+
+	private long refreshMargin = 5 * 60 * 1000L;
+
+	private final GDriveMetrics.Histogram refreshLatency = new GDriveMetrics.Histogram();
+
+	private final AtomicLong refreshFailures = new AtomicLong();
+
+	public GDriveTokenManager(HttpTransport httpTransport, JsonFactory jsonFactory, String clientId, 
+			String clientSecret, ScheduledExecutorService scheduler) {
+		this.httpTransport = httpTransport;
+		this.jsonFactory = jsonFactory;
+		this.clientId = clientId;
+		this.clientSecret = clientSecret;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Get a valid access token for the refresh token. Only blocks when there is
+	 * no usable token yet, otherwise a token close to expiry is refreshed in the
+	 * background while the current one is returned.
+	 */
+	public String getAccessToken(String refreshToken) throws IOException {
+		long now = System.currentTimeMillis();
+		Token token = tokens.get(refreshToken);
+		if (token != null && !token.isExpired(now, 0)) {
+			token.lastUsed = now;
+			if (token.isExpired(now, refreshMargin)) {
+				startRefresh(refreshToken, true);
+			}
+			return token.accessToken;
+		}
+		return await(startRefresh(refreshToken, false)).accessToken;
+	}
+
+	/**
+	 * Register an access token obtained elsewhere, unless a token is already known
+	 * for the refresh token. Its expiry is unknown, so it is used until rejected.
+	 */
+	public void seed(String refreshToken, String accessToken) {
+		tokens.putIfAbsent(refreshToken, new Token(accessToken, 0));
+	}
+
+	/**
+	 * Refresh an access token which was rejected. If another thread already replaced
+	 * the rejected token, its replacement is returned without a new request.
+	 * 
+	 * @param refreshToken the refresh token
+	 * @param staleAccessToken the rejected access token, may be {@code null}
+	 * @return the new access token
+	 */
+	public String refresh(String refreshToken, String staleAccessToken) throws IOException {
+		Token current = tokens.get(refreshToken);
+		if (current != null && staleAccessToken != null && !current.accessToken.equals(staleAccessToken)
+				&& !current.isExpired(System.currentTimeMillis(), 0)) {
+			return current.accessToken;
+		}
+		if (current != null && current.accessToken.equals(staleAccessToken)) {
+			tokens.remove(refreshToken, current);
+		}
+		return await(startRefresh(refreshToken, false)).accessToken;
+	}
+
+	/**
+	 * Cancel the background refreshes and forget all tokens.
+	 */
+	public void shutdown() {
+		for (ScheduledFuture<?> future : scheduled.values()) {
+			future.cancel(false);
+		}
+		scheduled.clear();
+		tokens.clear();
+	}
+
+	private FutureTask<Token> startRefresh(final String refreshToken, boolean background) {
+		FutureTask<Token> existing = refreshing.get(refreshToken);
+		if (existing != null) {
+			return existing;
+		}
+		FutureTask<Token> task = new FutureTask<Token>(new Callable<Token>() {
+			@Override
+			public Token call() throws Exception {
+				return doRefresh(refreshToken);
+			}
+		}) {
+			@Override
+			protected void done() {
+				refreshing.remove(refreshToken, this);
+			}
+		};
+		existing = refreshing.putIfAbsent(refreshToken, task);
+		if (existing != null) {
+			return existing;
+		}
+		if (background && scheduler != null) {
+			try {
+				scheduler.execute(task);
+				return task;
+			} catch (RejectedExecutionException e) {
+				LOG.debug("Cannot refresh token in background, refreshing it now", e);
+			}
+		}
+		task.run();
+		return task;
+	}
+
+	private Token doRefresh(final String refreshToken) throws IOException {
+		LOG.debug("Refreshing access token for client {}", clientId);
+		long start = System.currentTimeMillis();
+		GoogleTokenResponse response;
+		try {
+			response = new GoogleRefreshTokenRequest(httpTransport, jsonFactory, 
+					refreshToken, clientId, clientSecret).execute();
+		} catch (IOException e) {
+			refreshFailures.incrementAndGet();
+			throw e;
+		} finally {
+			refreshLatency.record(System.currentTimeMillis() - start);
+		}
+
+		long now = System.currentTimeMillis();
+		Long expiresIn = response.getExpiresInSeconds();
+		Token token = new Token(response.getAccessToken(), expiresIn != null ? now + expiresIn * 1000L : 0);
+		tokens.put(refreshToken, token);
+
+		if (expiresIn != null && scheduler != null) {
+			scheduleRefresh(refreshToken, token, Math.max(expiresIn * 1000L - refreshMargin, 0));
+		}
+		return token;
+	}
+
+	/**
+	 * @return the latency of the refresh requests, including background and failed ones
+	 */
+	public GDriveMetrics.Histogram getRefreshLatency() {
+		return refreshLatency;
+	}
+
+	public long getRefreshFailures() {
+		return refreshFailures.get();
+	}
+
+	private void scheduleRefresh(final String refreshToken, final Token token, long delay) {
+		try {
+			ScheduledFuture<?> future = scheduler.schedule(new Runnable() {
+				@Override
+				public void run() {
+					scheduled.remove(refreshToken);
+					// only keep refreshing tokens which are still being used
+					if (tokens.get(refreshToken) == token && token.lastUsed > token.issued) {
+						startRefresh(refreshToken, false);
+					}
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+			ScheduledFuture<?> previous = scheduled.put(refreshToken, future);
+			if (previous != null) {
+				previous.cancel(false);
+			}
+		} catch (RejectedExecutionException e) {
+			LOG.debug("Cannot schedule token refresh", e);
+		}
+	}
+
+	private static Token await(FutureTask<Token> task) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while refreshing token");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Refresh token request fails", e.getCause());
+		}
+	}
+
+	public String getClientId() {
+		return clientId;
+	}
+
+	public long getRefreshMargin() {
+		return refreshMargin;
+	}
+
+	/**
+	 * @param refreshMargin time in millis before expiry at which a token is refreshed
+	 */
+	public void setRefreshMargin(long refreshMargin) {
+		this.refreshMargin = refreshMargin;
+	}
+
+	private static final class Token {
+
+		private final String accessToken;
+
+		private final long expiresAt;
+
+		private final long issued = System.currentTimeMillis();
+
+		private volatile long lastUsed;
+
+		Token(String accessToken, long expiresAt) {
+			this.accessToken = accessToken;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isExpired(long now, long margin) {
+			return expiresAt > 0 && now + margin >= expiresAt;
+		}
+	}
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDriveByteRange;
+import com.google.common.io.ByteStreams;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDriveByteRangeTest {
+
+	@Test
+	public void testParse() {
+		GDriveByteRange range = GDriveByteRange.parse("bytes=10-19");
+		assertEquals(10, range.getFirst());
+		assertEquals(19, range.getLast());
+		assertEquals("bytes=10-19", range.toHeader());
+
+		range = GDriveByteRange.parse("1024-");
+		assertEquals(1024, range.getFirst());
+		assertEquals(-1, range.getLast());
+		assertEquals("bytes=1024-", range.toHeader());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseInvalid() {
+		GDriveByteRange.parse("20-10");
+	}
+
+	@Test
+	public void testSlice() throws Exception {
+		byte[] content = "0123456789".getBytes("US-ASCII");
+
+		assertArrayEquals("234".getBytes("US-ASCII"), 
+				ByteStreams.toByteArray(new GDriveByteRange(2, 4).slice(new ByteArrayInputStream(content))));
+		assertArrayEquals("789".getBytes("US-ASCII"), 
+				ByteStreams.toByteArray(new GDriveByteRange(7, -1).slice(new ByteArrayInputStream(content))));
+	}
+
+}
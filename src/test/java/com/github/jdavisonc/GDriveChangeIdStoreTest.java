@@ -0,0 +1,78 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDriveChangeIdStore;
+import com.github.jdavisonc.camel.gdrive.GDriveFileChangeIdStore;
+import com.github.jdavisonc.camel.gdrive.GDriveMemoryChangeIdStore;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDriveChangeIdStoreTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("changes", ".id");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void testFileStore() throws Exception {
+		GDriveChangeIdStore store = new GDriveFileChangeIdStore(file);
+		assertNull(store.load());
+
+		store.save(42);
+		assertEquals(Long.valueOf(42), store.load());
+		store.save(43);
+		assertEquals(Long.valueOf(43), store.load());
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+
+		// a restarted consumer resumes from the saved change id
+		assertEquals(Long.valueOf(43), new GDriveFileChangeIdStore(file.getPath()).load());
+	}
+
+	@Test
+	public void testMemoryStore() throws Exception {
+		GDriveChangeIdStore store = new GDriveMemoryChangeIdStore();
+		assertNull(store.load());
+
+		store.save(42);
+		assertEquals(Long.valueOf(42), store.load());
+		assertNull(new GDriveMemoryChangeIdStore().load());
+	}
+
+}
@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDriveChecksumInputStream;
+import com.google.common.io.ByteStreams;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDriveChecksumInputStreamTest {
+
+	private static final String HELLO_MD5 = "5d41402abc4b2a76b9719d911017c592";
+
+	@Test
+	public void testMatchingContent() throws Exception {
+		byte[] content = "hello".getBytes("US-ASCII");
+		GDriveChecksumInputStream is = new GDriveChecksumInputStream(new ByteArrayInputStream(content), 
+				HELLO_MD5, content.length);
+
+		assertArrayEquals(content, ByteStreams.toByteArray(is));
+		assertEquals(5, is.getLength());
+		assertEquals(-1, is.read());
+	}
+
+	@Test(expected = IOException.class)
+	public void testCorruptedContent() throws Exception {
+		byte[] content = "hellO".getBytes("US-ASCII");
+		ByteStreams.toByteArray(new GDriveChecksumInputStream(new ByteArrayInputStream(content), HELLO_MD5, -1));
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedContent() throws Exception {
+		byte[] content = "hell".getBytes("US-ASCII");
+		ByteStreams.toByteArray(new GDriveChecksumInputStream(new ByteArrayInputStream(content), HELLO_MD5, 5));
+	}
+
+}
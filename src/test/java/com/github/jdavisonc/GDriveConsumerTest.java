@@ -0,0 +1,366 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDriveChangeIdStore;
+import com.github.jdavisonc.camel.gdrive.GDriveComponent;
+import com.github.jdavisonc.camel.gdrive.GDriveConstants;
+import com.github.jdavisonc.camel.gdrive.GDriveEndpoint;
+import com.github.jdavisonc.camel.gdrive.GDriveMemoryChangeIdStore;
+import com.google.common.io.CharStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDriveConsumerTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+	private final List<String> consumed = Collections.synchronizedList(new ArrayList<String>());
+
+	/** If-Match header and lease of each lease write */
+	private final List<String> leaseWrites = Collections.synchronizedList(new ArrayList<String>());
+
+	/** Query of each listing of the paged files */
+	private final List<String> pageQueries = Collections.synchronizedList(new ArrayList<String>());
+
+	private final AtomicBoolean listed = new AtomicBoolean();
+
+	private volatile boolean paged;
+
+	private final CountDownLatch released = new CountDownLatch(1);
+
+	private HttpServer server;
+
+	private ExecutorService serverExecutor;
+
+	private DefaultCamelContext context;
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					GDriveConsumerTest.this.handle(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.start();
+
+		context = new DefaultCamelContext();
+		context.addComponent("gdrive", new GDriveComponent());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		context.stop();
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	@Test
+	public void testFailedChangesAreRetried() throws Exception {
+		GDriveChangeIdStore store = new GDriveMemoryChangeIdStore();
+		final GDriveEndpoint endpoint = createEndpoint("changes", "&useChanges=true&deleteAfterRead=false");
+		endpoint.getConfiguration().setChangeIdStore(store);
+		final CountDownLatch done = new CountDownLatch(4);
+		context.addRoutes(new RouteBuilder() {
+			@Override
+			public void configure() throws Exception {
+				from(endpoint).process(new Processor() {
+					@Override
+					public void process(Exchange exchange) throws Exception {
+						String fileId = exchange.getIn().getHeader(GDriveConstants.FILE_ID, String.class);
+						String content = exchange.getIn().getBody(String.class);
+						consumed.add(fileId);
+						done.countDown();
+						// b and c fail once, c is deleted before the retry
+						if (!"a".equals(fileId) && Collections.frequency(consumed, fileId) == 1) {
+							throw new IllegalStateException("Cannot consume " + content);
+						}
+					}
+				});
+			}
+		});
+		context.start();
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		Thread.sleep(300);
+		context.stop();
+
+		assertEquals(Arrays.asList("a", "b", "c", "b"), consumed);
+		assertEquals(Long.valueOf(3), store.load());
+		assertEquals(1, Collections.frequency(requests, "/drive/v2/files/b"));
+		assertEquals(1, Collections.frequency(requests, "/drive/v2/files/c"));
+	}
+
+	@Test
+	public void testLeaseRenewedWhileProcessedAndReleasedOnRollback() throws Exception {
+		final GDriveEndpoint endpoint = createEndpoint("leased", 
+				"&deleteAfterRead=false&leaseDuration=200&leaseOwner=node1");
+		context.addRoutes(new RouteBuilder() {
+			@Override
+			public void configure() throws Exception {
+				from(endpoint).process(new Processor() {
+					@Override
+					public void process(Exchange exchange) throws Exception {
+						// longer than the lease
+						Thread.sleep(500);
+						throw new IllegalStateException("Cannot consume " + exchange.getIn().getBody(String.class));
+					}
+				});
+			}
+		});
+		context.start();
+
+		assertTrue(released.await(5, TimeUnit.SECONDS));
+		context.stop();
+
+		List<String> writes = new ArrayList<String>(leaseWrites);
+		assertTrue(writes.toString(), writes.size() >= 3);
+		// claimed on the listed etag, renewed on the etag of each write, released unconditionally
+		assertTrue(writes.get(0), writes.get(0).startsWith("\"e0\" node1;"));
+		for (int i = 1; i < writes.size() - 1; i++) {
+			assertTrue(writes.get(i), writes.get(i).startsWith("\"e" + i + "\" node1;"));
+		}
+		assertEquals("null node1;0", writes.get(writes.size() - 1));
+	}
+
+	@Test
+	public void testPollIsCappedByMaxMessagesPerPoll() throws Exception {
+		paged = true;
+		final GDriveEndpoint endpoint = createEndpoint("paged", 
+				"&deleteAfterRead=false&maxMessagesPerPoll=3&pageSize=2&pagePrefetch=false");
+		final CountDownLatch done = new CountDownLatch(3);
+		context.addRoutes(new RouteBuilder() {
+			@Override
+			public void configure() throws Exception {
+				from(endpoint).process(new Processor() {
+					@Override
+					public void process(Exchange exchange) throws Exception {
+						consumed.add(exchange.getIn().getHeader(GDriveConstants.FILE_ID, String.class));
+						done.countDown();
+					}
+				});
+			}
+		});
+		context.start();
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		context.stop();
+
+		// pages of two files up to the cap of three, the next poll starts over
+		assertEquals(Arrays.asList("p0", "p1", "p2"), consumed.subList(0, 3));
+		List<String> queries = new ArrayList<String>(pageQueries);
+		assertEquals("maxResults=2 pageToken=null", queries.get(0));
+		assertEquals("maxResults=1 pageToken=2", queries.get(1));
+		if (queries.size() > 2) {
+			assertEquals("maxResults=2 pageToken=null", queries.get(2));
+		}
+	}
+
+	@Test
+	public void testBodyIsDownloadedOnFirstReadAndClosedOnCompletion() throws Exception {
+		paged = true;
+		final GDriveEndpoint endpoint = createEndpoint("lazy", "&deleteAfterRead=false&maxMessagesPerPoll=5");
+		final List<InputStream> bodies = Collections.synchronizedList(new ArrayList<InputStream>());
+		final CountDownLatch done = new CountDownLatch(5);
+		context.addRoutes(new RouteBuilder() {
+			@Override
+			public void configure() throws Exception {
+				from(endpoint).process(new Processor() {
+					@Override
+					public void process(Exchange exchange) throws Exception {
+						String fileId = exchange.getIn().getHeader(GDriveConstants.FILE_ID, String.class);
+						if (done.getCount() == 0) {
+							return;
+						}
+						InputStream body = exchange.getIn().getBody(InputStream.class);
+						bodies.add(body);
+						// only the first bytes of a single file are read
+						if (fileId.equals("p1")) {
+							assertEquals('c', body.read());
+						}
+						done.countDown();
+					}
+				});
+			}
+		});
+		context.start();
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		context.stop();
+
+		List<String> downloads = new ArrayList<String>();
+		for (String request : requests) {
+			if (request.startsWith("/download/")) {
+				downloads.add(request);
+			}
+		}
+		assertEquals(Arrays.asList("/download/p1"), downloads);
+		assertEquals(5, bodies.size());
+		for (InputStream body : bodies) {
+			try {
+				body.read();
+				fail("Body not closed on completion");
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+
+	private GDriveEndpoint createEndpoint(String name, String options) {
+		GDriveEndpoint answer = context.getEndpoint("gdrive://" + name + "?accessToken=token&delay=50" 
+				+ options, GDriveEndpoint.class);
+		answer.getConfiguration().setRootUrl(getRootUrl());
+		return answer;
+	}
+
+	private String getRootUrl() {
+		return "http://localhost:" + server.getAddress().getPort() + "/";
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		String query = exchange.getRequestURI().getQuery();
+		requests.add(path);
+		if (path.startsWith("/drive/v2/files/") && !"GET".equals(exchange.getRequestMethod())) {
+			writeLease(exchange, path.substring("/drive/v2/files/".length()));
+		} else if (path.equals("/drive/v2/files") && paged) {
+			listPage(exchange, query);
+		} else if (path.equals("/drive/v2/files")) {
+			String items = listed.getAndSet(true) ? "" 
+					: fileJson("f1").replace("{\"kind\"", "{\"etag\":\"\\\"e0\\\"\",\"kind\"");
+			send(exchange, "{\"kind\":\"drive#fileList\",\"items\":[" + items + "]}");
+		} else if (path.equals("/drive/v2/changes")) {
+			if (query != null && query.contains("startChangeId=")) {
+				send(exchange, "{\"kind\":\"drive#changeList\",\"largestChangeId\":\"3\",\"items\":[]}");
+			} else {
+				send(exchange, "{\"kind\":\"drive#changeList\",\"largestChangeId\":\"3\",\"items\":["
+						+ changeJson(1, "a") + "," + changeJson(2, "b") + "," + changeJson(3, "c") + "]}");
+			}
+		} else if (path.equals("/drive/v2/files/b")) {
+			send(exchange, fileJson("b"));
+		} else if (path.startsWith("/download/")) {
+			send(exchange, "content of " + path.substring("/download/".length()));
+		} else {
+			exchange.sendResponseHeaders(404, -1);
+		}
+	}
+
+	/**
+	 * Answer a page of a listing of five files, the page token is the offset of the page.
+	 */
+	private void listPage(HttpExchange exchange, String query) throws IOException {
+		String maxResults = query.replaceAll(".*maxResults=(\\d+).*", "$1");
+		String pageToken = query.contains("pageToken=") ? query.replaceAll(".*pageToken=(\\d+).*", "$1") : null;
+		pageQueries.add("maxResults=" + maxResults + " pageToken=" + pageToken);
+		int offset = pageToken != null ? Integer.parseInt(pageToken) : 0;
+		int end = Math.min(offset + Integer.parseInt(maxResults), 5);
+		StringBuilder items = new StringBuilder();
+		for (int i = offset; i < end; i++) {
+			items.append(i > offset ? "," : "").append(fileJson("p" + i));
+		}
+		send(exchange, "{\"kind\":\"drive#fileList\"," 
+				+ (end < 5 ? "\"nextPageToken\":\"" + end + "\"," : "") + "\"items\":[" + items + "]}");
+	}
+
+	/**
+	 * Answer a patch of the lease with the new etag, recording it as the If-Match header
+	 * followed by the lease written.
+	 */
+	private void writeLease(HttpExchange exchange, String fileId) throws IOException {
+		InputStream in = exchange.getRequestBody();
+		if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+			in = new GZIPInputStream(in);
+		}
+		String request = CharStreams.toString(new InputStreamReader(in, UTF8));
+		String value = request.replaceAll(".*\"value\":\"([^\"]*)\".*", "$1");
+		int write;
+		synchronized (leaseWrites) {
+			leaseWrites.add(exchange.getRequestHeaders().getFirst("If-Match") + " " + value);
+			write = leaseWrites.size();
+		}
+		send(exchange, fileJson(fileId).replace("{\"kind\"", "{\"etag\":\"\\\"e" + write + "\\\"\","
+				+ request.substring(request.indexOf('{') + 1, request.lastIndexOf('}')) + ",\"kind\""));
+		if (value.equals("node1;0")) {
+			released.countDown();
+		}
+	}
+
+	private String changeJson(long changeId, String fileId) {
+		return "{\"kind\":\"drive#change\",\"id\":\"" + changeId + "\",\"fileId\":\"" + fileId 
+				+ "\",\"file\":" + fileJson(fileId) + "}";
+	}
+
+	private String fileJson(String fileId) {
+		return "{\"kind\":\"drive#file\",\"id\":\"" + fileId + "\",\"title\":\"" + fileId + ".txt\","
+				+ "\"mimeType\":\"text/plain\",\"downloadUrl\":\"" + getRootUrl() + "download/" + fileId + "\"}";
+	}
+
+	private static void send(HttpExchange exchange, String content) throws IOException {
+		byte[] body = content.getBytes(UTF8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+		exchange.sendResponseHeaders(200, body.length);
+		OutputStream os = exchange.getResponseBody();
+		os.write(body);
+		os.close();
+	}
+
+}
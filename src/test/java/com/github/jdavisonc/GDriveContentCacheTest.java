@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.concurrent.Callable;
+
+import org.apache.camel.util.IOHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDriveContentCache;
+import com.google.common.io.BaseEncoding;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDriveContentCacheTest {
+
+	private File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("content-cache", "");
+		directory.delete();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testLoadOnceAndServeFromDisk() throws Exception {
+		GDriveContentCache cache = new GDriveContentCache(directory, 1024);
+		byte[] content = "Hello Drive".getBytes("UTF-8");
+		String md5 = md5(content);
+		CountingLoader loader = new CountingLoader(content);
+
+		assertNull(cache.get(md5));
+		assertArrayEquals(content, read(cache.get(md5, loader)));
+		assertArrayEquals(content, read(cache.get(md5, loader)));
+		assertEquals(1, loader.calls);
+		assertEquals(content.length, cache.getSize());
+
+		// entries survive a restart
+		cache = new GDriveContentCache(directory, 1024);
+		assertTrue(cache.contains(md5.toUpperCase()));
+		assertArrayEquals(content, read(cache.get(md5)));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() throws Exception {
+		GDriveContentCache cache = new GDriveContentCache(directory, 20);
+		byte[] first = "first content".getBytes("UTF-8");
+		byte[] second = "second content".getBytes("UTF-8");
+
+		cache.load(md5(first), new CountingLoader(first));
+		cache.load(md5(second), new CountingLoader(second));
+
+		assertFalse(cache.contains(md5(first)));
+		assertTrue(cache.contains(md5(second)));
+		assertEquals(second.length, cache.getSize());
+		assertFalse(new File(directory, md5(first)).exists());
+	}
+
+	@Test
+	public void testChecksumMismatchIsNotCached() throws Exception {
+		GDriveContentCache cache = new GDriveContentCache(directory, 1024);
+		String md5 = md5("expected".getBytes("UTF-8"));
+		try {
+			cache.load(md5, new CountingLoader("downloaded".getBytes("UTF-8")));
+			fail("Should have failed on the checksum");
+		} catch (IOException e) {
+			// expected
+		}
+		assertFalse(cache.contains(md5));
+		assertEquals(0, directory.listFiles().length);
+	}
+
+	@Test
+	public void testCorruptedEntryIsEvictedOnRead() throws Exception {
+		GDriveContentCache cache = new GDriveContentCache(directory, 1024);
+		byte[] content = "Hello Drive".getBytes("UTF-8");
+		String md5 = md5(content);
+		cache.load(md5, new CountingLoader(content));
+
+		RandomAccessFile raf = new RandomAccessFile(new File(directory, md5), "rw");
+		raf.write('J');
+		raf.close();
+
+		try {
+			read(cache.get(md5));
+			fail("Should have failed on the checksum");
+		} catch (IOException e) {
+			// expected
+		}
+		assertFalse(cache.contains(md5));
+	}
+
+	@Test
+	public void testContentLargerThanCacheIsStreamed() throws Exception {
+		GDriveContentCache cache = new GDriveContentCache(directory, 4);
+		byte[] content = "Hello Drive".getBytes("UTF-8");
+		String md5 = md5(content);
+		CountingLoader loader = new CountingLoader(content);
+
+		assertArrayEquals(content, read(cache.get(md5, loader)));
+		assertFalse(cache.contains(md5));
+		assertEquals(0, cache.getSize());
+		assertEquals(0, directory.listFiles().length);
+	}
+
+	private static byte[] read(InputStream is) throws IOException {
+		try {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			IOHelper.copy(is, bos);
+			return bos.toByteArray();
+		} finally {
+			IOHelper.close(is);
+		}
+	}
+
+	private static String md5(byte[] content) throws Exception {
+		return BaseEncoding.base16().lowerCase().encode(MessageDigest.getInstance("MD5").digest(content));
+	}
+
+	private static class CountingLoader implements Callable<InputStream> {
+
+		private final byte[] content;
+
+		private int calls;
+
+		CountingLoader(byte[] content) {
+			this.content = content;
+		}
+
+		@Override
+		public InputStream call() {
+			calls++;
+			return new ByteArrayInputStream(content);
+		}
+
+	}
+
+}
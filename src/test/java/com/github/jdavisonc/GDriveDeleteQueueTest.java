@@ -0,0 +1,178 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.spi.ExceptionHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDriveComponent;
+import com.github.jdavisonc.camel.gdrive.GDriveDeleteQueue;
+import com.github.jdavisonc.camel.gdrive.GDriveEndpoint;
+import com.google.common.io.CharStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDriveDeleteQueueTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String BOUNDARY = "batch_test";
+
+	private final AtomicInteger batches = new AtomicInteger();
+
+	/** Number of batches in which the deletes of file b are throttled */
+	private final AtomicInteger throttled = new AtomicInteger();
+
+	private final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+
+	private HttpServer server;
+
+	private ExecutorService serverExecutor;
+
+	private DefaultCamelContext context;
+
+	private GDriveDeleteQueue queue;
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					GDriveDeleteQueueTest.this.handle(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.start();
+
+		context = new DefaultCamelContext();
+		context.addComponent("gdrive", new GDriveComponent());
+		context.start();
+		GDriveEndpoint endpoint = context.getEndpoint("gdrive://deletes?accessToken=token", GDriveEndpoint.class);
+		endpoint.getConfiguration().setRootUrl("http://localhost:" + server.getAddress().getPort() + "/");
+		queue = new GDriveDeleteQueue(endpoint, new ExceptionHandler() {
+			@Override
+			public void handleException(Throwable exception) {
+				handleException(null, null, exception);
+			}
+
+			@Override
+			public void handleException(String message, Throwable exception) {
+				handleException(message, null, exception);
+			}
+
+			@Override
+			public void handleException(String message, Exchange exchange, Throwable exception) {
+				failures.add(message);
+			}
+		}, 10);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		context.stop();
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	@Test
+	public void testCloseRetriesThrottledDeletes() throws Exception {
+		throttled.set(2);
+		queue.add("a", null);
+		queue.add("b", null);
+		queue.close();
+
+		assertEquals(0, queue.size());
+		assertEquals(3, batches.get());
+		assertEquals(Collections.emptyList(), failures);
+	}
+
+	@Test
+	public void testCloseReportsDeletesOutOfAttempts() throws Exception {
+		throttled.set(Integer.MAX_VALUE);
+		queue.add("a", null);
+		queue.add("b", null);
+		queue.close();
+
+		assertEquals(0, queue.size());
+		assertEquals(5, batches.get());
+		assertEquals(Collections.singletonList("Error occurred during deleting file b"), failures);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String request = CharStreams.toString(new InputStreamReader(exchange.getRequestBody(), UTF8));
+		if (!exchange.getRequestURI().getPath().equals("/batch")) {
+			exchange.sendResponseHeaders(404, -1);
+			return;
+		}
+		batches.incrementAndGet();
+		StringBuilder body = new StringBuilder();
+		for (String line : request.split("\r\n")) {
+			if (!line.startsWith("DELETE ")) {
+				continue;
+			}
+			body.append("--").append(BOUNDARY).append("\r\n")
+				.append("Content-Type: application/http\r\n\r\n");
+			if (line.contains("/files/b") && throttled.getAndDecrement() > 0) {
+				body.append("HTTP/1.1 403 Forbidden\r\n")
+					.append("Content-Type: application/json; charset=UTF-8\r\n\r\n")
+					.append("{\"error\":{\"errors\":[{\"domain\":\"usageLimits\",\"reason\":\"rateLimitExceeded\","
+							+ "\"message\":\"Rate Limit Exceeded\"}],\"code\":403,\"message\":\"Rate Limit Exceeded\"}}")
+					.append("\r\n");
+			} else {
+				body.append("HTTP/1.1 204 No Content\r\n\r\n\r\n");
+			}
+		}
+		body.append("--").append(BOUNDARY).append("--\r\n");
+		byte[] content = body.toString().getBytes(UTF8);
+		exchange.getResponseHeaders().set("Content-Type", "multipart/mixed; boundary=" + BOUNDARY);
+		exchange.sendResponseHeaders(200, content.length);
+		OutputStream os = exchange.getResponseBody();
+		os.write(content);
+		os.close();
+	}
+
+}
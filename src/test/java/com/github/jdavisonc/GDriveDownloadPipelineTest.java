@@ -0,0 +1,223 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDriveDownloadPipeline;
+import com.google.common.io.CharStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDriveDownloadPipelineTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+	private HttpServer server;
+
+	private ExecutorService serverExecutor;
+
+	private ExecutorService downloadExecutor;
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					String path = exchange.getRequestURI().getPath();
+					requests.add(path);
+					byte[] body = ("content of " + path.substring(1)).getBytes(UTF8);
+					exchange.sendResponseHeaders(200, body.length);
+					OutputStream os = exchange.getResponseBody();
+					os.write(body);
+					os.close();
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (downloadExecutor != null) {
+			downloadExecutor.shutdownNow();
+		}
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	@Test
+	public void testPermitsBoundDownloadsUntilClosed() throws Exception {
+		GDriveDownloadPipeline pipeline = createPipeline(2, 1024);
+		List<GDriveDownloadPipeline.Download> downloads = new ArrayList<GDriveDownloadPipeline.Download>();
+		for (int i = 0; i < 4; i++) {
+			downloads.add(pipeline.submit(source("f" + i)));
+		}
+
+		assertEquals("content of f0", read(downloads.get(0).await()));
+		assertEquals("content of f1", read(downloads.get(1).await()));
+		Thread.sleep(200);
+		// both permits are held by the bodies not closed yet
+		List<String> started = new ArrayList<String>(requests);
+		Collections.sort(started);
+		assertEquals(Arrays.asList("/f0", "/f1"), started);
+		assertEquals(2, pipeline.getInflight());
+
+		// closing a body lets exactly one more download start
+		downloads.get(0).close();
+		Thread.sleep(200);
+		assertEquals(3, requests.size());
+		assertEquals(2, pipeline.getInflight());
+
+		for (GDriveDownloadPipeline.Download download : downloads) {
+			download.close();
+		}
+		Thread.sleep(200);
+		assertEquals(0, pipeline.getInflight());
+	}
+
+	@Test
+	public void testDownloadClosedBeforeStartGivesItsTurnAway() throws Exception {
+		GDriveDownloadPipeline pipeline = createPipeline(1, 1024);
+		GDriveDownloadPipeline.Download first = pipeline.submit(source("f0"));
+		GDriveDownloadPipeline.Download skipped = pipeline.submit(source("f1"));
+		GDriveDownloadPipeline.Download last = pipeline.submit(source("f2"));
+
+		assertEquals("content of f0", read(first.await()));
+		skipped.close();
+		first.close();
+
+		assertEquals("content of f2", read(last.await()));
+		assertEquals(Arrays.asList("/f0", "/f2"), requests);
+		last.close();
+		assertEquals(0, pipeline.getInflight());
+	}
+
+	@Test
+	public void testFailedDownloadReleasesPermit() throws Exception {
+		GDriveDownloadPipeline pipeline = createPipeline(1, 1024);
+		GDriveDownloadPipeline.Download failed = pipeline.submit(new Callable<InputStream>() {
+			@Override
+			public InputStream call() throws Exception {
+				throw new IOException("Connection reset");
+			}
+		});
+		try {
+			failed.await();
+			fail("Should have failed");
+		} catch (IOException e) {
+			assertEquals("Connection reset", e.getMessage());
+		}
+
+		GDriveDownloadPipeline.Download next = pipeline.submit(source("f0"));
+		assertEquals("content of f0", read(next.await()));
+		next.close();
+		assertEquals(0, pipeline.getInflight());
+	}
+
+	@Test
+	public void testSpoolFileDeletedOnClose() throws Exception {
+		Set<String> before = spoolFiles();
+		GDriveDownloadPipeline pipeline = createPipeline(1, 4);
+		GDriveDownloadPipeline.Download download = pipeline.submit(source("large"));
+
+		assertEquals("content of large", read(download.await()));
+		Set<String> spooled = spoolFiles();
+		spooled.removeAll(before);
+		assertEquals(1, spooled.size());
+
+		download.close();
+		spooled.retainAll(spoolFiles());
+		assertTrue(spooled.toString(), spooled.isEmpty());
+	}
+
+	/**
+	 * Create a pipeline running on as many threads as its concurrency, as the consumer does,
+	 * so downloads start in submission order.
+	 */
+	private GDriveDownloadPipeline createPipeline(int concurrency, long spoolThreshold) {
+		downloadExecutor = Executors.newFixedThreadPool(concurrency);
+		return new GDriveDownloadPipeline(downloadExecutor, concurrency, spoolThreshold);
+	}
+
+	private Callable<InputStream> source(final String name) {
+		return new Callable<InputStream>() {
+			@Override
+			public InputStream call() throws Exception {
+				return new URL("http://localhost:" + server.getAddress().getPort() + "/" + name).openStream();
+			}
+		};
+	}
+
+	private static String read(InputStream is) throws IOException {
+		try {
+			return CharStreams.toString(new InputStreamReader(is, UTF8));
+		} finally {
+			is.close();
+		}
+	}
+
+	private static Set<String> spoolFiles() {
+		String[] names = new File(System.getProperty("java.io.tmpdir")).list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith("camel-gdrive") && name.endsWith(".tmp");
+			}
+		});
+		return new HashSet<String>(Arrays.asList(names));
+	}
+
+}
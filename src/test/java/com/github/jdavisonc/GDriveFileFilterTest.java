@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDriveFileFilter;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.ParentReference;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDriveFileFilterTest {
+
+	@Test
+	public void testDefaultQueryExcludesFoldersAndTrash() {
+		GDriveFileFilter filter = new GDriveFileFilter(null, null, null, null, false, null);
+
+		assertEquals("mimeType != 'application/vnd.google-apps.folder' and trashed = false", filter.toQuery());
+	}
+
+	@Test
+	public void testQueryOfAllCriteria() {
+		GDriveFileFilter filter = new GDriveFileFilter("folder", "text/plain", "2013-01-01T00:00:00Z", 
+				"report", true, "starred = true or hidden = true");
+
+		assertEquals("'folder' in parents and mimeType = 'text/plain' and modifiedDate > '2013-01-01T00:00:00Z'"
+				+ " and title contains 'report' and (starred = true or hidden = true)", filter.toQuery());
+	}
+
+	@Test
+	public void testQueryValuesAreQuoted() {
+		GDriveFileFilter filter = new GDriveFileFilter(null, null, null, "it's a \\ test", true, null);
+
+		assertEquals("mimeType != 'application/vnd.google-apps.folder' and title contains 'it\\'s a \\\\ test'", 
+				filter.toQuery());
+	}
+
+	@Test
+	public void testAcceptChecksEachCriterion() {
+		GDriveFileFilter filter = new GDriveFileFilter("folder", "text/plain", "2013-01-01T00:00:00Z", 
+				null, false, null);
+
+		assertTrue(filter.accept(file("a.txt")));
+		assertFalse(filter.accept(file("a.txt").setDownloadUrl(null)));
+		assertFalse(filter.accept(file("a.txt").setMimeType("text/html")));
+		assertFalse(filter.accept(file("a.txt").setModifiedDate(new DateTime("2012-12-31T00:00:00Z"))));
+		assertFalse(filter.accept(file("a.txt").setParents(Arrays.asList(new ParentReference().setId("other")))));
+		assertFalse(filter.accept(file("a.txt").setLabels(new File.Labels().setTrashed(true))));
+	}
+
+	@Test
+	public void testFoldersAreNotAccepted() {
+		GDriveFileFilter filter = new GDriveFileFilter(null, null, null, null, false, null);
+
+		assertTrue(filter.accept(file("a.txt")));
+		assertFalse(filter.accept(file("a").setMimeType(GDriveFileFilter.FOLDER_MIME_TYPE)));
+	}
+
+	@Test
+	public void testRootFolderMatchesRootParent() {
+		GDriveFileFilter filter = new GDriveFileFilter("root", null, null, null, false, null);
+
+		assertTrue(filter.accept(file("a.txt").setParents(Arrays.asList(new ParentReference().setId("0A1").setIsRoot(true)))));
+		assertFalse(filter.accept(file("a.txt")));
+	}
+
+	@Test
+	public void testTitleContainsMatchesPrefixOfTerms() {
+		GDriveFileFilter filter = new GDriveFileFilter(null, null, null, "hello", false, null);
+
+		assertTrue(filter.accept(file("HelloWorld.txt")));
+		assertTrue(filter.accept(file("Say hello.txt")));
+		assertTrue(filter.accept(file("say_HELLO.txt")));
+		assertFalse(filter.accept(file("Othello.txt")));
+
+		filter = new GDriveFileFilter(null, null, null, "World", false, null);
+
+		assertFalse(filter.accept(file("HelloWorld.txt")));
+		assertTrue(filter.accept(file("Hello World.txt")));
+	}
+
+	@Test
+	public void testShardsPartitionFiles() {
+		GDriveFileFilter first = new GDriveFileFilter(null, null, null, null, false, null, 2, 0);
+		GDriveFileFilter second = new GDriveFileFilter(null, null, null, null, false, null, 2, 1);
+
+		for (int i = 0; i < 20; i++) {
+			File file = file("a.txt").setId("file" + i);
+			assertTrue(first.accept(file) != second.accept(file));
+			assertEquals(GDriveFileFilter.shard(file.getId(), 2) == 0, first.accept(file));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidShard() {
+		new GDriveFileFilter(null, null, null, null, false, null, 2, 2);
+	}
+
+	private static File file(String title) {
+		return new File().setId("id").setTitle(title).setMimeType("text/plain").setDownloadUrl("http://localhost/a")
+				.setModifiedDate(new DateTime("2013-06-01T00:00:00Z"))
+				.setParents(Arrays.asList(new ParentReference().setId("folder")));
+	}
+
+}
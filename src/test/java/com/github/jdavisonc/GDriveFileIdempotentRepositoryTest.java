@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDriveFileIdempotentRepository;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDriveFileIdempotentRepositoryTest {
+
+	private static final int KEYS = 20000;
+
+	private File file;
+
+	private GDriveFileIdempotentRepository repository;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("idempotent", ".dat");
+		file.delete();
+		repository = createRepository();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		repository.stop();
+		file.delete();
+		new File(file.getPath() + ".idx").delete();
+	}
+
+	@Test
+	public void testAddContainsRemove() throws Exception {
+		assertTrue(repository.add("file1:md5"));
+		assertFalse(repository.add("file1:md5"));
+		assertTrue(repository.contains("file1:md5"));
+		assertFalse(repository.contains("file1:other"));
+
+		assertTrue(repository.remove("file1:md5"));
+		assertFalse(repository.remove("file1:md5"));
+		assertFalse(repository.contains("file1:md5"));
+		assertEquals(0, repository.getSize());
+	}
+
+	@Test
+	public void testKeysSurviveRestartAndIndexGrowth() throws Exception {
+		fill();
+
+		repository.stop();
+		repository = createRepository();
+		assertKeys();
+	}
+
+	@Test
+	public void testIndexIsRebuiltFromLog() throws Exception {
+		fill();
+
+		repository.stop();
+		assertTrue(new File(file.getPath() + ".idx").delete());
+		repository = createRepository();
+		assertKeys();
+	}
+
+	@Test
+	public void testLogIsCompacted() throws Exception {
+		fill();
+
+		// removed keys take at most half of the log
+		long live = 0;
+		for (int i = 1; i < KEYS; i += 2) {
+			live += 3 + ("file" + i).length();
+		}
+		assertTrue(repository.getLogLength() <= 2 * live);
+		assertEquals(file.length(), repository.getLogLength());
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+
+		repository.stop();
+		repository = createRepository();
+		assertKeys();
+
+		repository.stop();
+		assertTrue(new File(file.getPath() + ".idx").delete());
+		repository = createRepository();
+		assertKeys();
+	}
+
+	private GDriveFileIdempotentRepository createRepository() throws Exception {
+		GDriveFileIdempotentRepository answer = new GDriveFileIdempotentRepository(file);
+		answer.setInitialCapacity(16);
+		answer.start();
+		return answer;
+	}
+
+	private void fill() {
+		for (int i = 0; i < KEYS; i++) {
+			assertTrue(repository.add("file" + i));
+		}
+		for (int i = 0; i < KEYS; i += 2) {
+			assertTrue(repository.remove("file" + i));
+		}
+		assertKeys();
+	}
+
+	private void assertKeys() {
+		assertEquals(KEYS / 2, repository.getSize());
+		for (int i = 0; i < KEYS; i++) {
+			assertEquals(i % 2 == 1, repository.contains("file" + i));
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDriveFolderIndex;
+import com.github.jdavisonc.camel.gdrive.GDriveRateLimiter;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+import com.google.api.services.drive.model.ParentReference;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDriveFolderIndexTest {
+
+	private final GDriveRateLimiter rateLimiter = new GDriveRateLimiter(0, 0, 1, 1);
+
+	private Drive client;
+
+	private Drive.Files.List list;
+
+	private GDriveFolderIndex index;
+
+	@Before
+	public void setUp() throws Exception {
+		client = mock(Drive.class);
+		Drive.Files files = mock(Drive.Files.class);
+		list = mock(Drive.Files.List.class);
+		when(client.files()).thenReturn(files);
+		when(files.list()).thenReturn(list);
+		when(list.setQ(anyString())).thenReturn(list);
+		when(list.setFields(anyString())).thenReturn(list);
+		when(list.setMaxResults(anyInt())).thenReturn(list);
+		when(list.setPageToken(anyString())).thenReturn(list);
+		when(list.execute()).thenReturn(new FileList().setItems(Arrays.asList(file("a", "a.txt", "m1"))));
+		index = new GDriveFolderIndex("folder", 60000);
+	}
+
+	@Test
+	public void testFindPutRemove() throws Exception {
+		assertEquals("a", index.find(client, rateLimiter, "m1", "a.txt").getId());
+		assertNull(index.find(client, rateLimiter, "m1", "other.txt"));
+
+		File b = file("b", "b.txt", "m2");
+		index.put(b);
+		assertSame(b, index.find(client, rateLimiter, "m2", "b.txt"));
+		assertEquals(2, index.size());
+
+		index.remove("b");
+		assertNull(index.find(client, rateLimiter, "m2", "b.txt"));
+
+		// a trashed file leaves the index
+		File trashed = file("a", "a.txt", "m1");
+		trashed.setLabels(new File.Labels().setTrashed(true));
+		index.put(trashed);
+		assertNull(index.find(client, rateLimiter, "m1", "a.txt"));
+		assertEquals(0, index.size());
+
+		// the folder was listed once, within the refresh interval
+		verify(list, times(1)).execute();
+	}
+
+	@Test
+	public void testContains() {
+		File file = file("a", "a.txt", "m1");
+		assertTrue(index.contains(file));
+
+		file.setParents(Collections.singletonList(new ParentReference().setId("elsewhere")));
+		assertFalse(index.contains(file));
+
+		file = file("a", "a.txt", "m1");
+		file.setLabels(new File.Labels().setTrashed(true));
+		assertFalse(index.contains(file));
+	}
+
+	private static File file(String id, String title, String md5) {
+		return new File().setId(id).setTitle(title).setMd5Checksum(md5)
+				.setParents(Collections.singletonList(new ParentReference().setId("folder")));
+	}
+
+}
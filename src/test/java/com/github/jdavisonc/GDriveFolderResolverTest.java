@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.github.jdavisonc.camel.gdrive.GDriveFolderResolver;
+import com.github.jdavisonc.camel.gdrive.GDriveRateLimiter;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDriveFolderResolverTest {
+
+	private final GDriveRateLimiter rateLimiter = new GDriveRateLimiter(0, 0, 1, 1);
+
+	private Drive client;
+
+	private Drive.Files files;
+
+	private Drive.Files.List list;
+
+	private Drive.Files.Insert insert;
+
+	private Drive.Files.Trash trash;
+
+	@Before
+	public void setUp() throws Exception {
+		client = mock(Drive.class);
+		files = mock(Drive.Files.class);
+		list = mock(Drive.Files.List.class);
+		insert = mock(Drive.Files.Insert.class);
+		trash = mock(Drive.Files.Trash.class);
+		when(client.files()).thenReturn(files);
+		when(files.list()).thenReturn(list);
+		when(list.setQ(anyString())).thenReturn(list);
+		when(list.setFields(anyString())).thenReturn(list);
+		when(files.insert(any(File.class))).thenReturn(insert);
+		when(insert.setFields(anyString())).thenReturn(insert);
+		when(insert.execute()).thenReturn(new File().setId("mine"));
+		when(files.trash(anyString())).thenReturn(trash);
+	}
+
+	@Test
+	public void testCachesWithinTtl() throws Exception {
+		when(list.execute()).thenReturn(folders(folder("a", 1)));
+		GDriveFolderResolver resolver = new GDriveFolderResolver(60000);
+
+		assertEquals("a", resolver.resolve(client, rateLimiter, "reports/2026", false));
+		assertEquals("a", resolver.resolve(client, rateLimiter, "/reports/2026/", false));
+		// one lookup per folder of the path, the second resolution is cached
+		verify(list, times(2)).execute();
+	}
+
+	@Test
+	public void testExpiresAfterTtl() throws Exception {
+		when(list.execute()).thenReturn(folders(folder("a", 1)));
+		GDriveFolderResolver resolver = new GDriveFolderResolver(0);
+
+		resolver.resolve(client, rateLimiter, "reports", false);
+		resolver.resolve(client, rateLimiter, "reports", false);
+		verify(list, times(2)).execute();
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		when(list.execute()).thenReturn(folders(folder("a", 1)));
+		GDriveFolderResolver resolver = new GDriveFolderResolver(60000);
+
+		resolver.resolve(client, rateLimiter, "reports/2026", false);
+		resolver.invalidate("reports/2026");
+		resolver.resolve(client, rateLimiter, "reports/2026", false);
+		// only the invalidated folder is looked up again
+		verify(list, times(3)).execute();
+
+		resolver.invalidate("reports");
+		resolver.resolve(client, rateLimiter, "reports/2026", false);
+		verify(list, times(5)).execute();
+	}
+
+	@Test
+	public void testMissingFolder() throws Exception {
+		when(list.execute()).thenReturn(folders());
+		GDriveFolderResolver resolver = new GDriveFolderResolver(60000);
+
+		assertNull(resolver.resolve(client, rateLimiter, "reports", false));
+		verify(files, never()).insert(any(File.class));
+
+		when(list.execute()).thenReturn(folders(), folders(folder("mine", 2)));
+		assertEquals("mine", resolver.resolve(client, rateLimiter, "reports", true));
+		verify(files, never()).trash(anyString());
+	}
+
+	@Test
+	public void testSingleCreationWithinResolver() throws Exception {
+		final AtomicBoolean created = new AtomicBoolean();
+		when(list.execute()).thenAnswer(new Answer<FileList>() {
+			@Override
+			public FileList answer(InvocationOnMock invocation) {
+				return created.get() ? folders(folder("mine", 2)) : folders();
+			}
+		});
+		when(insert.execute()).thenAnswer(new Answer<File>() {
+			@Override
+			public File answer(InvocationOnMock invocation) throws Exception {
+				Thread.sleep(50);
+				created.set(true);
+				return new File().setId("mine");
+			}
+		});
+		final GDriveFolderResolver resolver = new GDriveFolderResolver(60000);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		for (int i = 0; i < 8; i++) {
+			results.add(executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return resolver.resolve(client, rateLimiter, "reports", true);
+				}
+			}));
+		}
+		for (Future<String> result : results) {
+			assertEquals("mine", result.get());
+		}
+		executor.shutdown();
+		verify(insert, times(1)).execute();
+	}
+
+	@Test
+	public void testConcurrentCreation() throws Exception {
+		// missing at first, then found along with the folder of another process, created earlier
+		when(list.execute()).thenReturn(folders(), folders(folder("mine", 2), folder("theirs", 1)));
+		GDriveFolderResolver resolver = new GDriveFolderResolver(60000);
+
+		assertEquals("theirs", resolver.resolve(client, rateLimiter, "reports", true));
+		verify(files).trash("mine");
+		verify(trash).execute();
+	}
+
+	@Test
+	public void testConcurrentCreationNotListedYet() throws Exception {
+		// the lookup after the creation does not list the other folder yet, both processes keep their own
+		when(list.execute()).thenReturn(folders(), folders(folder("mine", 2)));
+		GDriveFolderResolver resolver = new GDriveFolderResolver(60000);
+
+		assertEquals("mine", resolver.resolve(client, rateLimiter, "reports", true));
+		verify(files, never()).trash(anyString());
+	}
+
+	private static File folder(String id, long created) {
+		return new File().setId(id).setCreatedDate(new DateTime(created));
+	}
+
+	private static FileList folders(File... folders) {
+		return new FileList().setItems(folders.length > 0 ? Arrays.asList(folders) : Collections.<File>emptyList());
+	}
+
+}
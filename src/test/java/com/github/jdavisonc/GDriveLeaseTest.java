@@ -0,0 +1,211 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDriveComponent;
+import com.github.jdavisonc.camel.gdrive.GDriveEndpoint;
+import com.github.jdavisonc.camel.gdrive.GDriveFileFilter;
+import com.github.jdavisonc.camel.gdrive.GDriveLease;
+import com.google.api.services.drive.model.File;
+import com.google.common.io.CharStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDriveLeaseTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final AtomicInteger writes = new AtomicInteger();
+
+	/** If-Match header and body of each lease write */
+	private final List<String> conditions = Collections.synchronizedList(new ArrayList<String>());
+
+	private final List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+
+	/** Status answered to the lease writes */
+	private volatile int status = 200;
+
+	private HttpServer server;
+
+	private ExecutorService serverExecutor;
+
+	private DefaultCamelContext context;
+
+	private GDriveLease lease;
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					GDriveLeaseTest.this.handle(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.start();
+
+		context = new DefaultCamelContext();
+		context.addComponent("gdrive", new GDriveComponent());
+		context.start();
+		GDriveEndpoint endpoint = context.getEndpoint("gdrive://leases?accessToken=token", GDriveEndpoint.class);
+		endpoint.getConfiguration().setRootUrl("http://localhost:" + server.getAddress().getPort() + "/");
+		lease = new GDriveLease(endpoint, "node1", 60000);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		context.stop();
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	@Test
+	public void testClaimIsConditionalOnListedEtag() throws Exception {
+		File claimed = lease.claim(new File().setId("f1").setEtag("\"e0\""));
+		assertNotNull(claimed);
+		assertEquals("\"e1\"", claimed.getEtag());
+		assertEquals(Collections.singletonList("\"e0\""), conditions);
+		assertTrue(bodies.get(0), bodies.get(0).contains("node1;"));
+	}
+
+	@Test
+	public void testClaimLostToAnotherConsumer() throws Exception {
+		status = 412;
+		assertNull(lease.claim(new File().setId("f1").setEtag("\"e0\"")));
+		// deleted since it was listed
+		status = 404;
+		assertNull(lease.claim(new File().setId("f1").setEtag("\"e0\"")));
+		assertEquals(2, writes.get());
+	}
+
+	@Test
+	public void testRenewIsConditionalOnLastWrite() throws Exception {
+		File claimed = lease.claim(new File().setId("f1").setEtag("\"e0\""));
+		File renewed = lease.renew(claimed);
+		assertNotNull(renewed);
+		assertEquals("\"e1\"", conditions.get(1));
+
+		// written by someone else since the renewal
+		status = 412;
+		assertNull(lease.renew(renewed));
+		assertEquals("\"e2\"", conditions.get(2));
+	}
+
+	@Test
+	public void testReleaseIsUnconditional() throws Exception {
+		File claimed = lease.claim(new File().setId("f1").setEtag("\"e0\""));
+		lease.release(claimed);
+		assertNull(conditions.get(1));
+		assertTrue(bodies.get(1), bodies.get(1).contains("node1;0"));
+	}
+
+	@Test
+	public void testClaimable() {
+		assertTrue(GDriveLease.isClaimable(null, "a", "md5", 1000));
+		// held by another consumer until it expires
+		assertFalse(GDriveLease.isClaimable("b;2000", "a", "md5", 1000));
+		assertTrue(GDriveLease.isClaimable("b;2000", "a", "md5", 2000));
+		assertTrue(GDriveLease.isClaimable("a;2000", "a", "md5", 1000));
+		// consumed, until the content changes
+		assertFalse(GDriveLease.isClaimable("b;done;md5", "a", "md5", 1000));
+		assertTrue(GDriveLease.isClaimable("b;done;md5", "a", "other", 1000));
+	}
+
+	@Test
+	public void testShardsSplitFiles() {
+		int[] counts = new int[4];
+		for (int i = 0; i < 4000; i++) {
+			String fileId = "file" + i;
+			int shard = GDriveFileFilter.shard(fileId, 4);
+			counts[shard]++;
+			assertEquals(shard, GDriveFileFilter.shard(fileId, 4));
+			// a fifth shard only takes files over
+			int grown = GDriveFileFilter.shard(fileId, 5);
+			assertTrue(grown == shard || grown == 4);
+		}
+		for (int count : counts) {
+			assertTrue(count > 800 && count < 1200);
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		InputStream in = exchange.getRequestBody();
+		if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+			in = new GZIPInputStream(in);
+		}
+		String request = CharStreams.toString(new InputStreamReader(in, UTF8));
+		String path = exchange.getRequestURI().getPath();
+		if (!path.startsWith("/drive/v2/files/")) {
+			exchange.sendResponseHeaders(404, -1);
+			return;
+		}
+		int write = writes.incrementAndGet();
+		conditions.add(exchange.getRequestHeaders().getFirst("If-Match"));
+		bodies.add(request);
+		if (status != 200) {
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+		// the patch only carries the properties, answer them with the new etag
+		String fileId = path.substring("/drive/v2/files/".length());
+		byte[] body = ("{\"id\":\"" + fileId + "\",\"etag\":\"\\\"e" + write + "\\\"\","
+				+ request.substring(request.indexOf('{') + 1)).getBytes(UTF8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+		exchange.sendResponseHeaders(200, body.length);
+		OutputStream os = exchange.getResponseBody();
+		os.write(body);
+		os.close();
+	}
+
+}
@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDriveMetrics;
+import com.github.jdavisonc.camel.gdrive.GDriveRateLimiter;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDriveMetricsTest {
+
+	@Test
+	public void testHistogramPercentiles() {
+		GDriveMetrics.Histogram histogram = new GDriveMetrics.Histogram();
+		for (int i = 0; i < 90; i++) {
+			histogram.record(8);
+		}
+		for (int i = 0; i < 10; i++) {
+			histogram.record(150);
+		}
+
+		assertEquals(100, histogram.getCount());
+		assertEquals(22.2, histogram.getMean(), 0.001);
+		assertEquals(10, histogram.getPercentile(50));
+		assertEquals(10, histogram.getPercentile(90));
+		assertEquals(150, histogram.getPercentile(99));
+		assertEquals(150, histogram.getMax());
+	}
+
+	@Test
+	public void testRateLimiterViewRecordsCalls() throws Exception {
+		GDriveRateLimiter shared = new GDriveRateLimiter(0, 0, 1, 1);
+		GDriveMetrics metrics = new GDriveMetrics(null);
+		GDriveRateLimiter limiter = shared.withMetrics(metrics);
+
+		assertSame(shared, shared.withMetrics(null));
+		assertEquals("ok", limiter.execute("list", new GDriveRateLimiter.Call<String>() {
+			@Override
+			public String call() throws IOException {
+				return "ok";
+			}
+		}));
+		try {
+			limiter.execute("get", new GDriveRateLimiter.Call<String>() {
+				@Override
+				public String call() throws IOException {
+					throw new IOException("Connection reset");
+				}
+			});
+		} catch (IOException e) {
+			// expected
+		}
+
+		assertEquals(1, metrics.getHistogram("list").getCount());
+		assertEquals(1, metrics.getHistogram("get").getCount());
+		assertEquals(2, metrics.getHistograms().size());
+		assertEquals(0, metrics.getStatusCount(403));
+
+		metrics.recordCall("insert", TimeUnit.MILLISECONDS.toNanos(30), 429);
+		assertEquals(1, metrics.getStatusCount(429));
+		metrics.recordPoll(7);
+		assertEquals(7, metrics.getLastPollFiles());
+	}
+
+}
@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDrivePageIterator;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDrivePageIteratorTest {
+
+	private static final int SIZE = 25;
+
+	private static final int DEFAULT_PAGE_SIZE = 10;
+
+	private final List<Integer> requests = Collections.synchronizedList(new ArrayList<Integer>());
+
+	private ExecutorService executorService;
+
+	@After
+	public void tearDown() {
+		if (executorService != null) {
+			executorService.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testPagesAreCappedByMaxItems() {
+		Pages pages = new Pages(null, 10, 15);
+
+		assertEquals(15, count(pages));
+		assertEquals(Arrays.asList(10, 5), requests);
+	}
+
+	@Test
+	public void testAllPagesWithoutCap() {
+		Pages pages = new Pages(null, 0, 0);
+
+		assertEquals(SIZE, count(pages));
+		assertEquals(Arrays.asList(0, 0, 0), requests);
+	}
+
+	@Test
+	public void testCapSmallerThanDefaultPageSize() {
+		Pages pages = new Pages(null, 0, 7);
+
+		assertEquals(7, count(pages));
+		assertEquals(Arrays.asList(7), requests);
+	}
+
+	@Test
+	public void testNextPageIsRequestedAhead() throws Exception {
+		executorService = Executors.newSingleThreadExecutor();
+		final CountDownLatch secondRequested = new CountDownLatch(2);
+		Pages pages = new Pages(executorService, 10, 0) {
+			@Override
+			protected List<Integer> fetchPage(String pageToken, int maxResults) throws Exception {
+				List<Integer> page = super.fetchPage(pageToken, maxResults);
+				secondRequested.countDown();
+				return page;
+			}
+		};
+
+		assertTrue(pages.hasNext());
+		assertEquals(10, pages.next().size());
+		assertTrue(secondRequested.await(5, TimeUnit.SECONDS));
+		assertEquals(2, requests.size());
+	}
+
+	@Test
+	public void testCloseCancelsPendingPage() throws Exception {
+		executorService = Executors.newSingleThreadExecutor();
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		Pages pages = new Pages(executorService, 10, 0) {
+			@Override
+			protected List<Integer> fetchPage(String pageToken, int maxResults) throws Exception {
+				if (pageToken == null) {
+					return super.fetchPage(pageToken, maxResults);
+				}
+				blocked.countDown();
+				try {
+					Thread.sleep(10000);
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+				}
+				return null;
+			}
+		};
+
+		pages.next();
+		assertTrue(blocked.await(5, TimeUnit.SECONDS));
+		pages.close();
+
+		assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+		assertFalse(pages.hasNext());
+	}
+
+	private int count(Pages pages) {
+		int count = 0;
+		while (pages.hasNext()) {
+			count += pages.next().size();
+		}
+		pages.close();
+		return count;
+	}
+
+	/**
+	 * Listing of {@link #SIZE} items, the page token is the offset of the page.
+	 */
+	private class Pages extends GDrivePageIterator<List<Integer>> {
+
+		public Pages(ExecutorService executorService, int pageSize, int maxItems) {
+			super(executorService, pageSize, maxItems);
+		}
+
+		@Override
+		protected List<Integer> fetchPage(String pageToken, int maxResults) throws Exception {
+			requests.add(maxResults);
+			int offset = pageToken != null ? Integer.parseInt(pageToken) : 0;
+			int end = Math.min(offset + (maxResults > 0 ? maxResults : DEFAULT_PAGE_SIZE), SIZE);
+			List<Integer> page = new ArrayList<Integer>();
+			for (int i = offset; i < end; i++) {
+				page.add(i);
+			}
+			return page;
+		}
+
+		@Override
+		protected String getNextPageToken(List<Integer> page) {
+			int end = page.get(page.size() - 1) + 1;
+			return end < SIZE ? String.valueOf(end) : null;
+		}
+
+		@Override
+		protected int getItemCount(List<Integer> page) {
+			return page.size();
+		}
+
+	}
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDrivePrefetchQueue;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDrivePrefetchQueueTest {
+
+	@Test
+	public void testBoundedByBytes() throws Exception {
+		final GDrivePrefetchQueue queue = new GDrivePrefetchQueue(10, 100);
+		assertTrue(queue.put("a", 60));
+		// too large to fit, but the queue only waits while it holds something
+		final CountDownLatch added = new CountDownLatch(1);
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					queue.put("b", 60);
+					added.countDown();
+				} catch (InterruptedException e) {
+					// the test fails on the latch
+				}
+			}
+		};
+		producer.start();
+		assertFalse(added.await(100, TimeUnit.MILLISECONDS));
+
+		assertEquals(Arrays.<Object>asList("a"), queue.drain(1));
+		assertTrue(added.await(1, TimeUnit.SECONDS));
+		assertEquals(60, queue.getBytes());
+	}
+
+	@Test
+	public void testCloseWakesProducer() throws Exception {
+		final GDrivePrefetchQueue queue = new GDrivePrefetchQueue(1, 0);
+		assertTrue(queue.put("a", 0));
+		final AtomicBoolean result = new AtomicBoolean(true);
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				try {
+					result.set(queue.put("b", 0));
+				} catch (InterruptedException e) {
+					// the test fails on the result
+				}
+			}
+		};
+		producer.start();
+		Thread.sleep(50);
+
+		assertEquals(Arrays.<Object>asList("a"), queue.close());
+		producer.join(1000);
+		assertFalse(result.get());
+		assertEquals(0, queue.size());
+	}
+
+}
@@ -0,0 +1,605 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.Producer;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDriveBatchItem;
+import com.github.jdavisonc.camel.gdrive.GDriveBatchResult;
+import com.github.jdavisonc.camel.gdrive.GDriveComponent;
+import com.github.jdavisonc.camel.gdrive.GDriveConstants;
+import com.github.jdavisonc.camel.gdrive.GDriveEndpoint;
+import com.github.jdavisonc.camel.gdrive.GDriveProducer;
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.googleapis.media.MediaHttpUploaderProgressListener;
+import com.google.api.services.drive.Drive;
+import com.google.common.io.CharStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDriveProducerTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String BOUNDARY = "batch_test";
+
+	private final AtomicInteger batches = new AtomicInteger();
+
+	private final AtomicInteger uploads = new AtomicInteger();
+
+	private final AtomicBoolean throttlePatch = new AtomicBoolean(true);
+
+	private final AtomicInteger inflight = new AtomicInteger();
+
+	private final List<String> authorizations = Collections.synchronizedList(new ArrayList<String>());
+
+	private final AtomicInteger maxInflight = new AtomicInteger();
+
+	private final List<String> batchAuthorizations = Collections.synchronizedList(new ArrayList<String>());
+
+	/** Access token rejected by the batch endpoint, when set */
+	private volatile String revokedToken;
+
+	/** Content-Range of each chunk of the resumable uploads, or "direct" for uploads in one request */
+	private final List<String> uploadRequests = Collections.synchronizedList(new ArrayList<String>());
+
+	/** Bytes of the resumable upload received so far */
+	private final AtomicLong received = new AtomicLong();
+
+	/** Fails the next chunk sent from this offset with a server error, when set */
+	private volatile long failedChunkOffset = -1;
+
+	/** Holds the uploads until opened, when set */
+	private volatile CountDownLatch uploadGate;
+
+	private HttpServer server;
+
+	private ExecutorService serverExecutor;
+
+	private DefaultCamelContext context;
+
+	private GDriveEndpoint endpoint;
+
+	private Producer producer;
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					GDriveProducerTest.this.handle(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.start();
+
+		context = new DefaultCamelContext();
+		context.addComponent("gdrive", new GDriveComponent());
+		context.start();
+		endpoint = createEndpoint("mydrive", "");
+		producer = endpoint.createProducer();
+		producer.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (uploadGate != null) {
+			uploadGate.countDown();
+		}
+		producer.stop();
+		context.stop();
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	@Test
+	public void testAsyncUploadsAreBounded() throws Exception {
+		uploadGate = new CountDownLatch(1);
+		final GDriveProducer asyncProducer = (GDriveProducer) createEndpoint("async", 
+				"&asyncUpload=true&maxInflightUploads=2").createProducer();
+		asyncProducer.start();
+		try {
+			final CountDownLatch done = new CountDownLatch(3);
+			final AsyncCallback callback = new AsyncCallback() {
+				@Override
+				public void done(boolean doneSync) {
+					done.countDown();
+				}
+			};
+			final List<Exchange> exchanges = new ArrayList<Exchange>();
+			for (int i = 0; i < 3; i++) {
+				Exchange exchange = endpoint.createExchange();
+				exchange.getIn().setHeader(GDriveConstants.TITLE, "file-" + i + ".txt");
+				exchange.getIn().setBody("content " + i);
+				exchanges.add(exchange);
+			}
+
+			// the routing thread is given back while the upload goes on
+			assertFalse(asyncProducer.process(exchanges.get(0), callback));
+			assertFalse(asyncProducer.process(exchanges.get(1), callback));
+			assertEquals(2, asyncProducer.getInflightUploads());
+
+			// the third exchange waits for one of them to complete
+			ExecutorService router = Executors.newSingleThreadExecutor();
+			Future<Boolean> third = router.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return asyncProducer.process(exchanges.get(2), callback);
+				}
+			});
+			Thread.sleep(200);
+			assertFalse(third.isDone());
+
+			uploadGate.countDown();
+			assertFalse(third.get(5, TimeUnit.SECONDS));
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			router.shutdown();
+			for (Exchange exchange : exchanges) {
+				assertNull(exchange.getException());
+			}
+			assertEquals(3, uploads.get());
+			assertTrue(maxInflight.get() <= 2);
+			assertEquals(0, asyncProducer.getInflightUploads());
+		} finally {
+			asyncProducer.stop();
+		}
+	}
+
+	@Test
+	public void testStoppedAsyncProducerFailsExchange() throws Exception {
+		GDriveProducer asyncProducer = (GDriveProducer) createEndpoint("async", 
+				"&asyncUpload=true&maxInflightUploads=2").createProducer();
+		asyncProducer.start();
+		asyncProducer.stop();
+
+		Exchange exchange = endpoint.createExchange();
+		exchange.getIn().setBody("content");
+		assertTrue(asyncProducer.process(exchange, new AsyncCallback() {
+			@Override
+			public void done(boolean doneSync) {
+				assertTrue(doneSync);
+			}
+		}));
+		assertTrue(exchange.getException() instanceof RejectedExecutionException);
+		assertEquals(0, uploads.get());
+	}
+
+	@Test
+	public void testMixedBatch() throws Exception {
+		Exchange exchange = endpoint.createExchange();
+		exchange.getIn().setBody(Arrays.asList(GDriveBatchItem.folder("reports"), 
+				GDriveBatchItem.patch("file-1"), GDriveBatchItem.upload("a.txt", "content")));
+		producer.process(exchange);
+
+		List<GDriveBatchResult> results = getResults(exchange);
+		assertEquals(3, results.size());
+		for (GDriveBatchResult result : results) {
+			assertTrue(result.toString(), result.isSuccess());
+		}
+		assertEquals("created", results.get(0).getFileId());
+		assertEquals("patched", results.get(1).getFileId());
+		assertEquals("uploaded", results.get(2).getFileId());
+
+		// the throttled patch is sent again in a second batch, the content is uploaded on its own
+		assertEquals(2, batches.get());
+		assertEquals(1, uploads.get());
+	}
+
+	@Test
+	public void testUnauthorizedBatchIsSentWithRefreshedToken() throws Exception {
+		revokedToken = "stale";
+		GDriveEndpoint refreshing = createEndpoint("refreshing", "&clientId=id&clientSecret=secret");
+		// the token manager already holds a newer token, so nothing is sent to the token server
+		refreshing.getTokenManager().seed("refresh", "fresh");
+		Producer refreshingProducer = refreshing.createProducer();
+		refreshingProducer.start();
+		try {
+			Exchange exchange = refreshing.createExchange();
+			exchange.getIn().setHeader(GDriveConstants.ACCESS_TOKEN, "stale");
+			exchange.getIn().setHeader(GDriveConstants.REFRESH_TOKEN, "refresh");
+			exchange.getIn().setBody(Arrays.asList(GDriveBatchItem.folder("reports")));
+			refreshingProducer.process(exchange);
+
+			List<GDriveBatchResult> results = getResults(exchange);
+			assertTrue(results.get(0).toString(), results.get(0).isSuccess());
+			assertEquals("created", results.get(0).getFileId());
+			assertEquals(Arrays.asList("Bearer stale", "Bearer fresh"), batchAuthorizations);
+		} finally {
+			refreshingProducer.stop();
+		}
+	}
+
+	@Test
+	public void testGroupedExchange() throws Exception {
+		List<Exchange> grouped = new ArrayList<Exchange>();
+		for (String title : new String[] {"a.txt", "b.txt"}) {
+			Exchange child = endpoint.createExchange();
+			child.getIn().setHeader(GDriveConstants.TITLE, title);
+			child.getIn().setBody("content of " + title);
+			grouped.add(child);
+		}
+		Exchange exchange = endpoint.createExchange();
+		exchange.setProperty(Exchange.GROUPED_EXCHANGE, grouped);
+		producer.process(exchange);
+
+		List<GDriveBatchResult> results = getResults(exchange);
+		assertEquals(2, results.size());
+		assertEquals("a.txt", results.get(0).getTitle());
+		assertEquals("uploaded", results.get(1).getFileId());
+		assertEquals(2, uploads.get());
+		assertEquals(0, batches.get());
+	}
+
+	@Test
+	public void testHeaderTokenIsUsedAsIs() throws Exception {
+		GDriveEndpoint tenants = createEndpoint("tenants", 
+				"&clientId=id&clientSecret=secret&refreshToken=refresh");
+		Producer tenantProducer = tenants.createProducer();
+		tenantProducer.start();
+		try {
+			// the endpoint's token is cached for its refresh token first
+			for (String accessToken : new String[] {null, "tenant"}) {
+				Exchange exchange = tenants.createExchange();
+				exchange.getIn().setHeader(GDriveConstants.ACCESS_TOKEN, accessToken);
+				exchange.getIn().setHeader(GDriveConstants.TITLE, "a.txt");
+				exchange.getIn().setBody("content");
+				tenantProducer.process(exchange);
+				assertNull(exchange.getException());
+			}
+			assertEquals(Arrays.asList("Bearer token", "Bearer tenant"), authorizations);
+		} finally {
+			tenantProducer.stop();
+		}
+	}
+
+	@Test
+	public void testSmallPayloadIsSentInOneRequest() throws Exception {
+		GDriveEndpoint resumable = createEndpoint("resumable", "&resumableUploadThreshold=1024");
+		Producer resumableProducer = resumable.createProducer();
+		resumableProducer.start();
+		try {
+			Exchange exchange = resumable.createExchange();
+			exchange.getIn().setHeader(GDriveConstants.TITLE, "a.txt");
+			exchange.getIn().setBody("content");
+			resumableProducer.process(exchange);
+
+			assertNull(exchange.getException());
+			assertEquals("uploaded", exchange.getIn().getHeader(GDriveConstants.FILE_ID));
+			assertEquals(Long.valueOf(7), exchange.getIn().getHeader(GDriveConstants.BYTES_UPLOADED, Long.class));
+			assertEquals(Arrays.asList("direct"), uploadRequests);
+		} finally {
+			resumableProducer.stop();
+		}
+	}
+
+	@Test
+	public void testLargePayloadIsUploadedInChunksAndResumed() throws Exception {
+		failedChunkOffset = MediaHttpUploader.MINIMUM_CHUNK_SIZE;
+		GDriveEndpoint resumable = createEndpoint("resumable", "&resumableUploadThreshold=1024&uploadChunkSize=" 
+				+ MediaHttpUploader.MINIMUM_CHUNK_SIZE);
+		final List<Long> progress = Collections.synchronizedList(new ArrayList<Long>());
+		resumable.getConfiguration().setUploadProgressListener(new MediaHttpUploaderProgressListener() {
+			@Override
+			public void progressChanged(MediaHttpUploader uploader) throws IOException {
+				progress.add(uploader.getNumBytesUploaded());
+			}
+		});
+		Producer resumableProducer = resumable.createProducer();
+		resumableProducer.start();
+		try {
+			char[] content = new char[600000];
+			Arrays.fill(content, 'x');
+			Exchange exchange = resumable.createExchange();
+			exchange.getIn().setHeader(GDriveConstants.TITLE, "large.txt");
+			exchange.getIn().setBody(new String(content));
+			resumableProducer.process(exchange);
+
+			assertNull(exchange.getException());
+			assertEquals("resumed", exchange.getIn().getHeader(GDriveConstants.FILE_ID));
+			assertEquals(Long.valueOf(600000), exchange.getIn().getHeader(GDriveConstants.BYTES_UPLOADED, Long.class));
+			// the failed chunk is sent again from the offset confirmed by Drive
+			assertEquals(Arrays.asList("initiate", "bytes 0-262143/600000", "bytes 262144-524287/600000", 
+					"bytes */600000", "bytes 262144-524287/600000", "bytes 524288-599999/600000"), uploadRequests);
+			assertEquals(600000L, received.get());
+			assertEquals(Long.valueOf(600000), progress.get(progress.size() - 1));
+			assertEquals(Long.valueOf(600000), exchange.getProperty(GDriveConstants.BYTES_UPLOADED, Long.class));
+			assertEquals(0, uploads.get());
+		} finally {
+			resumableProducer.stop();
+		}
+	}
+
+	@Test
+	public void testClientsAreKeptPerTokenInLruCache() throws Exception {
+		GDriveEndpoint tenants = createEndpoint("lru", "&clientCacheSize=2");
+		Producer tenantProducer = tenants.createProducer();
+		tenantProducer.start();
+		try {
+			Drive a = tenants.getGDriveClient("a");
+			Drive b = tenants.getGDriveClient("b");
+			assertNotSame(a, b);
+			assertSame(a.getRequestFactory().getTransport(), b.getRequestFactory().getTransport());
+			assertSame(a, tenants.getGDriveClient("a"));
+
+			// b is the least recently used client, so c takes its place
+			tenants.getGDriveClient("c");
+			assertSame(a, tenants.getGDriveClient("a"));
+			Drive newB = tenants.getGDriveClient("b");
+			assertNotSame(b, newB);
+
+			// each tenant writes with its own token
+			for (String accessToken : new String[] {"a", "b", "c", "a"}) {
+				Exchange exchange = tenants.createExchange();
+				exchange.getIn().setHeader(GDriveConstants.ACCESS_TOKEN, accessToken);
+				exchange.getIn().setHeader(GDriveConstants.TITLE, "a.txt");
+				exchange.getIn().setBody("content");
+				tenantProducer.process(exchange);
+				assertNull(exchange.getException());
+			}
+			assertEquals(Arrays.asList("Bearer a", "Bearer b", "Bearer c", "Bearer a"), authorizations);
+		} finally {
+			tenantProducer.stop();
+		}
+	}
+
+	@Test
+	public void testIdleClientsAreDropped() throws Exception {
+		GDriveEndpoint tenants = createEndpoint("idle", "&clientIdleTimeout=100");
+		Drive a = tenants.getGDriveClient("a");
+		assertSame(a, tenants.getGDriveClient("a"));
+		Thread.sleep(300);
+		assertNotSame(a, tenants.getGDriveClient("a"));
+	}
+
+	@Test
+	public void testConcurrentCallersShareClient() throws Exception {
+		final GDriveEndpoint tenants = createEndpoint("concurrent", "");
+		ExecutorService callers = Executors.newFixedThreadPool(8);
+		try {
+			final CountDownLatch start = new CountDownLatch(1);
+			List<Future<Drive>> clients = new ArrayList<Future<Drive>>();
+			for (int i = 0; i < 8; i++) {
+				clients.add(callers.submit(new Callable<Drive>() {
+					@Override
+					public Drive call() throws Exception {
+						start.await();
+						return tenants.getGDriveClient("shared");
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<Drive> client : clients) {
+				assertSame(clients.get(0).get(5, TimeUnit.SECONDS), client.get(5, TimeUnit.SECONDS));
+			}
+		} finally {
+			callers.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testRestartedEndpointGetsNewTransport() throws Exception {
+		GDriveEndpoint pooled = createEndpoint("pooled", "&transportType=apache");
+		for (int i = 0; i < 2; i++) {
+			// the component shuts its pooled transport down when stopped
+			if (i > 0) {
+				pooled.getComponent().stop();
+				pooled.getComponent().start();
+			}
+			Producer pooledProducer = pooled.createProducer();
+			pooledProducer.start();
+			try {
+				Exchange exchange = pooled.createExchange();
+				exchange.getIn().setHeader(GDriveConstants.TITLE, "a.txt");
+				exchange.getIn().setBody("content");
+				pooledProducer.process(exchange);
+				assertNull(exchange.getException());
+			} finally {
+				pooledProducer.stop();
+			}
+		}
+		assertEquals(2, uploads.get());
+	}
+
+	private GDriveEndpoint createEndpoint(String name, String options) {
+		GDriveEndpoint answer = context.getEndpoint("gdrive://" + name + "?accessToken=token&folderId=folder" 
+				+ options, GDriveEndpoint.class);
+		answer.getConfiguration().setRootUrl("http://localhost:" + server.getAddress().getPort() + "/");
+		return answer;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<GDriveBatchResult> getResults(Exchange exchange) {
+		assertNull(exchange.getException());
+		return (exchange.hasOut() ? exchange.getOut() : exchange.getIn())
+				.getHeader(GDriveConstants.BATCH_RESULTS, List.class);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String request = CharStreams.toString(new InputStreamReader(exchange.getRequestBody(), UTF8));
+		String path = exchange.getRequestURI().getPath();
+		String query = exchange.getRequestURI().getQuery();
+		if (path.equals("/batch")) {
+			batches.incrementAndGet();
+			StringBuilder body = new StringBuilder();
+			// the method of each part, PATCH may come as a POST with a method override header
+			List<String> methods = new ArrayList<String>();
+			List<String> partAuthorizations = new ArrayList<String>();
+			String method = null;
+			String authorization = null;
+			for (String line : request.split("\r\n")) {
+				if (line.startsWith("--")) {
+					if (method != null) {
+						methods.add(method);
+						partAuthorizations.add(authorization);
+						batchAuthorizations.add(authorization);
+					}
+					method = null;
+					authorization = null;
+				} else if (line.toLowerCase().startsWith("authorization:")) {
+					authorization = line.substring(line.indexOf(':') + 1).trim();
+				} else if (line.startsWith("POST ") || line.startsWith("PATCH ")) {
+					method = line.substring(0, line.indexOf(' '));
+				} else if (line.toLowerCase().startsWith("x-http-method-override:")) {
+					method = line.substring(line.indexOf(':') + 1).trim();
+				}
+			}
+			for (int i = 0; i < methods.size(); i++) {
+				String partMethod = methods.get(i);
+				if (revokedToken != null && ("Bearer " + revokedToken).equals(partAuthorizations.get(i))) {
+					appendPart(body, "401 Unauthorized", "{\"error\":{\"errors\":[{\"domain\":\"global\","
+							+ "\"reason\":\"authError\",\"message\":\"Invalid Credentials\"}],"
+							+ "\"code\":401,\"message\":\"Invalid Credentials\"}}");
+				} else if ("POST".equals(partMethod)) {
+					appendPart(body, "200 OK", fileJson("created"));
+				} else if (throttlePatch.getAndSet(false)) {
+					appendPart(body, "403 Forbidden", "{\"error\":{\"errors\":[{\"domain\":\"usageLimits\","
+							+ "\"reason\":\"rateLimitExceeded\",\"message\":\"Rate Limit Exceeded\"}],"
+							+ "\"code\":403,\"message\":\"Rate Limit Exceeded\"}}");
+				} else {
+					appendPart(body, "200 OK", fileJson("patched"));
+				}
+			}
+			body.append("--").append(BOUNDARY).append("--\r\n");
+			send(exchange, "multipart/mixed; boundary=" + BOUNDARY, body.toString());
+		} else if (path.equals("/upload/drive/v2/files") && query.contains("uploadType=resumable")) {
+			resumableUpload(exchange, query, request);
+		} else if (path.equals("/upload/drive/v2/files")) {
+			uploadRequests.add("direct");
+			uploads.incrementAndGet();
+			authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+			int current = inflight.incrementAndGet();
+			synchronized (maxInflight) {
+				maxInflight.set(Math.max(maxInflight.get(), current));
+			}
+			try {
+				CountDownLatch gate = uploadGate;
+				if (gate != null) {
+					gate.await(10, TimeUnit.SECONDS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				inflight.decrementAndGet();
+			}
+			send(exchange, "application/json; charset=UTF-8", fileJson("uploaded"));
+		} else {
+			exchange.sendResponseHeaders(404, -1);
+		}
+	}
+
+	/**
+	 * Answer a request of a resumable upload session: the initiation, a chunk or a query of the
+	 * bytes received so far.
+	 */
+	private void resumableUpload(HttpExchange exchange, String query, String request) throws IOException {
+		if (!query.contains("upload_id=")) {
+			uploadRequests.add("initiate");
+			exchange.getResponseHeaders().set("Location", "http://localhost:" + server.getAddress().getPort() 
+					+ "/upload/drive/v2/files?uploadType=resumable&upload_id=session");
+			exchange.sendResponseHeaders(200, -1);
+			return;
+		}
+		String contentRange = exchange.getRequestHeaders().getFirst("Content-Range");
+		uploadRequests.add(contentRange);
+		String[] range = contentRange.substring("bytes ".length()).split("[-/]");
+		long total = Long.parseLong(range[range.length - 1]);
+		if (!range[0].equals("*")) {
+			long offset = Long.parseLong(range[0]);
+			if (offset == failedChunkOffset) {
+				failedChunkOffset = -1;
+				exchange.sendResponseHeaders(503, -1);
+				return;
+			}
+			assertEquals(received.get(), offset);
+			assertEquals(Long.parseLong(range[1]) + 1 - offset, request.length());
+			received.set(offset + request.length());
+		}
+		if (received.get() == total) {
+			send(exchange, "application/json; charset=UTF-8", fileJson("resumed"));
+		} else {
+			exchange.getResponseHeaders().set("Range", "bytes=0-" + (received.get() - 1));
+			exchange.sendResponseHeaders(308, -1);
+		}
+	}
+
+	private static void appendPart(StringBuilder body, String status, String json) {
+		body.append("--").append(BOUNDARY).append("\r\n")
+			.append("Content-Type: application/http\r\n\r\n")
+			.append("HTTP/1.1 ").append(status).append("\r\n")
+			.append("Content-Type: application/json; charset=UTF-8\r\n\r\n")
+			.append(json).append("\r\n");
+	}
+
+	private static String fileJson(String id) {
+		return "{\"kind\":\"drive#file\",\"id\":\"" + id + "\",\"etag\":\"\\\"" + id + "\\\"\"}";
+	}
+
+	private static void send(HttpExchange exchange, String contentType, String content) throws IOException {
+		byte[] body = content.getBytes(UTF8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(200, body.length);
+		OutputStream os = exchange.getResponseBody();
+		os.write(body);
+		os.close();
+	}
+
+}
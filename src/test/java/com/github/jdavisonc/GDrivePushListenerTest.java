@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDriveConfiguration;
+import com.github.jdavisonc.camel.gdrive.GDrivePushListener;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDrivePushListenerTest {
+
+	private final AtomicInteger polls = new AtomicInteger();
+
+	private GDriveConfiguration configuration;
+
+	private GDrivePushListener listener;
+
+	@Before
+	public void setUp() throws Exception {
+		configuration = new GDriveConfiguration();
+		configuration.setPushPort(0);
+		configuration.setPushToken("secret");
+		configuration.setUseChanges(true);
+		listener = createListener();
+		listener.start(null);
+	}
+
+	@After
+	public void tearDown() {
+		listener.stop();
+	}
+
+	@Test
+	public void testNotificationTriggersPoll() throws Exception {
+		assertEquals(200, post("sync", "secret"));
+		assertEquals(0, polls.get());
+
+		assertEquals(200, post("change", "secret"));
+		assertEquals(200, post("change", "secret"));
+		assertEquals(2, polls.get());
+	}
+
+	@Test
+	public void testNotificationWithoutTokenIsRejected() throws Exception {
+		assertEquals(403, post("change", null));
+		assertEquals(403, post("change", "other"));
+		assertEquals(0, polls.get());
+	}
+
+	@Test
+	public void testListenerBindsLoopback() {
+		assertTrue(listener.getAddress().getAddress().isLoopbackAddress());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testStandInRequiresToken() throws Exception {
+		configuration.setPushToken(null);
+		createListener().start(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPushRequiresChanges() throws Exception {
+		configuration.setUseChanges(false);
+		createListener().start(null);
+	}
+
+	private GDrivePushListener createListener() {
+		return new GDrivePushListener(null, configuration, new Runnable() {
+			@Override
+			public void run() {
+				polls.incrementAndGet();
+			}
+		});
+	}
+
+	private int post(String state, String token) throws Exception {
+		URL url = new URL("http://localhost:" + listener.getPort() + "/notifications");
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("X-Goog-Channel-ID", "channel");
+		if (token != null) {
+			connection.setRequestProperty("X-Goog-Channel-Token", token);
+		}
+		connection.setRequestProperty("X-Goog-Resource-State", state);
+		connection.setDoOutput(true);
+		connection.getOutputStream().close();
+		try {
+			return connection.getResponseCode();
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDriveRateLimiter;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDriveRateLimiterTest {
+
+	@Test
+	public void testRetriesThrottledCall() throws Exception {
+		GDriveRateLimiter limiter = new GDriveRateLimiter(0, 3, 20, 40);
+		FailingCall call = new FailingCall(2, 429);
+
+		long start = System.nanoTime();
+		assertEquals("ok", limiter.execute("insert", call));
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		assertEquals(3, call.attempts.get());
+		// at least half of each backoff, 20 then 40 millis
+		assertTrue("backed off " + elapsed + " ms", elapsed >= 30);
+	}
+
+	@Test
+	public void testGivesUpAfterMaxRetries() throws Exception {
+		GDriveRateLimiter limiter = new GDriveRateLimiter(0, 2, 1, 1);
+		FailingCall call = new FailingCall(Integer.MAX_VALUE, 429);
+		try {
+			limiter.execute("insert", call);
+			fail("Expected the quota error");
+		} catch (HttpResponseException e) {
+			assertEquals(429, e.getStatusCode());
+		}
+		assertEquals(3, call.attempts.get());
+	}
+
+	@Test
+	public void testDoesNotRetryOtherErrors() throws Exception {
+		GDriveRateLimiter limiter = new GDriveRateLimiter(0, 5, 1, 1);
+		FailingCall call = new FailingCall(1, 500);
+		try {
+			limiter.execute("insert", call);
+			fail("Expected the server error");
+		} catch (HttpResponseException e) {
+			assertEquals(500, e.getStatusCode());
+		}
+		assertEquals(1, call.attempts.get());
+	}
+
+	@Test
+	public void testSlowsDownOnQuotaErrors() throws Exception {
+		GDriveRateLimiter limiter = new GDriveRateLimiter(100, 1, 1, 1);
+		limiter.execute("insert", new FailingCall(1, 429));
+
+		assertTrue("rate " + limiter.getRate(), limiter.getRate() < 100);
+	}
+
+	@Test
+	public void testViewsShareRateWithOwnRetries() throws Exception {
+		GDriveRateLimiter limiter = new GDriveRateLimiter(100, 0, 1, 1);
+		GDriveRateLimiter view = limiter.view(2, 1, 1, null);
+		FailingCall call = new FailingCall(2, 429);
+		assertEquals("ok", view.execute("insert", call));
+		assertEquals(3, call.attempts.get());
+
+		// the quota errors met by the view slow down every user of the credential
+		assertTrue("rate " + limiter.getRate(), limiter.getRate() < 100);
+		assertEquals(limiter.getRate(), limiter.view(0, 1, 1, null).getRate(), 0);
+	}
+
+	private static final class FailingCall implements GDriveRateLimiter.Call<String> {
+
+		private final AtomicInteger attempts = new AtomicInteger();
+
+		private final int failures;
+
+		private final int statusCode;
+
+		FailingCall(int failures, int statusCode) {
+			this.failures = failures;
+			this.statusCode = statusCode;
+		}
+
+		@Override
+		public String call() throws IOException {
+			if (attempts.incrementAndGet() <= failures) {
+				throw new HttpResponseException.Builder(statusCode, "Error", new HttpHeaders()).build();
+			}
+			return "ok";
+		}
+	}
+
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jdavisonc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.impl.DefaultExchange;
+import org.apache.camel.util.IOHelper;
+import org.junit.Test;
+
+import com.github.jdavisonc.camel.gdrive.GDriveReplayableContent;
+import com.google.common.hash.Hashing;
+
+/**
+ *
+ * @author Jorge Davison (jdavisonc)
+ *
+ */
+public class GDriveReplayableContentTest {
+
+	@Test
+	public void testStreamBodyIsReplayedInMemory() throws Exception {
+		byte[] data = "This is a body test".getBytes("UTF-8");
+		GDriveReplayableContent content = createContent(new ByteArrayInputStream(data), 1024);
+
+		assertEquals(data.length, content.getLength());
+		assertTrue(content.retrySupported());
+		assertArrayEquals(data, read(content));
+		assertArrayEquals(data, read(content));
+		content.release();
+	}
+
+	@Test
+	public void testLargeStreamBodyIsSpooled() throws Exception {
+		byte[] data = new byte[64 * 1024];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		GDriveReplayableContent content = createContent(new ByteArrayInputStream(data), 1024);
+
+		assertEquals(data.length, content.getLength());
+		assertArrayEquals(data, read(content));
+		assertArrayEquals(data, read(content));
+		content.release();
+	}
+
+	@Test
+	public void testByteArrayBodyIsNotCopied() throws Exception {
+		byte[] data = "bytes".getBytes("UTF-8");
+		GDriveReplayableContent content = createContent(data, 0);
+
+		assertEquals(data.length, content.getLength());
+		assertArrayEquals(data, read(content));
+	}
+
+	@Test
+	public void testChecksumIsComputedWhileSpooling() throws Exception {
+		byte[] data = "This is a body test".getBytes("UTF-8");
+		for (long threshold : new long[] {1024, 4}) {
+			GDriveReplayableContent content = createContent(new ByteArrayInputStream(data), threshold, true);
+			assertEquals(Hashing.md5().hashBytes(data).toString(), content.getMd5Checksum());
+			content.release();
+		}
+		assertEquals(Hashing.md5().hashBytes(data).toString(), createContent(data, 0, true).getMd5Checksum());
+	}
+
+	private GDriveReplayableContent createContent(Object body, long threshold) throws Exception {
+		return createContent(body, threshold, false);
+	}
+
+	private GDriveReplayableContent createContent(Object body, long threshold, boolean checksum) throws Exception {
+		Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+		exchange.getIn().setBody(body);
+		return GDriveReplayableContent.fromExchange(exchange, "text/plain", threshold, checksum);
+	}
+
+	private byte[] read(GDriveReplayableContent content) throws Exception {
+		InputStream is = content.getInputStream();
+		try {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			IOHelper.copy(is, bos);
+			return bos.toByteArray();
+		} finally {
+			IOHelper.close(is);
+		}
+	}
+
+}